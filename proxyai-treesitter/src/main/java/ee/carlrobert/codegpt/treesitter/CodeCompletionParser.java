@@ -1,8 +1,11 @@
 package ee.carlrobert.codegpt.treesitter;
 
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
 import org.treesitter.TSInputEdit;
+import org.treesitter.TSInputEncoding;
 import org.treesitter.TSLanguage;
+import org.treesitter.TSNode;
 import org.treesitter.TSParser;
 import org.treesitter.TSPoint;
 import org.treesitter.TSTree;
@@ -10,6 +13,7 @@ import org.treesitter.TSTree;
 public class CodeCompletionParser {
 
   private final TSParser parser;
+  private volatile boolean closed;
 
   public CodeCompletionParser(TSLanguage language) {
     parser = new TSParser();
@@ -17,81 +21,234 @@ public class CodeCompletionParser {
   }
 
   public String parse(String prefix, String suffix, String output) {
-    var result = new StringBuilder(output);
-    String input = prefix + result + suffix;
-    TSTree currentTree = parser.parseString(null, input);
+    return repair(prefix, suffix, output, RepairBudget.DEFAULT).text();
+  }
 
-    while (!result.isEmpty()) {
-      if (containsError(currentTree)) {
-        int deletionIndex = prefix.length() + result.length() - 1;
-        Position pos = getPosition(input, deletionIndex);
+  /**
+   * Walks the completion back one code point at a time until the surrounding document parses
+   * without errors. A single tree is kept and edited in place, so every step is an incremental
+   * re-parse of the removed range rather than a full parse of the document.
+   * <p>
+   * Validity is not monotonic in the completion length (an unclosed brace may become valid again
+   * once more text is removed), so the walk-back is kept instead of a binary search, which could
+   * skip the longest valid candidate.
+   */
+  public RepairResult repair(String prefix, String suffix, String output, RepairBudget budget) {
+    return repair(parse(null, prefix + suffix), prefix, suffix, output, budget);
+  }
 
-        int startByte = pos.byteOffset;
-        int oldEndByte = startByte + getByteLength(result.substring(result.length() - 1));
+  /**
+   * Same as {@link #repair(String, String, String, RepairBudget)}, but starts from an existing
+   * tree of {@code prefix + suffix} instead of parsing the whole document again. The given tree
+   * is edited in place and must not be shared.
+   * <p>
+   * When the document already has errors outside the line being completed, no amount of
+   * walking back can make it parse, so the completion is returned as is.
+   */
+  public RepairResult repair(
+      TSTree documentTree, String prefix, String suffix, String output, RepairBudget budget) {
+    long startTime = System.nanoTime();
+    if (hasErrorOutside(documentTree.getRootNode(), lineStart(prefix), lineEnd(prefix, suffix))) {
+      return new RepairResult(output, 0, System.nanoTime() - startTime, false);
+    }
 
-        TSPoint startPoint = pos.point;
-        TSPoint oldEndPoint = computeOldEndPoint(startPoint, result.charAt(result.length() - 1));
+    var offsets = new CompletionOffsets(prefix, output);
+    var input = concat(prefix, output, suffix);
+    documentTree.edit(offsets.insertion());
+    return repair(
+        parse(documentTree, input.toString()), input, prefix.length(), offsets, budget, startTime);
+  }
 
-        currentTree.edit(
-            new TSInputEdit(startByte, oldEndByte, startByte, startPoint, oldEndPoint, startPoint));
+  private static StringBuilder concat(String prefix, String output, String suffix) {
+    return new StringBuilder(prefix.length() + output.length() + suffix.length())
+        .append(prefix)
+        .append(output)
+        .append(suffix);
+  }
 
-        result.deleteCharAt(result.length() - 1);
+  /**
+   * Discards the parser's native parse state and makes further use fail. The native parser itself
+   * is deleted by tree-sitter's cleaner once this object is unreachable.
+   */
+  void close() {
+    closed = true;
+    parser.reset();
+  }
 
-        input = prefix + result + suffix;
+  TSTree parse(TSTree oldTree, String input) {
+    if (closed) {
+      throw new IllegalStateException("Parser has been closed");
+    }
+    return parser.parseStringEncoding(oldTree, input, TSInputEncoding.TSInputEncodingUTF16);
+  }
 
-        currentTree = parser.parseString(currentTree, input);
-      } else {
-        return result.toString();
+  private RepairResult repair(
+      TSTree tree,
+      StringBuilder input,
+      int prefixLength,
+      CompletionOffsets offsets,
+      RepairBudget budget,
+      long startTime) {
+    long deadline = startTime + budget.timeout().toNanos();
+    var output = offsets.output;
+    int length = output.length();
+    int iterations = 0;
+    while (length > 0) {
+      if (!containsError(tree.getRootNode())) {
+        return new RepairResult(
+            output.substring(0, length), iterations, System.nanoTime() - startTime, false);
+      }
+      if (iterations >= budget.maxIterations() || System.nanoTime() >= deadline) {
+        return new RepairResult(output, iterations, System.nanoTime() - startTime, true);
       }
+
+      int newLength = offsets.previousBoundary(length);
+      tree.edit(offsets.deletion(newLength, length));
+      input.delete(prefixLength + newLength, prefixLength + length);
+      length = newLength;
+      tree = parse(tree, input.toString());
+      iterations++;
     }
 
-    return output;
+    return new RepairResult(output, iterations, System.nanoTime() - startTime, false);
   }
 
-  private boolean containsError(TSTree tree) {
-    var treeString = tree.getRootNode().toString();
-    return treeString.contains("ERROR")
-        || treeString.contains("MISSING \"}\"")
-        || treeString.contains("MISSING \")\"");
+  /**
+   * Looks for {@code ERROR} nodes and missing closing brackets, descending only into subtrees
+   * that report an error instead of serializing the whole tree.
+   */
+  private boolean containsError(TSNode root) {
+    return hasErrorOutside(root, -1, -1);
   }
 
-  private Position getPosition(String input, int index) {
-    int row = 0;
-    int col = 0;
-    int byteOffset = 0;
-    for (int i = 0; i < index; i++) {
-      char c = input.charAt(i);
-      int charByteLength = getByteLength(String.valueOf(c));
-      byteOffset += charByteLength;
+  /**
+   * Same as {@link #containsError(TSNode)}, but ignores errors that overlap the char range from
+   * {@code start} to {@code end}.
+   */
+  private boolean hasErrorOutside(TSNode root, int start, int end) {
+    if (!root.hasError()) {
+      return false;
+    }
 
-      if (c == '\n') {
-        row++;
-        col = 0;
-      } else {
-        col++;
+    var stack = new ArrayDeque<TSNode>();
+    stack.push(root);
+    while (!stack.isEmpty()) {
+      var node = stack.pop();
+      if (isError(node) && (node.getEndByte() < start * 2 || node.getStartByte() > end * 2)) {
+        return true;
+      }
+
+      for (int i = node.getChildCount() - 1; i >= 0; i--) {
+        var child = node.getChild(i);
+        if (child.hasError()) {
+          stack.push(child);
+        }
       }
     }
-    return new Position(new TSPoint(row, col), byteOffset);
+    return false;
   }
 
-  private int getByteLength(String str) {
-    return str.getBytes(StandardCharsets.UTF_8).length;
+  private static boolean isError(TSNode node) {
+    if (node.isError()) {
+      return true;
+    }
+    if (node.isMissing()) {
+      var type = node.getType();
+      return "}".equals(type) || ")".equals(type);
+    }
+    return false;
   }
 
-  private TSPoint computeOldEndPoint(TSPoint startPoint, char deletedChar) {
-    int row = startPoint.getRow();
-    int col = startPoint.getColumn();
+  private static int lineStart(String prefix) {
+    return prefix.lastIndexOf('\n') + 1;
+  }
+
+  private static int lineEnd(String prefix, String suffix) {
+    int newLine = suffix.indexOf('\n');
+    return prefix.length() + (newLine == -1 ? suffix.length() : newLine);
+  }
+
+  public record RepairBudget(int maxIterations, Duration timeout) {
+
+    public static final RepairBudget DEFAULT = new RepairBudget(4_096, Duration.ofMillis(250));
+  }
+
+  public record RepairResult(String text, int iterations, long elapsedNanos,
+                             boolean budgetExhausted) {
 
-    if (deletedChar == '\n') {
-      row++;
-      col = 0;
-    } else {
-      col++;
-    }
-    return new TSPoint(row, col);
   }
 
-  private record Position(TSPoint point, int byteOffset) {
+  /**
+   * Byte offsets and points of every character boundary within the completion, computed once so
+   * that each deletion edit is O(1) instead of rescanning the document from the start. The input
+   * is parsed as UTF-16, so byte offsets and columns are twice the char offsets.
+   */
+  private static class CompletionOffsets {
+
+    private final String output;
+    private final int prefixLength;
+    private final int[] rows;
+    private final int[] columns;
+
+    CompletionOffsets(String prefix, String output) {
+      this.output = output;
+      this.prefixLength = prefix.length();
+
+      int lastNewLine = prefix.lastIndexOf('\n');
+      int row = 0;
+      for (int i = 0; i <= lastNewLine; i++) {
+        if (prefix.charAt(i) == '\n') {
+          row++;
+        }
+      }
+      int column = prefix.length() - lastNewLine - 1;
+
+      rows = new int[output.length() + 1];
+      columns = new int[output.length() + 1];
+      rows[0] = row;
+      columns[0] = column;
+      for (int i = 0; i < output.length(); i++) {
+        if (output.charAt(i) == '\n') {
+          row++;
+          column = 0;
+        } else {
+          column++;
+        }
+        rows[i + 1] = row;
+        columns[i + 1] = column;
+      }
+    }
+
+    int previousBoundary(int length) {
+      int boundary = length - 1;
+      if (boundary > 0
+          && Character.isLowSurrogate(output.charAt(boundary))
+          && Character.isHighSurrogate(output.charAt(boundary - 1))) {
+        boundary--;
+      }
+      return boundary;
+    }
 
+    TSInputEdit insertion() {
+      var startPoint = point(0);
+      return new TSInputEdit(
+          byteOffset(0), byteOffset(0), byteOffset(output.length()),
+          startPoint, startPoint, point(output.length()));
+    }
+
+    TSInputEdit deletion(int newLength, int oldLength) {
+      var startPoint = point(newLength);
+      return new TSInputEdit(
+          byteOffset(newLength), byteOffset(oldLength), byteOffset(newLength),
+          startPoint, point(oldLength), startPoint);
+    }
+
+    private int byteOffset(int length) {
+      return (prefixLength + length) * 2;
+    }
+
+    private TSPoint point(int length) {
+      return new TSPoint(rows[length], columns[length] * 2);
+    }
   }
 }
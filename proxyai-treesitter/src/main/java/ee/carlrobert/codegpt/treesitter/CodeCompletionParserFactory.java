@@ -1,5 +1,7 @@
 package ee.carlrobert.codegpt.treesitter;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.treesitter.TSLanguage;
 import org.treesitter.TreeSitterCSharp;
 import org.treesitter.TreeSitterCpp;
@@ -36,50 +38,99 @@ import org.treesitter.TreeSitterYaml;
 
 public class CodeCompletionParserFactory {
 
-  public static CodeCompletionParser getParserForFileExtension(String extension) {
-    var language = getLanguageForExtension(extension);
-    if (language == null) {
-      return null;
-    }
+  private static final Map<String, TSLanguage> LANGUAGES = new ConcurrentHashMap<>();
 
-    return new CodeCompletionParser(language);
+  /**
+   * Takes a parser for the extension from the {@linkplain CodeCompletionParserPool#shared() shared
+   * pool}, creating one only when none is idle. The parser is not returned to the pool; callers
+   * that parse repeatedly should {@linkplain CodeCompletionParserPool#borrow borrow} instead.
+   */
+  public static CodeCompletionParser getParserForFileExtension(String extension) {
+    var pooled = CodeCompletionParserPool.shared().borrow(extension);
+    return pooled == null ? null : pooled.detach();
   }
 
-  private static TSLanguage getLanguageForExtension(String extension) {
+  /**
+   * Returns the grammar name shared by every extension of the same language (e.g. "ts" and
+   * "tsx"), or null when the extension is not supported.
+   */
+  public static String getLanguageId(String extension) {
     return switch (extension) {
+      case "java" -> "java";
+      case "php" -> "php";
+      case "py" -> "python";
+      case "ts", "tsx" -> "typescript";
+      case "js", "jsx" -> "javascript";
+      case "c", "h", "cpp", "cxx", "cc", "c++", "hpp", "hxx", "hh", "h++" -> "cpp";
+      case "cs" -> "csharp";
+      case "css" -> "css";
+      case "dart" -> "dart";
+      case "dockerfile" -> "dockerfile";
+      case "elixir", "ex", "exs" -> "elixir";
+      case "erl", "hrl" -> "erlang";
+      case "f90", "f95", "f03", "f08" -> "fortran";
+      case "gitattributes" -> "gitattributes";
+      case "go" -> "go";
+      case "graphql", "gql" -> "graphql";
+      case "html", "htm" -> "html";
+      case "json" -> "json";
+      case "kotlin", "kt", "kts" -> "kotlin";
+      case "latex", "tex" -> "latex";
+      case "lua" -> "lua";
+      case "m68k" -> "m68k";
+      case "markdown", "md" -> "markdown";
+      case "objc", "m", "mm" -> "objc";
+      case "perl", "pl", "pm" -> "perl";
+      case "ruby", "rb" -> "ruby";
+      case "rust", "rs" -> "rust";
+      case "scala", "sc" -> "scala";
+      case "scss" -> "scss";
+      case "svelte" -> "svelte";
+      case "swift" -> "swift";
+      case "yml", "yaml" -> "yaml";
+      default -> null;
+    };
+  }
+
+  static TSLanguage getLanguage(String languageId) {
+    return LANGUAGES.computeIfAbsent(languageId, CodeCompletionParserFactory::createLanguage);
+  }
+
+  private static TSLanguage createLanguage(String languageId) {
+    return switch (languageId) {
       case "java" -> new TreeSitterJava();
       case "php" -> new TreeSitterPhp();
-      case "py" -> new TreeSitterPython();
-      case "ts", "tsx" -> new TreeSitterTypescript();
-      case "js", "jsx" -> new TreeSitterJavascript();
-      case "c", "h", "cpp", "cxx", "cc", "c++", "hpp", "hxx", "hh", "h++" -> new TreeSitterCpp();
-      case "cs" -> new TreeSitterCSharp();
+      case "python" -> new TreeSitterPython();
+      case "typescript" -> new TreeSitterTypescript();
+      case "javascript" -> new TreeSitterJavascript();
+      case "cpp" -> new TreeSitterCpp();
+      case "csharp" -> new TreeSitterCSharp();
       case "css" -> new TreeSitterCss();
       case "dart" -> new TreeSitterDart();
       case "dockerfile" -> new TreeSitterDockerfile();
-      case "elixir", "ex", "exs" -> new TreeSitterElixir();
-      case "erl", "hrl" -> new TreeSitterErlang();
-      case "f90", "f95", "f03", "f08" -> new TreeSitterFortran();
+      case "elixir" -> new TreeSitterElixir();
+      case "erlang" -> new TreeSitterErlang();
+      case "fortran" -> new TreeSitterFortran();
       case "gitattributes" -> new TreeSitterGitattributes();
       case "go" -> new TreeSitterGo();
-      case "graphql", "gql" -> new TreeSitterGraphql();
-      case "html", "htm" -> new TreeSitterHtml();
+      case "graphql" -> new TreeSitterGraphql();
+      case "html" -> new TreeSitterHtml();
       case "json" -> new TreeSitterJson();
-      case "kotlin", "kt", "kts" -> new TreeSitterKotlin();
-      case "latex", "tex" -> new TreeSitterLatex();
+      case "kotlin" -> new TreeSitterKotlin();
+      case "latex" -> new TreeSitterLatex();
       case "lua" -> new TreeSitterLua();
       case "m68k" -> new TreeSitterM68k();
-      case "markdown", "md" -> new TreeSitterMarkdown();
-      case "objc", "m", "mm" -> new TreeSitterObjc();
-      case "perl", "pl", "pm" -> new TreeSitterPerl();
-      case "ruby", "rb" -> new TreeSitterRuby();
-      case "rust", "rs" -> new TreeSitterRust();
-      case "scala", "sc" -> new TreeSitterScala();
+      case "markdown" -> new TreeSitterMarkdown();
+      case "objc" -> new TreeSitterObjc();
+      case "perl" -> new TreeSitterPerl();
+      case "ruby" -> new TreeSitterRuby();
+      case "rust" -> new TreeSitterRust();
+      case "scala" -> new TreeSitterScala();
       case "scss" -> new TreeSitterScss();
       case "svelte" -> new TreeSitterSvelte();
       case "swift" -> new TreeSitterSwift();
-      case "yml", "yaml" -> new TreeSitterYaml();
-      default -> null;
+      case "yaml" -> new TreeSitterYaml();
+      default -> throw new IllegalArgumentException("Unsupported language: " + languageId);
     };
   }
 }
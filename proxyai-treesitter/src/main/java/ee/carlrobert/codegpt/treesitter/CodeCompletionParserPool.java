@@ -0,0 +1,196 @@
+package ee.carlrobert.codegpt.treesitter;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of warm parsers, one idle queue per language. A parser is owned exclusively by
+ * whoever borrowed it until the returned {@link PooledParser} is closed.
+ */
+public class CodeCompletionParserPool implements AutoCloseable {
+
+  public static final int DEFAULT_MAX_IDLE_PER_LANGUAGE = 4;
+
+  private static final CodeCompletionParserPool SHARED = new CodeCompletionParserPool();
+
+  private final int maxIdlePerLanguage;
+  private final Map<String, IdleParsers> idleParsers = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private volatile boolean closed;
+
+  public CodeCompletionParserPool() {
+    this(DEFAULT_MAX_IDLE_PER_LANGUAGE);
+  }
+
+  public CodeCompletionParserPool(int maxIdlePerLanguage) {
+    if (maxIdlePerLanguage < 1) {
+      throw new IllegalArgumentException("maxIdlePerLanguage must be positive");
+    }
+    this.maxIdlePerLanguage = maxIdlePerLanguage;
+  }
+
+  /**
+   * Returns the pool shared by {@link CodeCompletionParserFactory#getParserForFileExtension} and
+   * the plugin's parser service.
+   */
+  public static CodeCompletionParserPool shared() {
+    return SHARED;
+  }
+
+  /**
+   * Borrows a parser for the given file extension, or returns null when the extension has no
+   * grammar. Callers must close the result, preferably with try-with-resources.
+   */
+  public PooledParser borrow(String extension) {
+    var languageId = CodeCompletionParserFactory.getLanguageId(extension);
+    if (languageId == null) {
+      return null;
+    }
+    var parser = closed ? null : idleParsers(languageId).poll();
+    if (parser != null) {
+      hits.incrementAndGet();
+      return new PooledParser(this, languageId, parser);
+    }
+    misses.incrementAndGet();
+    return new PooledParser(this, languageId, createParser(languageId));
+  }
+
+  /**
+   * Makes sure at least one idle parser exists for each supported extension.
+   */
+  public void warmUp(Collection<String> extensions) {
+    for (var extension : extensions) {
+      var languageId = CodeCompletionParserFactory.getLanguageId(extension);
+      if (languageId == null || closed) {
+        continue;
+      }
+      var parsers = idleParsers(languageId);
+      if (parsers.isEmpty()) {
+        parsers.offer(createParser(languageId));
+      }
+    }
+  }
+
+  public Stats getStats() {
+    int idle = idleParsers.values().stream().mapToInt(IdleParsers::size).sum();
+    return new Stats(hits.get(), misses.get(), evictions.get(), idle);
+  }
+
+  /**
+   * Closes every idle parser so that their native memory can be reclaimed. Parsers still borrowed
+   * at this point are closed when they are returned.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (var parsers : idleParsers.values()) {
+      for (var parser = parsers.poll(); parser != null; parser = parsers.poll()) {
+        parser.close();
+      }
+    }
+  }
+
+  private void release(String languageId, CodeCompletionParser parser) {
+    if (closed || !idleParsers(languageId).offer(parser)) {
+      evictions.incrementAndGet();
+      parser.close();
+    }
+  }
+
+  private IdleParsers idleParsers(String languageId) {
+    return idleParsers.computeIfAbsent(languageId, key -> new IdleParsers(maxIdlePerLanguage));
+  }
+
+  private static CodeCompletionParser createParser(String languageId) {
+    return new CodeCompletionParser(CodeCompletionParserFactory.getLanguage(languageId));
+  }
+
+  public record Stats(long hits, long misses, long evictions, int idle) {
+
+    public double hitRate() {
+      long total = hits + misses;
+      return total == 0 ? 0 : (double) hits / total;
+    }
+  }
+
+  public static final class PooledParser implements AutoCloseable {
+
+    private final CodeCompletionParserPool pool;
+    private final String languageId;
+    private CodeCompletionParser parser;
+
+    private PooledParser(
+        CodeCompletionParserPool pool, String languageId, CodeCompletionParser parser) {
+      this.pool = pool;
+      this.languageId = languageId;
+      this.parser = parser;
+    }
+
+    public CodeCompletionParser parser() {
+      if (parser == null) {
+        throw new IllegalStateException("Parser has already been returned to the pool");
+      }
+      return parser;
+    }
+
+    /**
+     * Hands the parser over to the caller for good; it is not returned to the pool on close.
+     */
+    public CodeCompletionParser detach() {
+      var detached = parser();
+      parser = null;
+      return detached;
+    }
+
+    @Override
+    public void close() {
+      if (parser != null) {
+        pool.release(languageId, parser);
+        parser = null;
+      }
+    }
+  }
+
+  private static final class IdleParsers {
+
+    private final ConcurrentLinkedDeque<CodeCompletionParser> parsers =
+        new ConcurrentLinkedDeque<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+
+    IdleParsers(int capacity) {
+      this.capacity = capacity;
+    }
+
+    CodeCompletionParser poll() {
+      var parser = parsers.pollFirst();
+      if (parser != null) {
+        size.decrementAndGet();
+      }
+      return parser;
+    }
+
+    boolean offer(CodeCompletionParser parser) {
+      if (size.incrementAndGet() > capacity) {
+        size.decrementAndGet();
+        return false;
+      }
+      parsers.offerFirst(parser);
+      return true;
+    }
+
+    boolean isEmpty() {
+      return size.get() == 0;
+    }
+
+    int size() {
+      return size.get();
+    }
+  }
+}
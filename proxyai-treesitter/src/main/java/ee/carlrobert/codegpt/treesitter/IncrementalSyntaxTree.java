@@ -0,0 +1,101 @@
+package ee.carlrobert.codegpt.treesitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.treesitter.TSInputEdit;
+import org.treesitter.TSPoint;
+import org.treesitter.TSTree;
+
+/**
+ * Syntax tree of a single document that follows the document's edits. Edits are only recorded on
+ * the tree, the incremental re-parse happens lazily on the next query.
+ * <p>
+ * Callers are expected to pass the document text that corresponds to all edits applied so far,
+ * e.g. by querying under the same lock that guards document modifications.
+ */
+public class IncrementalSyntaxTree {
+
+  private final CodeCompletionParserPool pool;
+  private final String extension;
+  private TSTree tree;
+  private boolean stale = true;
+
+  public IncrementalSyntaxTree(CodeCompletionParserPool pool, String extension) {
+    if (CodeCompletionParserFactory.getLanguageId(extension) == null) {
+      throw new IllegalArgumentException("Unsupported file extension: " + extension);
+    }
+    this.pool = pool;
+    this.extension = extension;
+  }
+
+  /**
+   * Records a text change. The start position is given as the zero-based line and the char
+   * column of {@code offset} within that line.
+   */
+  public synchronized void edit(
+      int offset, int startRow, int startColumn, CharSequence oldText, CharSequence newText) {
+    stale = true;
+    if (tree == null) {
+      return;
+    }
+
+    var startPoint = new TSPoint(startRow, startColumn * 2);
+    tree.edit(new TSInputEdit(
+        offset * 2,
+        (offset + oldText.length()) * 2,
+        (offset + newText.length()) * 2,
+        startPoint,
+        advance(startRow, startColumn, oldText),
+        advance(startRow, startColumn, newText)));
+  }
+
+  /**
+   * Drops the current tree, so the next query parses the whole document again.
+   */
+  public synchronized void invalidate() {
+    tree = null;
+    stale = true;
+  }
+
+  /**
+   * Returns a private copy of the up-to-date tree that the caller may edit freely.
+   */
+  public synchronized TSTree getTree(CharSequence text) {
+    return ensureParsed(text).copy();
+  }
+
+  /**
+   * Returns the node types enclosing the given offset, innermost first.
+   */
+  public synchronized List<String> getNodeTypesAt(CharSequence text, int offset) {
+    var node = ensureParsed(text).getRootNode().getDescendantForByteRange(offset * 2, offset * 2);
+    var types = new ArrayList<String>();
+    while (node != null && !node.isNull()) {
+      types.add(node.getType());
+      node = node.getParent();
+    }
+    return types;
+  }
+
+  private TSTree ensureParsed(CharSequence text) {
+    if (tree == null || stale) {
+      try (var pooled = pool.borrow(extension)) {
+        tree = pooled.parser().parse(tree, text.toString());
+      }
+      stale = false;
+    }
+    return tree;
+  }
+
+  private static TSPoint advance(int row, int column, CharSequence text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        row++;
+        column = 0;
+      } else {
+        column++;
+      }
+    }
+    return new TSPoint(row, column * 2);
+  }
+}
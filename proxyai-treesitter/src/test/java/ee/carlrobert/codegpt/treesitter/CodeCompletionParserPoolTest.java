@@ -0,0 +1,84 @@
+package ee.carlrobert.codegpt.treesitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import org.junit.Test;
+
+public class CodeCompletionParserPoolTest {
+
+  @Test
+  public void shouldReuseReturnedParserForSameLanguage() {
+    var pool = new CodeCompletionParserPool();
+
+    CodeCompletionParser first;
+    try (var pooled = pool.borrow("ts")) {
+      first = pooled.parser();
+    }
+    try (var pooled = pool.borrow("tsx")) {
+      assertThat(pooled.parser()).isSameAs(first);
+    }
+
+    var stats = pool.getStats();
+    assertThat(stats.hits()).isEqualTo(1);
+    assertThat(stats.misses()).isEqualTo(1);
+    assertThat(stats.idle()).isEqualTo(1);
+  }
+
+  @Test
+  public void shouldServeWarmedUpLanguagesFromPool() {
+    var pool = new CodeCompletionParserPool();
+    pool.warmUp(List.of("java", "kt", "unknown"));
+
+    try (var pooled = pool.borrow("java")) {
+      var result = pooled.parser().parse("class Main { int a = ", " }", "10;}");
+      assertThat(result).isEqualTo("10;");
+    }
+
+    assertThat(pool.getStats().hits()).isEqualTo(1);
+    assertThat(pool.getStats().misses()).isZero();
+    assertThat(pool.borrow("unknown")).isNull();
+  }
+
+  @Test
+  public void shouldEvictParsersAboveCapacity() {
+    var pool = new CodeCompletionParserPool(1);
+    var first = pool.borrow("java");
+    var second = pool.borrow("java");
+
+    first.close();
+    second.close();
+
+    assertThat(pool.getStats().idle()).isEqualTo(1);
+    assertThat(pool.getStats().evictions()).isEqualTo(1);
+    assertThatThrownBy(first::parser).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void shouldDropIdleParsersOnClose() {
+    var pool = new CodeCompletionParserPool();
+    pool.warmUp(List.of("py"));
+    var borrowed = pool.borrow("go");
+    var parser = borrowed.parser();
+
+    pool.close();
+    borrowed.close();
+
+    assertThat(pool.getStats().idle()).isZero();
+    assertThat(pool.getStats().evictions()).isEqualTo(1);
+    assertThatThrownBy(() -> parser.parse("package main", "", "\n"))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void shouldTakeFactoryParsersFromSharedPool() {
+    CodeCompletionParser idle;
+    try (var pooled = CodeCompletionParserPool.shared().borrow("rs")) {
+      idle = pooled.parser();
+    }
+
+    assertThat(CodeCompletionParserFactory.getParserForFileExtension("rs")).isSameAs(idle);
+    assertThat(CodeCompletionParserFactory.getParserForFileExtension("unknown")).isNull();
+  }
+}
@@ -2,6 +2,8 @@ package ee.carlrobert.codegpt.treesitter;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
+import ee.carlrobert.codegpt.treesitter.CodeCompletionParser.RepairBudget;
+import java.time.Duration;
 import org.junit.Test;
 
 public class CodeCompletionParserTest {
@@ -65,4 +67,70 @@ public class CodeCompletionParserTest {
 
     assertThat(result).isEqualTo("int prevNumber");
   }
+
+  @Test
+  public void shouldRepairCompletionAfterMultiByteCharacters() {
+    var prefix = """
+        class Main {
+          private String greeting = "tere õhtust 👋";
+
+          public int getRandomNumber() {
+            return\s""";
+    var suffix = """
+
+          }
+        }""";
+    var output = "42;}\n}";
+
+    var parsedResponse = CodeCompletionParserFactory
+        .getParserForFileExtension("java")
+        .parse(prefix, suffix, output);
+
+    assertThat(parsedResponse).isEqualTo("42;");
+  }
+
+  @Test
+  public void shouldReturnOriginalOutputWhenBudgetIsExhausted() {
+    var prefix = """
+        class Main {
+          public int getRandomNumber(""";
+    var suffix = """
+        ) {
+            return 10;
+          }
+        }""";
+    var output = "int prevNumber) }";
+
+    var result = CodeCompletionParserFactory
+        .getParserForFileExtension("java")
+        .repair(prefix, suffix, output, new RepairBudget(1, Duration.ofSeconds(5)));
+
+    assertThat(result.budgetExhausted()).isTrue();
+    assertThat(result.iterations()).isEqualTo(1);
+    assertThat(result.text()).isEqualTo(output);
+  }
+
+  @Test
+  public void shouldSkipRepairWhenDocumentHasErrorsElsewhere() {
+    var prefix = """
+        class Main {
+          public int broken( {
+          }
+
+          public int getRandomNumber() {
+            return\s""";
+    var suffix = """
+
+          }
+        }""";
+    var output = "10;}\n}";
+
+    var result = CodeCompletionParserFactory
+        .getParserForFileExtension("java")
+        .repair(prefix, suffix, output, RepairBudget.DEFAULT);
+
+    assertThat(result.iterations()).isZero();
+    assertThat(result.budgetExhausted()).isFalse();
+    assertThat(result.text()).isEqualTo(output);
+  }
 }
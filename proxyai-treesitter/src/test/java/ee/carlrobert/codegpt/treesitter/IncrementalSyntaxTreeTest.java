@@ -0,0 +1,49 @@
+package ee.carlrobert.codegpt.treesitter;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import ee.carlrobert.codegpt.treesitter.CodeCompletionParser.RepairBudget;
+import org.junit.Test;
+
+public class IncrementalSyntaxTreeTest {
+
+  private final CodeCompletionParserPool pool = new CodeCompletionParserPool();
+
+  @Test
+  public void shouldFollowDocumentEdits() {
+    var text = """
+        class Main {
+          int value = 1;
+        }""";
+    var syntaxTree = new IncrementalSyntaxTree(pool, "java");
+    assertThat(syntaxTree.getNodeTypesAt(text, text.indexOf("1"))).contains("field_declaration");
+
+    var offset = text.indexOf("1");
+    var edited = text.substring(0, offset) + "\"a\"" + text.substring(offset + 1);
+    syntaxTree.edit(offset, 1, offset - text.indexOf("  int"), "1", "\"a\"");
+
+    assertThat(syntaxTree.getNodeTypesAt(edited, offset + 1))
+        .contains("string_literal", "field_declaration");
+  }
+
+  @Test
+  public void shouldRepairCompletionFromDocumentTree() {
+    var prefix = """
+        class Main {
+          public int getRandomNumber() {
+            return\s""";
+    var suffix = """
+
+          }
+        }""";
+    var syntaxTree = new IncrementalSyntaxTree(pool, "java");
+    var documentTree = syntaxTree.getTree(prefix + suffix);
+
+    try (var pooled = pool.borrow("java")) {
+      var result = pooled.parser()
+          .repair(documentTree, prefix, suffix, "10;}\n}", RepairBudget.DEFAULT);
+
+      assertThat(result.text()).isEqualTo("10;");
+    }
+  }
+}
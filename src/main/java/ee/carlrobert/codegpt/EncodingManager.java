@@ -1,5 +1,7 @@
 package ee.carlrobert.codegpt;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.Service;
 import com.intellij.openapi.diagnostic.Logger;
@@ -11,6 +13,7 @@ import com.knuddels.jtokkit.api.IntArrayList;
 import ee.carlrobert.codegpt.conversations.Conversation;
 import ee.carlrobert.codegpt.conversations.message.Message;
 import ee.carlrobert.codegpt.completions.ChatToolCall;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
@@ -21,11 +24,24 @@ public final class EncodingManager {
   private static final String SPECIAL_START = "<|";
   private static final String SPECIAL_END = "|>";
 
+  private static final long MAX_MEMOIZED_CHARS = 8_000_000;
+
   private static final Logger LOG = Logger.getInstance(EncodingManager.class);
 
-  private final EncodingRegistry registry = Encodings.newDefaultEncodingRegistry();
+  private final EncodingRegistry registry = Encodings.newLazyEncodingRegistry();
   private final Encoding encoding = registry.getEncoding(EncodingType.CL100K_BASE);
 
+  /**
+   * Token counts of conversation texts that no longer change (prompts, finished responses, tool
+   * arguments and results), so refreshing the totals after a new message only tokenizes the new
+   * text. Keyed by the text itself: {@link String} caches its hash, and a lookup costs one
+   * {@code equals} on hit, which is far cheaper than encoding.
+   */
+  private final Cache<String, Integer> memoizedCounts = CacheBuilder.newBuilder()
+      .maximumWeight(MAX_MEMOIZED_CHARS)
+      .<String, Integer>weigher((text, count) -> text.length())
+      .build();
+
   private EncodingManager() {
   }
 
@@ -36,7 +52,8 @@ public final class EncodingManager {
   public int countConversationTokens(Conversation conversation) {
     return (conversation == null ? Stream.<Message>empty() : conversation.getMessages().stream())
         .mapToInt(
-            message -> countTokens(message.getPrompt()) + countTokens(message.getResponse()))
+            message -> countMemoizedTokens(message.getPrompt())
+                + countMemoizedTokens(message.getResponse()))
         .sum();
   }
 
@@ -55,7 +72,7 @@ public final class EncodingManager {
             if (toolCalls != null) {
               for (ChatToolCall toolCall : toolCalls) {
                 if (toolCall.getFunction() != null && toolCall.getFunction().getArguments() != null) {
-                  inputTokens += countTokens(toolCall.getFunction().getArguments());
+                  inputTokens += countMemoizedTokens(toolCall.getFunction().getArguments());
                 }
               }
             }
@@ -64,7 +81,7 @@ public final class EncodingManager {
             if (toolCallResults != null) {
               for (String result : toolCallResults.values()) {
                 if (result != null) {
-                  outputTokens += countTokens(result);
+                  outputTokens += countMemoizedTokens(result);
                 }
               }
             }
@@ -105,19 +122,75 @@ public final class EncodingManager {
   }
 
   public int countTokens(String text) {
+    return countTokens(text, encoding);
+  }
+
+  /**
+   * Counts the tokens with the given encoding, which is loaded on first use.
+   */
+  public int countTokens(String text, EncodingType encodingType) {
+    return countTokens(text, registry.getEncoding(encodingType));
+  }
+
+  private int countTokens(String text, Encoding encoding) {
     if (text == null || text.isEmpty()) {
       return 0;
     }
 
     try {
       // #444: Cl100kParser.split() throws AssertionError "Input is not UTF-8: "
-      return encoding.countTokens(text.replaceAll("<|", "").replaceAll("|>", ""));
+      return encoding.countTokens(removeSpecialMarkers(text));
     } catch (Exception | Error ex) {
       LOG.warn("Could not count tokens for: " + text, ex);
       return 0;
     }
   }
 
+  /**
+   * Same as {@link #countTokens(String)}, but remembers the result. Only meant for texts that are
+   * counted repeatedly and are not built up chunk by chunk, otherwise every partial text would
+   * take a cache slot.
+   */
+  private int countMemoizedTokens(String text) {
+    if (text == null || text.isEmpty()) {
+      return 0;
+    }
+
+    var count = memoizedCounts.getIfPresent(text);
+    if (count == null) {
+      count = countTokens(text);
+      memoizedCounts.put(text, count);
+    }
+    return count;
+  }
+
+  /**
+   * Removes the {@code <|} and {@code |>} markers in a single pass, returning the same instance
+   * when the text contains none of them.
+   */
+  static String removeSpecialMarkers(String text) {
+    int start = text.indexOf(SPECIAL_START);
+    int end = text.indexOf(SPECIAL_END);
+    if (start < 0 && end < 0) {
+      return text;
+    }
+
+    var result = new StringBuilder(text.length());
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      char c = text.charAt(i);
+      if (i + 1 < length) {
+        char next = text.charAt(i + 1);
+        if ((c == '<' && next == '|') || (c == '|' && next == '>')) {
+          i++;
+          continue;
+        }
+      }
+      result.append(c);
+    }
+    return result.toString();
+  }
+
   /**
    * Truncates the given text to the given number of tokens.
    *
@@ -127,18 +200,111 @@ public final class EncodingManager {
    * @return The truncated text.
    */
   public String truncateText(String text, int maxTokens, boolean fromStart) {
-    var textWithSpecialEncodingsRemoved = text.replace(SPECIAL_START, "").replace(SPECIAL_END, "");
-    var tokens = encoding.encode(textWithSpecialEncodingsRemoved);
+    var scrubbedText = removeSpecialMarkers(text);
+    if (fitsWithoutEncoding(scrubbedText, maxTokens)) {
+      return scrubbedText;
+    }
+
+    var tokens = encoding.encode(scrubbedText);
     int tokensToRetrieve = Math.min(maxTokens, tokens.size());
     int startIndex = fromStart ? 0 : tokens.size() - tokensToRetrieve;
-    var truncatedList =
-        tokens.boxed().subList(startIndex, startIndex + tokensToRetrieve);
-    return encoding.decode(convertToIntArrayList(truncatedList));
+    return decode(tokens, startIndex, startIndex + tokensToRetrieve);
+  }
+
+  /**
+   * Keeps the first {@code headTokens} and the last {@code maxTokens - headTokens} tokens of the
+   * text, joined by the gap marker. The text is encoded once and returned unchanged when it
+   * already fits.
+   *
+   * @param text       The text to truncate.
+   * @param maxTokens  The maximum number of tokens to keep, excluding the gap marker.
+   * @param headTokens The number of tokens to keep from the start of the text.
+   * @param gapMarker  The text to put in place of the removed tokens.
+   * @return The truncated text.
+   */
+  public String truncateTextWithGap(
+      String text, int maxTokens, int headTokens, String gapMarker) {
+    var scrubbedText = removeSpecialMarkers(text);
+    if (fitsWithoutEncoding(scrubbedText, maxTokens)) {
+      return text;
+    }
+
+    IntArrayList tokens;
+    try {
+      tokens = encoding.encode(scrubbedText);
+    } catch (Exception | Error ex) {
+      LOG.warn("Could not encode text for truncation", ex);
+      return text;
+    }
+    if (tokens.size() <= maxTokens) {
+      return text;
+    }
+
+    int head = Math.max(1, Math.min(headTokens, maxTokens - 1));
+    int tail = Math.max(1, maxTokens - head);
+    var headBytes = decodeBytes(tokens, 0, head);
+    var tailBytes = decodeBytes(tokens, tokens.size() - tail, tokens.size());
+    int tailStart = skipContinuationBytes(tailBytes);
+    var headText = new String(headBytes, 0, completeLength(headBytes), StandardCharsets.UTF_8);
+    var tailText = new String(
+        tailBytes, tailStart, tailBytes.length - tailStart, StandardCharsets.UTF_8);
+    return new StringBuilder(headText.length() + gapMarker.length() + tailText.length())
+        .append(headText)
+        .append(gapMarker)
+        .append(tailText)
+        .toString();
+  }
+
+  /**
+   * A token covers at least one UTF-8 byte and a UTF-16 char takes at most three, so texts of up
+   * to {@code maxTokens / 3} chars can never exceed the limit.
+   */
+  private static boolean fitsWithoutEncoding(String text, int maxTokens) {
+    return (long) text.length() * 3 <= maxTokens;
+  }
+
+  private String decode(IntArrayList tokens, int fromIndex, int toIndex) {
+    return new String(decodeBytes(tokens, fromIndex, toIndex), StandardCharsets.UTF_8);
+  }
+
+  private byte[] decodeBytes(IntArrayList tokens, int fromIndex, int toIndex) {
+    var slice = new IntArrayList(toIndex - fromIndex);
+    for (int i = fromIndex; i < toIndex; i++) {
+      slice.add(tokens.get(i));
+    }
+    return encoding.decodeBytes(slice);
+  }
+
+  /**
+   * A character can be split over several tokens, so a slice of tokens may end with the first
+   * bytes of a character. Returns the length without them.
+   */
+  private static int completeLength(byte[] bytes) {
+    int start = bytes.length - 1;
+    while (start >= 0 && isContinuationByte(bytes[start])) {
+      start--;
+    }
+    if (start < 0) {
+      return 0;
+    }
+    int lead = bytes[start] & 0xFF;
+    int expected = lead < 0x80 ? 1 : lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+    return bytes.length - start >= expected ? bytes.length : start;
+  }
+
+  /**
+   * Returns the offset of the first character that starts in the slice, skipping the last bytes of
+   * a character that started before it.
+   */
+  private static int skipContinuationBytes(byte[] bytes) {
+    int start = 0;
+    while (start < bytes.length && isContinuationByte(bytes[start])) {
+      start++;
+    }
+    return start;
   }
 
-  private IntArrayList convertToIntArrayList(List<Integer> tokens) {
-    var result = new IntArrayList(tokens.size());
-    tokens.forEach(result::add);
-    return result;
+  private static boolean isContinuationByte(byte value) {
+    return (value & 0xC0) == 0x80;
   }
 }
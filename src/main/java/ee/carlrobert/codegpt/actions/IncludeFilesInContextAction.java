@@ -24,18 +24,21 @@ import com.intellij.util.ui.FormBuilder;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UI.PanelFactory;
 import ee.carlrobert.codegpt.CodeGPTBundle;
-import ee.carlrobert.codegpt.EncodingManager;
 import ee.carlrobert.codegpt.Icons;
 import ee.carlrobert.codegpt.settings.IncludedFilesSettings;
 import ee.carlrobert.codegpt.settings.ProxyAISettingsService;
+import ee.carlrobert.codegpt.tokens.FileTokenCountCache;
 import ee.carlrobert.codegpt.toolwindow.chat.ChatToolWindowContentManager;
 import ee.carlrobert.codegpt.ui.UIUtil;
 import ee.carlrobert.codegpt.ui.checkbox.FileCheckboxTree;
 import ee.carlrobert.codegpt.ui.checkbox.VirtualFileCheckboxTree;
 import ee.carlrobert.codegpt.util.file.FileUtil;
 import java.awt.Dimension;
-import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
@@ -62,7 +65,7 @@ public class IncludeFilesInContextAction extends AnAction {
       throw new RuntimeException("Could not obtain file tree");
     }
 
-    var totalTokensLabel = new TotalTokensLabel(checkboxTree.getReferencedFiles());
+    var totalTokensLabel = new TotalTokensLabel(project, checkboxTree.getReferencedFiles());
     checkboxTree.addCheckboxTreeListener(new CheckboxTreeListener() {
       @Override
       public void nodeStateChanged(@NotNull CheckedTreeNode node) {
@@ -110,86 +113,98 @@ public class IncludeFilesInContextAction extends AnAction {
     return null;
   }
 
+  /**
+   * Shows the number of checked files and their total tokens. Counts come from the project's
+   * {@link FileTokenCountCache} and are added as they complete, so the dialog stays responsive
+   * while many files are counted.
+   */
   private static class TotalTokensLabel extends JBLabel {
 
-    private final EncodingManager encodingManager = EncodingManager.getInstance();
+    private final FileTokenCountCache tokenCountCache;
+    private final Set<VirtualFile> checkedFiles = new HashSet<>();
+    private final Map<VirtualFile, Integer> countedTokens = new HashMap<>();
 
-    private int fileCount;
     private int totalTokens;
 
-    TotalTokensLabel(List<VirtualFile> referencedFiles) {
-      fileCount = (int) referencedFiles.stream()
+    TotalTokensLabel(Project project, List<VirtualFile> referencedFiles) {
+      tokenCountCache = FileTokenCountCache.getInstance(project);
+      referencedFiles.stream()
           .filter(file -> file != null && !file.isDirectory() && file.isValid())
-          .count();
-      totalTokens = calculateTotalTokens(referencedFiles);
+          .forEach(this::addFile);
       updateText();
     }
 
     void updateState(CheckedTreeNode checkedNode) {
-      var fileContent = getNodeFileContent(checkedNode);
-      if (fileContent != null) {
-        int tokenCount = encodingManager.countTokens(fileContent);
-        if (checkedNode.isChecked()) {
-          totalTokens += tokenCount;
-          fileCount++;
-        } else {
-          totalTokens -= tokenCount;
-          fileCount--;
+      var file = getNodeFile(checkedNode);
+      if (file == null || file.isDirectory() || !file.isValid()) {
+        return;
+      }
+
+      if (checkedNode.isChecked()) {
+        addFile(file);
+      } else {
+        removeFile(file);
+      }
+      updateText();
+    }
+
+    private void addFile(VirtualFile file) {
+      if (!checkedFiles.add(file)) {
+        return;
+      }
+
+      var cachedTokens = tokenCountCache.getCachedTokenCount(file);
+      if (cachedTokens != null) {
+        onFileCounted(file, cachedTokens);
+        return;
+      }
+      tokenCountCache.getTokenCountAsync(file).whenComplete((tokens, error) -> {
+        if (error != null) {
+          LOG.warn("Failed to count tokens of " + file.getPath(), error);
         }
+        SwingUtilities.invokeLater(() -> {
+          onFileCounted(file, tokens == null ? 0 : tokens);
+          updateText();
+        });
+      });
+    }
 
-        SwingUtilities.invokeLater(this::updateText);
+    private void removeFile(VirtualFile file) {
+      checkedFiles.remove(file);
+      var tokens = countedTokens.remove(file);
+      if (tokens != null) {
+        totalTokens -= tokens;
       }
     }
 
-    private @Nullable String getNodeFileContent(CheckedTreeNode checkedNode) {
+    private void onFileCounted(VirtualFile file, int tokens) {
+      if (checkedFiles.contains(file) && !countedTokens.containsKey(file)) {
+        countedTokens.put(file, tokens);
+        totalTokens += tokens;
+      }
+    }
+
+    private @Nullable VirtualFile getNodeFile(CheckedTreeNode checkedNode) {
       var userObject = checkedNode.getUserObject();
       if (userObject instanceof PsiElement psiElement) {
         var psiFile = psiElement.getContainingFile();
-        if (psiFile != null) {
-          var virtualFile = psiFile.getVirtualFile();
-          if (virtualFile != null) {
-            return getVirtualFileContent(virtualFile);
-          }
-        }
+        return psiFile != null ? psiFile.getVirtualFile() : null;
       }
       if (userObject instanceof VirtualFile virtualFile) {
-        return getVirtualFileContent(virtualFile);
-      }
-      return null;
-    }
-
-    private @Nullable String getVirtualFileContent(VirtualFile virtualFile) {
-      try {
-        if (virtualFile.isValid() && !virtualFile.isDirectory()) {
-          return new String(virtualFile.contentsToByteArray(), virtualFile.getCharset());
-        }
-      } catch (IOException ex) {
-        LOG.error("Failed to read file content: " + virtualFile.getPath(), ex);
+        return virtualFile;
       }
       return null;
     }
 
     private void updateText() {
+      var fileCount = checkedFiles.size();
+      var remaining = fileCount - countedTokens.size();
       setText(format(
-          "<html><strong>%d</strong> %s totaling <strong>%s</strong> tokens</html>",
+          "<html><strong>%d</strong> %s totaling <strong>%s</strong> tokens%s</html>",
           fileCount,
           fileCount == 1 ? "file" : "files",
-          FileUtil.convertLongValue(totalTokens)));
-    }
-
-    private int calculateTotalTokens(List<VirtualFile> referencedFiles) {
-      return referencedFiles.stream()
-          .filter(file -> !file.isDirectory() && file.isValid())
-          .mapToInt(file -> {
-            try {
-              return encodingManager.countTokens(
-                  new String(file.contentsToByteArray(), file.getCharset()));
-            } catch (IOException e) {
-              LOG.error("Failed to read file content: " + file.getPath(), e);
-              return 0;
-            }
-          })
-          .sum();
+          FileUtil.convertLongValue(totalTokens),
+          remaining > 0 ? format(" (counting %d more...)", remaining) : ""));
     }
   }
 
@@ -1,5 +1,6 @@
 package ee.carlrobert.codegpt.settings.advanced;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.options.Configurable;
 import ee.carlrobert.codegpt.CodeGPTBundle;
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings;
@@ -33,8 +34,12 @@ public class AdvancedSettingsConfigurable implements Configurable {
 
   @Override
   public void apply() {
-    AdvancedSettings.getInstance().loadState(component.getCurrentFormState());
+    var state = component.getCurrentFormState();
+    AdvancedSettings.getInstance().loadState(state);
     ConfigurationSettings.getState().setDebugModeEnabled(component.isDebugModeEnabled());
+    ApplicationManager.getApplication().getMessageBus()
+        .syncPublisher(AdvancedSettingsListener.Companion.getTOPIC())
+        .onAdvancedSettingsChanged(state);
   }
 
   @Override
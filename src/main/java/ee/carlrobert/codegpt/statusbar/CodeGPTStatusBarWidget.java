@@ -16,7 +16,11 @@ import com.intellij.openapi.wm.WindowManager;
 import com.intellij.openapi.wm.impl.status.EditorBasedStatusBarPopup;
 import ee.carlrobert.codegpt.CodeGPTBundle;
 import ee.carlrobert.codegpt.Icons;
+import ee.carlrobert.codegpt.codecompletions.AdaptiveDebounceService;
+import ee.carlrobert.codegpt.codecompletions.CodeCompletionCacheService;
 import ee.carlrobert.codegpt.codecompletions.CompletionProgressNotifier;
+import ee.carlrobert.codegpt.settings.models.ModelSettings;
+import ee.carlrobert.codegpt.settings.service.FeatureType;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -44,11 +48,32 @@ public class CodeGPTStatusBarWidget extends EditorBasedStatusBarPopup {
   protected @NotNull WidgetState getWidgetState(@Nullable VirtualFile file) {
     var completionInProgress = COMPLETION_IN_PROGRESS.get(getProject());
     var loading = (completionInProgress != null && completionInProgress);
-    var state = new WidgetState(CodeGPTBundle.get("statusBar.widget.tooltip"), "", true);
+    var state = new WidgetState(getTooltip(), "", true);
     state.setIcon(loading ? Icons.StatusBarCompletionInProgress : Icons.DefaultSmall);
     return state;
   }
 
+  private String getTooltip() {
+    var tooltip = new StringBuilder(CodeGPTBundle.get("statusBar.widget.tooltip"));
+    var cacheStats = getProject().getService(CodeCompletionCacheService.class).getStats();
+    if (cacheStats.getHits() + cacheStats.getMisses() > 0) {
+      tooltip.append(", ").append(CodeGPTBundle.get(
+          "statusBar.widget.tooltip.cacheStats",
+          Math.round(cacheStats.getHitRate() * 100),
+          cacheStats.getHits(),
+          cacheStats.getHits() + cacheStats.getMisses(),
+          cacheStats.getTypedAheadHits()));
+    }
+
+    var serviceType = ModelSettings.getInstance().getServiceForFeature(FeatureType.CODE_COMPLETION);
+    var debounceMetrics = AdaptiveDebounceService.getInstance().getMetrics(serviceType);
+    tooltip.append(", ").append(CodeGPTBundle.get(
+        "statusBar.widget.tooltip.debounceStats",
+        debounceMetrics.getDebounceMs(),
+        Math.round(debounceMetrics.getCancelledRatio() * 100)));
+    return tooltip.toString();
+  }
+
   @Override
   protected @Nullable ListPopup createPopup(@NotNull DataContext context) {
     return JBPopupFactory.getInstance()
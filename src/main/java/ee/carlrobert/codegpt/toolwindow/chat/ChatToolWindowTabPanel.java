@@ -5,7 +5,6 @@ import static ee.carlrobert.codegpt.ui.UIUtil.createScrollPaneWithSmartScroller;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
-import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.SelectionModel;
 import com.intellij.openapi.project.Project;
@@ -14,11 +13,9 @@ import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.AnimatedIcon;
 import com.intellij.ui.JBColor;
 import com.intellij.ui.components.JBLabel;
-import com.intellij.util.concurrency.AppExecutorUtil;
 import com.intellij.util.ui.JBUI;
 import ee.carlrobert.codegpt.CodeGPTBundle;
 import ee.carlrobert.codegpt.CodeGPTKeys;
-import ee.carlrobert.codegpt.EncodingManager;
 import ee.carlrobert.codegpt.ReferencedFile;
 import ee.carlrobert.codegpt.actions.ActionType;
 import ee.carlrobert.codegpt.codecompletions.CompletionProgressNotifier;
@@ -40,6 +37,7 @@ import ee.carlrobert.codegpt.psistructure.PsiStructureProvider;
 import ee.carlrobert.codegpt.psistructure.models.ClassStructure;
 import ee.carlrobert.codegpt.settings.service.FeatureType;
 import ee.carlrobert.codegpt.telemetry.TelemetryAction;
+import ee.carlrobert.codegpt.tokens.FileTokenCountCache;
 import ee.carlrobert.codegpt.toolwindow.ToolWindowInitialState;
 import ee.carlrobert.codegpt.toolwindow.chat.editor.actions.CopyAction;
 import ee.carlrobert.codegpt.toolwindow.chat.structure.data.PsiStructureRepository;
@@ -447,18 +445,12 @@ public class ChatToolWindowTabPanel implements Disposable {
     var visibleReferencedFiles = ChatContextSupport.collectVisibleFiles(project, referencedFiles);
 
     userInputPanel.includeFiles(new ArrayList<>(visibleReferencedFiles));
-    ReadAction.nonBlocking(() -> {
-              var encodingManager = EncodingManager.getInstance();
-              return visibleReferencedFiles.stream()
-                  .filter(file -> !file.isDirectory())
-                  .mapToInt(it -> encodingManager.countTokens(ReferencedFile.from(it).fileContent()))
-                  .sum();
-            }
-        )
-        .inSmartMode(project)
-        .expireWith(project)
-        .finishOnUiThread(ModalityState.any(), totalTokensPanel::updateReferencedFilesTokens)
-        .submit(AppExecutorUtil.getAppExecutorService());
+    FileTokenCountCache.getInstance(project)
+        .getTotalTokenCountAsync(visibleReferencedFiles)
+        .thenAccept(totalTokens -> ApplicationManager.getApplication().invokeLater(
+            () -> totalTokensPanel.updateReferencedFilesTokens(totalTokens),
+            ModalityState.any(),
+            project.getDisposed()));
   }
 
   private boolean hasReferencedFilePaths(Message message) {
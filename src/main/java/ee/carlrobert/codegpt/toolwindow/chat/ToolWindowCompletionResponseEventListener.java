@@ -4,7 +4,6 @@ import static com.intellij.openapi.ui.Messages.OK;
 
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
-import ee.carlrobert.codegpt.EncodingManager;
 import ee.carlrobert.codegpt.codecompletions.CompletionProgressNotifier;
 import ee.carlrobert.codegpt.completions.ChatCompletionParameters;
 import ee.carlrobert.codegpt.completions.ChatError;
@@ -14,6 +13,7 @@ import ee.carlrobert.codegpt.conversations.ConversationService;
 import ee.carlrobert.codegpt.conversations.message.Message;
 import ee.carlrobert.codegpt.events.CodeGPTEvent;
 import ee.carlrobert.codegpt.telemetry.TelemetryAction;
+import ee.carlrobert.codegpt.tokens.StreamingTokenCounter;
 import ee.carlrobert.codegpt.toolwindow.chat.ui.ChatMessageResponseBody;
 import ee.carlrobert.codegpt.toolwindow.chat.ui.textarea.TotalTokensPanel;
 import ee.carlrobert.codegpt.toolwindow.ui.ResponseMessagePanel;
@@ -29,7 +29,7 @@ abstract class ToolWindowCompletionResponseEventListener implements
   private static final int UPDATE_INTERVAL_MS = 20;
 
   private final Project project;
-  private final EncodingManager encodingManager;
+  private final StreamingTokenCounter responseTokenCounter = new StreamingTokenCounter();
   private final ResponseMessagePanel responsePanel;
   private final UserMessagePanel userMessagePanel;
   private ChatMessageResponseBody responseContainer;
@@ -47,7 +47,6 @@ abstract class ToolWindowCompletionResponseEventListener implements
       ResponseMessagePanel responsePanel,
       TotalTokensPanel totalTokensPanel,
       UserInputPanel userInputPanel) {
-    this.encodingManager = EncodingManager.getInstance();
     this.project = project;
     this.userMessagePanel = userMessagePanel;
     this.responsePanel = responsePanel;
@@ -66,6 +65,7 @@ abstract class ToolWindowCompletionResponseEventListener implements
 
   @Override
   public void handleRequestOpen() {
+    responseTokenCounter.reset();
     updateTimer.start();
   }
 
@@ -74,7 +74,7 @@ abstract class ToolWindowCompletionResponseEventListener implements
     streamResponseReceived = true;
 
     try {
-      var ongoingTokens = encodingManager.countTokens(partialMessage);
+      var ongoingTokens = responseTokenCounter.append(partialMessage);
       messageBuffer.offer(partialMessage);
       ApplicationManager.getApplication().invokeLater(() ->
           totalTokensPanel.update(totalTokensPanel.getTokenDetails().getTotal() + ongoingTokens)
@@ -58,15 +58,16 @@ import ee.carlrobert.codegpt.ui.ThoughtProcessPanel;
 import ee.carlrobert.codegpt.ui.UIUtil;
 import ee.carlrobert.codegpt.ui.hover.PsiLinkHoverPreview;
 import ee.carlrobert.codegpt.util.EditorUtil;
+import ee.carlrobert.codegpt.util.MarkdownUtil;
 import java.awt.BorderLayout;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.stream.Stream;
 import javax.swing.DefaultListModel;
 import javax.swing.JComponent;
 import javax.swing.JEditorPane;
 import javax.swing.JPanel;
 import javax.swing.JTextPane;
+import javax.swing.Timer;
 import javax.swing.event.HyperlinkListener;
 import kotlin.jvm.Synchronized;
 import org.jetbrains.annotations.NotNull;
@@ -74,6 +75,7 @@ import org.jetbrains.annotations.NotNull;
 public class ChatMessageResponseBody extends JPanel {
 
   private static final Logger LOG = Logger.getInstance(ChatMessageResponseBody.class);
+  private static final int TEXT_RENDER_DELAY_MS = 20;
 
   private final Project project;
   private final Disposable parentDisposable;
@@ -85,12 +87,15 @@ public class ChatMessageResponseBody extends JPanel {
   private final ResponseBodyProgressPanel progressPanel = new ResponseBodyProgressPanel();
   private final JPanel contentPanel =
       new JPanel(new VerticalFlowLayout(VerticalFlowLayout.TOP, 0, 4, true, false));
-  private final StringBuilder accumulatedThinking = new StringBuilder();
+  private final Timer textRenderTimer = new Timer(TEXT_RENDER_DELAY_MS, e -> flushPendingText());
 
   private ResponseEditorPanel currentlyProcessedEditorPanel;
   private MermaidResponsePanel currentlyProcessedMermaidPanel;
   private JEditorPane currentlyProcessedTextPane;
   private JPanel webpageListPanel;
+  private ThoughtProcessPanel thoughtProcessPanel;
+  private String pendingMarkdown;
+  private int closedMarkdownLength;
 
   public ChatMessageResponseBody(Project project, boolean compact, Disposable parentDisposable) {
     this(project, false, compact, false, false, false, parentDisposable);
@@ -109,6 +114,8 @@ public class ChatMessageResponseBody extends JPanel {
     this.streamOutputParser = new SseMessageParser();
     this.readOnly = readOnly;
     this.compact = compact;
+    textRenderTimer.setRepeats(false);
+    Disposer.register(parentDisposable, textRenderTimer::stop);
 
     setLayout(new BorderLayout());
     setOpaque(false);
@@ -142,10 +149,7 @@ public class ChatMessageResponseBody extends JPanel {
         currentlyProcessedEditorPanel = null;
         currentlyProcessedMermaidPanel = null;
       }
-      var thoughtProcessPanel = getExistingThoughtProcessPanel();
-      if (thoughtProcessPanel != null && !thoughtProcessPanel.isFinished()) {
-        thoughtProcessPanel.setFinished();
-      }
+      finishThoughtProcess();
     } catch (Exception e) {
       LOG.error("Something went wrong while processing input", e);
     }
@@ -153,6 +157,7 @@ public class ChatMessageResponseBody extends JPanel {
   }
 
   public void addToolStatusPanel(JComponent component) {
+    flushPendingText();
     finishCurrentStreamingSection();
     streamOutputParser.startNewVisualSection();
     contentPanel.add(component);
@@ -176,13 +181,8 @@ public class ChatMessageResponseBody extends JPanel {
       return;
     }
 
-    if (accumulatedThinking.length() > 0) {
-      accumulatedThinking.append('\n');
-    }
-    accumulatedThinking.append(partialThinking);
-    processThinkingOutput(accumulatedThinking.toString());
-    revalidate();
-    repaint();
+    var panel = getOrCreateThoughtProcessPanel();
+    panel.appendText(panel.hasText() ? "\n" + partialThinking : partialThinking);
   }
 
   public void displayMissingCredential() {
@@ -252,24 +252,22 @@ public class ChatMessageResponseBody extends JPanel {
   }
 
   public void hideCaret() {
+    flushPendingText();
     if (currentlyProcessedTextPane != null) {
       currentlyProcessedTextPane.getCaret().setVisible(false);
     }
   }
 
   public void finishThinking() {
-    ApplicationManager.getApplication().invokeLater(() -> {
-      var thoughtProcessPanel = getExistingThoughtProcessPanel();
-      if (thoughtProcessPanel != null && !thoughtProcessPanel.isFinished()) {
-        thoughtProcessPanel.setFinished();
-      }
-    });
+    ApplicationManager.getApplication().invokeLater(this::finishThoughtProcess);
   }
 
   public void clear() {
+    textRenderTimer.stop();
+    pendingMarkdown = null;
     contentPanel.removeAll();
     streamOutputParser.clear();
-    accumulatedThinking.setLength(0);
+    thoughtProcessPanel = null;
 
     // Reset for the next incoming message
     prepareProcessingText(true);
@@ -282,6 +280,7 @@ public class ChatMessageResponseBody extends JPanel {
 
   private void displayErrorMessage(String message, HyperlinkListener hyperlinkListener) {
     ApplicationManager.getApplication().invokeLater(() -> {
+      flushPendingText();
       if (webpageListPanel != null) {
         webpageListPanel.setVisible(false);
       }
@@ -312,35 +311,36 @@ public class ChatMessageResponseBody extends JPanel {
   }
 
   private void processThinkingOutput(String thoughtProcess) {
-    progressPanel.setVisible(false);
+    getOrCreateThoughtProcessPanel().updateText(thoughtProcess);
+  }
 
-    var thoughtProcessPanel = getExistingThoughtProcessPanel();
+  private ThoughtProcessPanel getOrCreateThoughtProcessPanel() {
     if (thoughtProcessPanel == null) {
+      progressPanel.setVisible(false);
       thoughtProcessPanel = new ThoughtProcessPanel();
-      thoughtProcessPanel.updateText(thoughtProcess);
       contentPanel.add(thoughtProcessPanel);
-    } else {
-      thoughtProcessPanel.updateText(thoughtProcess);
+      contentPanel.revalidate();
     }
+    return thoughtProcessPanel;
   }
 
-  private ThoughtProcessPanel getExistingThoughtProcessPanel() {
-    return (ThoughtProcessPanel) Stream.of(contentPanel.getComponents())
-        .filter(it -> it instanceof ThoughtProcessPanel)
-        .findFirst()
-        .orElse(null);
+  private void finishThoughtProcess() {
+    if (thoughtProcessPanel != null && !thoughtProcessPanel.isFinished()) {
+      thoughtProcessPanel.setFinished();
+    }
   }
 
   private void processResponse(Segment item, boolean caretVisible) {
+    if (!(item instanceof Text)) {
+      flushPendingText();
+    }
+
     if (item instanceof Thinking) {
       processThinkingOutput(item.getContent());
       return;
     }
 
-    var thoughtProcessPanel = getExistingThoughtProcessPanel();
-    if (thoughtProcessPanel != null && !thoughtProcessPanel.isFinished()) {
-      thoughtProcessPanel.setFinished();
-    }
+    finishThoughtProcess();
 
     if (item instanceof CodeEnd) {
       if (currentlyProcessedEditorPanel != null) {
@@ -403,20 +403,67 @@ public class ChatMessageResponseBody extends JPanel {
     }
   }
 
+  /**
+   * Streamed text is rendered at most once per {@link #TEXT_RENDER_DELAY_MS}, with the latest
+   * content winning. Anything that adds another component first flushes the pending text, so the
+   * order of the rendered parts is kept.
+   */
   private void processText(String markdownText, boolean caretVisible) {
     if (markdownText == null || markdownText.isEmpty()) {
       return;
     }
 
-    var html = convertMdToHtml(markdownText);
-    if (currentlyProcessedTextPane == null) {
+    if (!caretVisible) {
+      textRenderTimer.stop();
+      pendingMarkdown = null;
+      renderText(markdownText, false);
+      return;
+    }
+
+    pendingMarkdown = markdownText;
+    if (!textRenderTimer.isRunning()) {
+      textRenderTimer.start();
+    }
+  }
+
+  private void flushPendingText() {
+    textRenderTimer.stop();
+    var markdownText = pendingMarkdown;
+    pendingMarkdown = null;
+    if (markdownText != null) {
+      renderText(markdownText, true);
+    }
+  }
+
+  /**
+   * While streaming, markdown blocks that can no longer change are moved into their own text pane
+   * and left alone, so each update only converts and lays out the still open tail.
+   */
+  private void renderText(String markdownText, boolean caretVisible) {
+    if (currentlyProcessedTextPane == null || markdownText.length() < closedMarkdownLength) {
       prepareProcessingText(caretVisible);
     }
-    currentlyProcessedTextPane.setText(html);
+
+    if (caretVisible) {
+      var closedBlocksEnd = MarkdownUtil.findClosedBlocksEnd(markdownText, closedMarkdownLength);
+      if (closedBlocksEnd > closedMarkdownLength) {
+        currentlyProcessedTextPane.setText(
+            convertMdToHtml(markdownText.substring(closedMarkdownLength, closedBlocksEnd)));
+        currentlyProcessedTextPane.getCaret().setVisible(false);
+        closedMarkdownLength = closedBlocksEnd;
+        currentlyProcessedTextPane = createTextPane("", true);
+        contentPanel.add(currentlyProcessedTextPane);
+        contentPanel.revalidate();
+        contentPanel.repaint();
+      }
+    }
+    currentlyProcessedTextPane.setText(
+        convertMdToHtml(markdownText.substring(closedMarkdownLength)));
   }
 
   @Synchronized
   private void prepareProcessingText(boolean caretVisible) {
+    closedMarkdownLength = 0;
     currentlyProcessedEditorPanel = null;
     currentlyProcessedMermaidPanel = null;
     currentlyProcessedTextPane = createTextPane("", caretVisible);
@@ -23,8 +23,15 @@ class PsiStructureTotalTokenProvider(
     onPsiTokenHandled: (Int) -> Unit
 ) {
 
+    private companion object {
+        const val SEPARATOR = "\n\n"
+    }
+
     private val coroutineScope = DisposableCoroutineScope()
 
+    @Volatile
+    private var tokenCounts: Map<String, Int> = emptyMap()
+
     init {
         Disposer.register(parentDisposable, coroutineScope)
         psiStructureRepository.structureState
@@ -46,12 +53,23 @@ class PsiStructureTotalTokenProvider(
             .launchIn(coroutineScope)
     }
 
-    private fun getPsiTokensCount(psiStructureSet: Set<ClassStructure>): Int =
-        psiStructureSet
-            .joinToString(separator = "\n\n") { psiStructure ->
-                classStructureSerializer.serialize(psiStructure)
+    /**
+     * Sums the tokens of each serialized class structure. Counts are memoized by serialized text
+     * and kept for the structures of the latest emission only, so an update that adds or changes a
+     * few classes does not re-tokenize the unchanged ones.
+     */
+    private fun getPsiTokensCount(psiStructureSet: Set<ClassStructure>): Int {
+        val previousCounts = tokenCounts
+        val currentCounts = HashMap<String, Int>(psiStructureSet.size)
+        val total = psiStructureSet.sumOf { psiStructure ->
+            val serialized = classStructureSerializer.serialize(psiStructure)
+            currentCounts.getOrPut(serialized) {
+                previousCounts[serialized] ?: encodingManager.countTokens(serialized)
             }
-            .let { serializedPsiStructure ->
-                encodingManager.countTokens(serializedPsiStructure)
-            }
-}
\ No newline at end of file
+        }
+        tokenCounts = currentCounts
+
+        val separators = (psiStructureSet.size - 1).coerceAtLeast(0)
+        return total + separators * encodingManager.countTokens(SEPARATOR)
+    }
+}
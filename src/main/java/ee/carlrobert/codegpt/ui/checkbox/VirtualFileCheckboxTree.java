@@ -12,6 +12,7 @@ import java.util.Arrays;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Predicate;
 import org.jetbrains.annotations.NotNull;
 
 public class VirtualFileCheckboxTree extends FileCheckboxTree {
@@ -24,8 +25,9 @@ public class VirtualFileCheckboxTree extends FileCheckboxTree {
     super(createFileTypesRenderer(), new CheckedTreeNode(null));
     this.settingsService = settingsService;
     var rootNode = (CheckedTreeNode) getModel().getRoot();
+    var isVisible = settingsService.visibilityFilter();
     for (VirtualFile file : rootFiles) {
-      var childNode = createNode(file);
+      var childNode = createNode(file, isVisible);
       if (childNode != null) {
         rootNode.add(childNode);
       }
@@ -38,9 +40,10 @@ public class VirtualFileCheckboxTree extends FileCheckboxTree {
   public List<VirtualFile> getReferencedFiles() {
     var checkedNodes = getCheckedNodes(VirtualFile.class, Objects::nonNull);
     var files = new LinkedHashSet<VirtualFile>();
+    var isVisible = settingsService.visibilityFilter();
     Arrays.stream(checkedNodes)
         .filter(Objects::nonNull)
-        .forEach(node -> collectVisibleFiles(node, files));
+        .forEach(node -> collectVisibleFiles(node, files, isVisible));
     if (files.size() > 1024) {
       OverlayUtil.showNotification("Too many files selected.", NotificationType.ERROR);
       throw new RuntimeException("Too many files selected");
@@ -49,8 +52,11 @@ public class VirtualFileCheckboxTree extends FileCheckboxTree {
         .toList();
   }
 
-  private void collectVisibleFiles(VirtualFile file, LinkedHashSet<VirtualFile> output) {
-    if (!file.isValid() || !settingsService.isVirtualFileVisible(file)) {
+  private void collectVisibleFiles(
+      VirtualFile file,
+      LinkedHashSet<VirtualFile> output,
+      Predicate<VirtualFile> isVisible) {
+    if (!file.isValid() || !isVisible.test(file)) {
       return;
     }
     if (!file.isDirectory()) {
@@ -58,11 +64,11 @@ public class VirtualFileCheckboxTree extends FileCheckboxTree {
       return;
     }
     Arrays.stream(file.getChildren())
-        .forEach(child -> collectVisibleFiles(child, output));
+        .forEach(child -> collectVisibleFiles(child, output, isVisible));
   }
 
-  private CheckedTreeNode createNode(VirtualFile file) {
-    if (!settingsService.isVirtualFileVisible(file)) {
+  private CheckedTreeNode createNode(VirtualFile file, Predicate<VirtualFile> isVisible) {
+    if (!isVisible.test(file)) {
       return null;
     }
 
@@ -70,7 +76,7 @@ public class VirtualFileCheckboxTree extends FileCheckboxTree {
     if (file.isDirectory()) {
       VirtualFile[] children = file.getChildren();
       for (VirtualFile child : children) {
-        var childNode = createNode(child);
+        var childNode = createNode(child, isVisible);
         if (childNode != null) {
           node.add(childNode);
         }
@@ -8,6 +8,8 @@ import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.startup.ProjectActivity
 import ee.carlrobert.codegpt.actions.editor.EditorActionsUtil
+import ee.carlrobert.codegpt.codecompletions.CodeCompletionParserService
+import ee.carlrobert.codegpt.completions.ConnectionWarmUpService
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.configuration.ScreenshotPathDetector
 import ee.carlrobert.codegpt.settings.service.codegpt.CodeGPTService
@@ -24,6 +26,8 @@ class CodeGPTProjectActivity : ProjectActivity {
     override suspend fun execute(project: Project) {
         EditorActionsUtil.refreshActions()
         project.service<CodeGPTService>().syncUserDetailsAsync()
+        CodeCompletionParserService.getInstance().warmUp(project)
+        project.service<ConnectionWarmUpService>().warmUp()
 
         if (!ApplicationManager.getApplication().isUnitTestMode
             && service<ConfigurationSettings>().state.checkForNewScreenshots
@@ -35,7 +35,6 @@ import ai.koog.prompt.llm.LLMProvider
 import ai.koog.prompt.llm.LLModel
 import ai.koog.prompt.message.Message
 import ai.koog.prompt.params.LLMParams
-import ai.koog.prompt.tokenizer.Tokenizer
 import com.intellij.openapi.components.service
 import com.intellij.openapi.project.Project
 import ee.carlrobert.codegpt.EncodingManager
@@ -51,6 +50,7 @@ import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ServiceType
 import ee.carlrobert.codegpt.settings.skills.SkillDiscoveryService
 import ee.carlrobert.codegpt.settings.skills.SkillPromptFormatter
+import ee.carlrobert.codegpt.tokens.TokenizerRegistry
 import ee.carlrobert.codegpt.toolwindow.agent.AgentCreditsEvent
 import java.time.LocalDate
 import java.util.concurrent.atomic.AtomicLong
@@ -176,10 +176,7 @@ object AgentFactory {
             installFeatures = {
                 installHandler()
                 install(MessageTokenizer) {
-                    tokenizer = object : Tokenizer {
-                        override fun countTokens(text: String): Int =
-                            EncodingManager.getInstance().countTokens(text)
-                    }
+                    tokenizer = TokenizerRegistry.getInstance().getTokenizer(agentModel)
                     enableCaching = false
                 }
             }
@@ -372,10 +369,7 @@ object AgentFactory {
             installFeatures = {
                 installFeatures()
                 install(MessageTokenizer) {
-                    tokenizer = object : Tokenizer {
-                        override fun countTokens(text: String): Int =
-                            EncodingManager.getInstance().countTokens(text)
-                    }
+                    tokenizer = TokenizerRegistry.getInstance().getTokenizer(agentModel)
                     enableCaching = false
                 }
             }
@@ -447,10 +441,7 @@ object AgentFactory {
             installFeatures = {
                 installFeatures()
                 install(MessageTokenizer) {
-                    tokenizer = object : Tokenizer {
-                        override fun countTokens(text: String): Int =
-                            EncodingManager.getInstance().countTokens(text)
-                    }
+                    tokenizer = TokenizerRegistry.getInstance().getTokenizer(agentModel)
                     enableCaching = false
                 }
             }
@@ -654,6 +645,13 @@ object AgentFactory {
                     hookManager = hookManager,
                 )
             )
+            if (SubagentTool.GREP in selected) tool(
+                GrepTool(
+                    project = project,
+                    sessionId = sessionId,
+                    hookManager = hookManager,
+                )
+            )
             if (SubagentTool.DIAGNOSTICS in selected) tool(
                 DiagnosticsTool(
                     project = project,
@@ -13,6 +13,7 @@ import ee.carlrobert.codegpt.agent.external.ExternalAcpAgentService
 import ee.carlrobert.codegpt.agent.history.AgentCheckpointHistoryService
 import ee.carlrobert.codegpt.agent.history.AgentMessageHistorySanitizer
 import ee.carlrobert.codegpt.agent.history.CheckpointRef
+import ee.carlrobert.codegpt.agent.tools.BackgroundProcessManager
 import ee.carlrobert.codegpt.settings.models.ModelSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ServiceType
@@ -232,6 +233,7 @@ class AgentService(private val project: Project) {
                 it.externalAgentMcpServerIds = emptySet()
             }
         project.service<AgentMcpContextService>().clear(sessionId)
+        BackgroundProcessManager.removeSession(sessionId)
     }
 
     fun isSessionRunning(sessionId: String): Boolean {
@@ -18,10 +18,8 @@ import ai.koog.prompt.dsl.prompt
 import ai.koog.prompt.llm.LLModel
 import ai.koog.prompt.message.Message
 import ai.koog.prompt.message.RequestMetaInfo
-import ai.koog.prompt.tokenizer.Tokenizer
 import com.intellij.openapi.components.service
 import com.intellij.openapi.project.Project
-import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.agent.clients.shouldStream
 import ee.carlrobert.codegpt.agent.strategy.CODE_AGENT_COMPRESSION
 import ee.carlrobert.codegpt.agent.strategy.HistoryCompressionConfig
@@ -36,6 +34,7 @@ import ee.carlrobert.codegpt.settings.models.ModelSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ServiceType
 import ee.carlrobert.codegpt.settings.service.custom.CustomServicesSettings
+import ee.carlrobert.codegpt.tokens.TokenizerRegistry
 import ee.carlrobert.codegpt.toolwindow.agent.ui.approval.BashPayload
 import ee.carlrobert.codegpt.toolwindow.agent.ui.approval.ToolApprovalRequest
 import ee.carlrobert.codegpt.toolwindow.agent.ui.approval.ToolApprovalType
@@ -112,7 +111,8 @@ object ProxyAIAgent {
                 pendingMessageQueue,
                 HistoryCompressionConfig(
                     isLimitExceeded = buildHistoryTooBigPredicate(computeAvailableInput(agentModel)),
-                    compressionStrategy = CODE_AGENT_COMPRESSION
+                    compressionStrategy = CODE_AGENT_COMPRESSION,
+                    modelTokenizer = TokenizerRegistry.getInstance().getTokenizer(agentModel)
                 ),
                 events,
                 sessionId,
@@ -158,10 +158,7 @@ object ProxyAIAgent {
                 this.pendingContinuations = pendingRunContinuations
             }
             install(MessageTokenizer) {
-                tokenizer = object : Tokenizer {
-                    override fun countTokens(text: String): Int =
-                        EncodingManager.getInstance().countTokens(text)
-                }
+                tokenizer = TokenizerRegistry.getInstance().getTokenizer(agentModel)
                 enableCaching = false
             }
 
@@ -355,6 +352,7 @@ object ProxyAIAgent {
             }
             tool(ExitTool)
             tool(IntelliJSearchTool(project, sessionId, hookManager))
+            tool(GrepTool(project, sessionId, hookManager))
             tool(DiagnosticsTool(project, sessionId, hookManager))
             tool(WebSearchTool(workingDirectory, sessionId, hookManager))
             tool(WebFetchTool(workingDirectory, sessionId, hookManager))
@@ -17,8 +17,9 @@ enum class ToolName(val id: String, val aliases: Set<String> = emptySet()) {
     KILL_SHELL(KillShellTool.NAME),
     INTELLIJ_SEARCH(
         IntelliJSearchTool.NAME,
-        setOf("Search", "ListDirectory", "Glob", "Grep", "GrepSearch")
+        setOf("Search", "ListDirectory", "Glob")
     ),
+    GREP(GrepTool.NAME, setOf("GrepSearch", "SearchText")),
     DIAGNOSTICS(DiagnosticsTool.NAME),
     WEB_SEARCH(WebSearchTool.NAME, setOf("GoogleWebSearch")),
     WEB_FETCH(WebFetchTool.NAME),
@@ -104,6 +105,13 @@ object ToolSpecs {
                 typeToken<IntelliJSearchTool.Result>()
             )
         )
+        register(
+            ToolSpec<GrepTool.Args, GrepTool.Result>(
+                ToolName.GREP,
+                typeToken<GrepTool.Args>(),
+                typeToken<GrepTool.Result>()
+            )
+        )
         register(
             ToolSpec<DiagnosticsTool.Args, DiagnosticsTool.Result>(
                 ToolName.DIAGNOSTICS,
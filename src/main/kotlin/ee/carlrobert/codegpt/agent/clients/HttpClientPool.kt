@@ -0,0 +1,132 @@
+package ee.carlrobert.codegpt.agent.clients
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.thisLogger
+import ee.carlrobert.codegpt.settings.advanced.AdvancedSettingsListener
+import ee.carlrobert.codegpt.settings.advanced.AdvancedSettingsState
+import io.ktor.client.engine.*
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager
+import java.net.Proxy
+
+/**
+ * Keeps one Apache5 engine, with its connection pool, TLS context and I/O threads, per proxy and
+ * timeout configuration. Every [io.ktor.client.HttpClient] created by [HttpClientProvider] runs on
+ * the engine of the current configuration, so requests reuse kept-alive (and, where the server
+ * supports it, HTTP/2 multiplexed) connections instead of doing a new TLS handshake each time.
+ *
+ * When the advanced settings change, engines of other configurations are retired: new clients get
+ * the engine of the new configuration, and a retired engine is closed once every client created
+ * on it has been closed.
+ */
+@Service
+class HttpClientPool : Disposable {
+
+    companion object {
+        private val logger = thisLogger()
+
+        @JvmStatic
+        fun getInstance(): HttpClientPool = service()
+    }
+
+    data class Key(
+        val proxyType: Proxy.Type?,
+        val proxyHost: String,
+        val proxyPort: Int,
+        val proxyAuthSelected: Boolean,
+        val proxyUsername: String?,
+        val proxyPassword: String?,
+        val connectTimeout: Int,
+        val readTimeout: Int,
+    ) {
+        constructor(settings: AdvancedSettingsState) : this(
+            settings.proxyType,
+            settings.proxyHost,
+            settings.proxyPort,
+            settings.isProxyAuthSelected,
+            settings.proxyUsername,
+            settings.proxyPassword,
+            settings.connectTimeout,
+            settings.readTimeout,
+        )
+
+        override fun toString(): String =
+            "Key(proxy=$proxyType $proxyHost:$proxyPort, connectTimeout=$connectTimeout, readTimeout=$readTimeout)"
+    }
+
+    internal class PooledEngine(
+        val engine: HttpClientEngine,
+        val connectionManager: PoolingAsyncClientConnectionManager,
+    ) {
+        var clients = 0
+        var retired = false
+        var closed = false
+    }
+
+    private val engines = HashMap<Key, PooledEngine>()
+    private val retiredEngines = HashSet<PooledEngine>()
+
+    init {
+        ApplicationManager.getApplication().messageBus.connect(this)
+            .subscribe(AdvancedSettingsListener.TOPIC, AdvancedSettingsListener { newState ->
+                invalidate(Key(newState))
+            })
+    }
+
+    /**
+     * Returns the shared engine for [settings], creating it on first use. Every acquired engine
+     * must be given back through [release] once the client using it is closed.
+     */
+    internal fun acquire(settings: AdvancedSettingsState): PooledEngine = synchronized(this) {
+        engines.getOrPut(Key(settings)) {
+            logger.debug("Creating HTTP engine for ${Key(settings)}")
+            HttpClientProvider.createPooledEngine(settings)
+        }.also { it.clients++ }
+    }
+
+    internal fun release(pooled: PooledEngine) {
+        synchronized(this) {
+            pooled.clients--
+            if (!pooled.retired || pooled.clients > 0) {
+                return
+            }
+            retiredEngines.remove(pooled)
+        }
+        closeEngine(pooled)
+    }
+
+    /** Retires the engines of every configuration other than [current]. */
+    fun invalidate(current: Key) {
+        val idle = synchronized(this) {
+            engines.keys.filter { it != current }.mapNotNull { key ->
+                engines.remove(key)?.takeIf { pooled ->
+                    logger.debug("Retiring HTTP engine for $key")
+                    pooled.retired = true
+                    if (pooled.clients > 0) {
+                        retiredEngines.add(pooled)
+                    }
+                    pooled.clients == 0
+                }
+            }
+        }
+        idle.forEach { closeEngine(it) }
+    }
+
+    override fun dispose() {
+        val pooledEngines = synchronized(this) {
+            (engines.values + retiredEngines).also {
+                engines.clear()
+                retiredEngines.clear()
+            }
+        }
+        pooledEngines.forEach { closeEngine(it) }
+    }
+
+    private fun closeEngine(pooled: PooledEngine) {
+        pooled.closed = true
+        runCatching { pooled.engine.close() }
+            .onFailure { logger.warn("Could not close HTTP engine", it) }
+    }
+}
@@ -9,12 +9,18 @@ import io.ktor.client.*
 import io.ktor.client.engine.apache5.*
 import io.ktor.client.plugins.*
 import io.ktor.client.plugins.logging.*
+import kotlinx.coroutines.job
 import org.apache.hc.client5.http.auth.AuthScope
 import org.apache.hc.client5.http.auth.UsernamePasswordCredentials
+import org.apache.hc.client5.http.config.TlsConfig
 import org.apache.hc.client5.http.impl.async.HttpAsyncClientBuilder
 import org.apache.hc.client5.http.impl.auth.BasicCredentialsProvider
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder
 import org.apache.hc.client5.http.impl.routing.DefaultProxyRoutePlanner
+import org.apache.hc.client5.http.ssl.ClientTlsStrategyBuilder
 import org.apache.hc.core5.http.HttpHost
+import org.apache.hc.core5.http2.HttpVersionPolicy
+import org.apache.hc.core5.util.TimeValue
 import java.net.Proxy
 
 /**
@@ -22,20 +28,26 @@ import java.net.Proxy
  */
 object HttpClientProvider {
 
+    private const val MAX_CONNECTIONS_TOTAL = 100
+    private const val MAX_CONNECTIONS_PER_ROUTE = 20
+    internal const val IDLE_CONNECTION_EVICT_SECONDS = 60L
+
     private val logger = Logger.getInstance(HttpClientProvider::class.java)
 
     /**
      * Creates a Ktor HttpClient configured with proxy settings from AdvancedSettings.
      * Supports both HTTP and SOCKS proxies with optional authentication.
+     *
+     * The client is cheap to create: it runs on the engine that [HttpClientPool] shares between
+     * all clients of the same proxy and timeout configuration, and closing it leaves that engine
+     * and its connections open for the other clients.
      */
     fun createHttpClient(): HttpClient {
         val advancedSettings = AdvancedSettings.getCurrentState()
         val debugModeEnabled = ConfigurationSettings.getState().debugModeEnabled
-        return HttpClient(Apache5) {
-            engine {
-                configureProxy(advancedSettings)
-            }
-
+        val pool = HttpClientPool.getInstance()
+        val pooledEngine = pool.acquire(advancedSettings)
+        return HttpClient(pooledEngine.engine) {
             install(HttpTimeout) {
                 connectTimeoutMillis = advancedSettings.connectTimeout.toLong() * 1000
                 requestTimeoutMillis = advancedSettings.readTimeout.toLong() * 1000
@@ -58,7 +70,38 @@ object HttpClientProvider {
                     }
                 }
             }
+        }.also { client ->
+            client.coroutineContext.job.invokeOnCompletion { pool.release(pooledEngine) }
+        }
+    }
+
+    /**
+     * Creates an engine with its own connection pool. Connections are kept alive between requests
+     * and negotiate HTTP/2 over TLS when the server supports it.
+     */
+    internal fun createPooledEngine(settings: AdvancedSettingsState): HttpClientPool.PooledEngine {
+        val connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(MAX_CONNECTIONS_TOTAL)
+            .setMaxConnPerRoute(MAX_CONNECTIONS_PER_ROUTE)
+            .setTlsStrategy(
+                ClientTlsStrategyBuilder.create()
+                    .setSslContext(CertificateManager.getInstance().sslContext)
+                    .build()
+            )
+            .setDefaultTlsConfig(
+                TlsConfig.custom()
+                    .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+                    .build()
+            )
+            .build()
+        val engine = Apache5.create {
+            configureProxy(settings)
+            customizeClient {
+                setConnectionManager(connectionManager)
+                evictIdleConnections(TimeValue.ofSeconds(IDLE_CONNECTION_EVICT_SECONDS))
+            }
         }
+        return HttpClientPool.PooledEngine(engine, connectionManager)
     }
 
     private fun Apache5EngineConfig.configureProxy(settings: AdvancedSettingsState) {
@@ -102,10 +102,10 @@ class InceptionAILLMClient(
     }
 
     companion object {
-        private const val DEFAULT_BASE_URL = "https://api.inceptionlabs.ai"
+        const val DEFAULT_BASE_URL: String = "https://api.inceptionlabs.ai"
         private const val DEFAULT_CHAT_COMPLETIONS_PATH = "v1/chat/completions"
         private const val APPLY_EDIT_COMPLETION_PATH = "/v1/apply/completions"
         private const val NEXT_EDIT_COMPLETION_PATH = "/v1/edit/completions"
-        private const val INCEPTION_BASE_URL_PROPERTY = "inception.baseUrl"
+        const val INCEPTION_BASE_URL_PROPERTY: String = "inception.baseUrl"
     }
 }
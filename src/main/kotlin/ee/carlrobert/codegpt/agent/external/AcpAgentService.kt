@@ -23,6 +23,7 @@ import ee.carlrobert.codegpt.agent.external.host.AcpFileHost
 import ee.carlrobert.codegpt.agent.external.host.AcpHostCapabilities
 import ee.carlrobert.codegpt.agent.external.host.AcpTerminalHost
 import ee.carlrobert.codegpt.agent.external.host.DefaultAcpTerminalProcessLauncher
+import ee.carlrobert.codegpt.agent.tools.AgentFileCache
 import ee.carlrobert.codegpt.conversations.Conversation
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.mcp.McpSettings
@@ -140,6 +141,9 @@ class ExternalAcpAgentService(private val project: Project) {
             }
         }
         sessionSetupMutexes.remove(sessionId)
+        if (states.isEmpty()) {
+            AgentFileCache.getInstance().clearContents()
+        }
     }
 
     fun cancelSession(sessionId: String, externalSessionId: String?) {
@@ -1,10 +1,10 @@
 package ee.carlrobert.codegpt.agent.external.host
 
 import com.agentclientprotocol.model.*
-import com.intellij.openapi.application.runReadAction
-import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.util.io.FileUtilRt
 import com.intellij.openapi.vfs.LocalFileSystem
 import com.intellij.openapi.vfs.VfsUtil
+import ee.carlrobert.codegpt.agent.tools.AgentFileCache
 import java.nio.charset.StandardCharsets
 import java.nio.file.Files
 import java.nio.file.Path
@@ -81,14 +81,18 @@ class AcpFileHost(
     }
 }
 
+/**
+ * Reads through the shared [AgentFileCache], which returns the document's text while the file is
+ * loaded in the IDE and reuses the last content until the file changes. Binary files and files
+ * too large for a document are rejected.
+ */
 private class IntelliJOpenDocumentReader : AcpOpenDocumentReader {
     override fun read(path: Path): String? {
-        return runReadAction<String?> {
-            val virtualFile =
-                LocalFileSystem.getInstance().refreshAndFindFileByIoFile(path.toFile())
-                    ?: return@runReadAction null
-            FileDocumentManager.getInstance().getDocument(virtualFile)?.text
-        }
+        val virtualFile = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(path.toFile())
+            ?: return null
+        require(!virtualFile.fileType.isBinary) { "Binary files cannot be read as text: $path" }
+        require(!FileUtilRt.isTooLarge(virtualFile.length)) { "File is too large to read: $path" }
+        return AgentFileCache.getInstance().getContent(path)?.text
     }
 }
 
@@ -98,6 +102,7 @@ private class IntelliJTextFileWriter : AcpTextFileWriter {
             path.parent.createDirectories()
         }
         Files.writeString(path, content, StandardCharsets.UTF_8)
+        AgentFileCache.getInstance().invalidate(path)
 
         val virtualFile = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(path.toFile())
         if (virtualFile != null) {
@@ -4,6 +4,7 @@ import ai.koog.agents.memory.feature.history.RetrieveFactsFromHistory
 import ai.koog.agents.memory.model.Concept
 import ai.koog.agents.memory.model.FactType
 import ai.koog.prompt.dsl.Prompt
+import ai.koog.prompt.message.Message
 import ai.koog.prompt.tokenizer.PromptTokenizer
 
 fun buildHistoryTooBigPredicate(maxPromptTokens: Long): (Prompt, PromptTokenizer) -> Boolean =
@@ -27,6 +27,7 @@ import ee.carlrobert.codegpt.agent.credits.extractCreditsSnapshot
 import ee.carlrobert.codegpt.agent.normalizeToolArgumentsJson
 import ee.carlrobert.codegpt.completions.CompletionRequestUtil
 import ee.carlrobert.codegpt.settings.service.ServiceType
+import ee.carlrobert.codegpt.tokens.TokenizerRegistry
 import ee.carlrobert.codegpt.toolwindow.agent.AgentCreditsEvent
 import ee.carlrobert.codegpt.ui.textarea.TagProcessorFactory
 import ee.carlrobert.codegpt.ui.textarea.header.tag.TagDetails
@@ -48,9 +49,15 @@ internal interface AgentRunStrategyProvider {
     ): AIAgentGraphStrategy<MessageWithContext, String>
 }
 
+/**
+ * When [modelTokenizer] is given, the input token count the provider reports for each request is
+ * compared with the local estimate of the same prompt until the tokenizer has enough calibration
+ * samples.
+ */
 data class HistoryCompressionConfig(
     val isLimitExceeded: (Prompt, PromptTokenizer) -> Boolean,
-    val compressionStrategy: HistoryCompressionStrategy
+    val compressionStrategy: HistoryCompressionStrategy,
+    val modelTokenizer: TokenizerRegistry.ModelTokenizer? = null
 )
 
 internal const val SINGLE_RUN_NODE_CALL_LLM = "call_llm"
@@ -86,6 +93,7 @@ internal class SingleRunStrategyProvider : AgentRunStrategyProvider {
                         executor,
                         config,
                         tokenizer(),
+                        historyCompressionConfig.modelTokenizer,
                         events,
                         sessionId,
                         provider,
@@ -127,6 +135,7 @@ internal class SingleRunStrategyProvider : AgentRunStrategyProvider {
                         executor,
                         config,
                         tokenizer(),
+                        historyCompressionConfig.modelTokenizer,
                         events,
                         sessionId,
                         provider,
@@ -155,6 +164,7 @@ internal class SingleRunStrategyProvider : AgentRunStrategyProvider {
                         executor,
                         config,
                         tokenizer(),
+                        historyCompressionConfig.modelTokenizer,
                         events,
                         sessionId,
                         provider,
@@ -221,16 +231,34 @@ private suspend fun AIAgentLLMWriteSession.requestAndPublish(
     executor: PromptExecutor,
     config: AIAgentConfig,
     tokenizer: PromptTokenizer,
+    modelTokenizer: TokenizerRegistry.ModelTokenizer?,
     events: AgentEvents,
     sessionId: String,
     provider: ServiceType,
     stream: Boolean
 ): List<Message.Response> {
+    val requestPrompt = prompt
     val response = requestResponses(stream, executor, config) { appendPrompt { message(it) } }
+    modelTokenizer?.let { calibrate(it, requestPrompt, tokenizer, response) }
     publishUsageAndCredits(prompt, tokenizer, events, sessionId, provider, response)
     return response
 }
 
+private fun calibrate(
+    modelTokenizer: TokenizerRegistry.ModelTokenizer,
+    requestPrompt: Prompt,
+    tokenizer: PromptTokenizer,
+    responses: List<Message.Response>
+) {
+    if (!modelTokenizer.needsCalibration()) {
+        return
+    }
+    val reportedInputCount = responses.firstNotNullOfOrNull { response ->
+        response.metaInfo.inputTokensCount?.takeIf { it > 0 }
+    } ?: return
+    modelTokenizer.recordUsage(tokenizer.tokenCountFor(requestPrompt), reportedInputCount)
+}
+
 internal fun appendableResponses(
     responses: List<Message.Response>,
     provider: LLMProvider
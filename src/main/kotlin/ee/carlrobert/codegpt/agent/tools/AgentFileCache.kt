@@ -0,0 +1,170 @@
+package ee.carlrobert.codegpt.agent.tools
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil
+import com.intellij.openapi.util.text.StringUtil
+import com.intellij.openapi.vfs.LocalFileSystem
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.nio.file.attribute.BasicFileAttributes
+
+/**
+ * File versions for the agent tools, and the contents of files read by the ACP file host.
+ *
+ * A [Version] is the modification stamp of the file's document while it is loaded, together with
+ * the file's size and modification time on disk; the Read tool uses it to tell whether a file
+ * changed since its last read. Contents are cached only for ACP host reads, keyed by path and
+ * version, and are dropped when a tool writes the file, the VFS reports a change, or the last ACP
+ * session closes. At most [MAX_CACHED_CHARS] characters are kept.
+ */
+@Service
+class AgentFileCache : Disposable {
+
+    companion object {
+        private const val MAX_CACHED_CHARS = 4L shl 20
+        private const val MAX_FILE_CHARS = 1 shl 20
+
+        @JvmStatic
+        fun getInstance(): AgentFileCache = service()
+    }
+
+    data class Version(val documentStamp: Long, val size: Long, val lastModified: Long)
+
+    data class Content(val text: String, val version: Version)
+
+    private val contents = LinkedHashMap<String, Content>(16, 0.75f, true)
+    private var cachedChars = 0L
+
+    init {
+        ApplicationManager.getApplication().messageBus.connect(this)
+            .subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
+                override fun after(events: List<VFileEvent>) {
+                    events.forEach { event ->
+                        val file = event.file
+                        val recursive = file == null || file.isDirectory
+                        invalidate(event.path, recursive)
+                        when {
+                            event is VFileMoveEvent -> invalidate(event.oldPath, recursive)
+                            event is VFilePropertyChangeEvent && event.isRename ->
+                                invalidate(event.oldPath, recursive)
+                        }
+                    }
+                }
+            })
+    }
+
+    /** Returns the current version of [path], or null when it is not a readable file. */
+    fun getVersion(path: Path): Version? {
+        val filePath = normalize(path)
+        val attributes = try {
+            Files.readAttributes(Paths.get(filePath), BasicFileAttributes::class.java)
+        } catch (_: Exception) {
+            return null
+        }
+        if (!attributes.isRegularFile) {
+            return null
+        }
+        val documentStamp = runReadAction {
+            LocalFileSystem.getInstance().findFileByPath(filePath)
+                ?.let { FileDocumentManager.getInstance().getCachedDocument(it) }
+                ?.modificationStamp
+        } ?: -1L
+        return Version(documentStamp, attributes.size(), attributes.lastModifiedTime().toMillis())
+    }
+
+    /**
+     * Returns the text of [path] with `\n` line separators: the document's text while it is loaded,
+     * and otherwise the file's content decoded with its charset, without the byte order mark.
+     */
+    fun getContent(path: Path): Content? {
+        val filePath = normalize(path)
+        val version = getVersion(path) ?: return null
+        synchronized(contents) { contents[filePath] }
+            ?.takeIf { it.version == version }
+            ?.let { return it }
+
+        val text = loadText(filePath, version)
+        val content = Content(text, version)
+        if (text.length <= MAX_FILE_CHARS) {
+            synchronized(contents) {
+                contents.put(filePath, content)?.let { cachedChars -= it.text.length }
+                cachedChars += text.length
+                evictLeastRecentlyUsed()
+            }
+        }
+        return content
+    }
+
+    /** Drops the cached content of [path], e.g. after a write. */
+    fun invalidate(path: Path) {
+        invalidate(normalize(path), recursive = false)
+    }
+
+    /** Drops all cached contents, e.g. when no ACP session is left to read them. */
+    fun clearContents() {
+        synchronized(contents) {
+            contents.clear()
+            cachedChars = 0
+        }
+    }
+
+    override fun dispose() {
+        clearContents()
+    }
+
+    private fun invalidate(path: String, recursive: Boolean) {
+        val prefix = "$path/"
+        fun matches(candidate: String) =
+            candidate == path || (recursive && candidate.startsWith(prefix))
+
+        synchronized(contents) {
+            val iterator = contents.entries.iterator()
+            while (iterator.hasNext()) {
+                val entry = iterator.next()
+                if (matches(entry.key)) {
+                    cachedChars -= entry.value.text.length
+                    iterator.remove()
+                }
+            }
+        }
+        LineIndexedFileReader.invalidate(Paths.get(path))
+    }
+
+    private fun evictLeastRecentlyUsed() {
+        val iterator = contents.values.iterator()
+        while (cachedChars > MAX_CACHED_CHARS && iterator.hasNext()) {
+            cachedChars -= iterator.next().text.length
+            iterator.remove()
+        }
+    }
+
+    private fun loadText(filePath: String, version: Version): String {
+        if (version.documentStamp >= 0) {
+            runReadAction {
+                LocalFileSystem.getInstance().findFileByPath(filePath)
+                    ?.let { FileDocumentManager.getInstance().getCachedDocument(it) }
+                    ?.text
+            }?.let { return it }
+        }
+        val bytes = Files.readAllBytes(Paths.get(filePath))
+        val text = LocalFileSystem.getInstance().findFileByPath(filePath)
+            ?.let { LoadTextUtil.getTextByBinaryPresentation(bytes, it).toString() }
+            ?: String(bytes, StandardCharsets.UTF_8)
+        return StringUtil.convertLineSeparators(text)
+    }
+
+    private fun normalize(path: Path): String =
+        path.toAbsolutePath().normalize().toString().replace('\\', '/')
+}
@@ -2,25 +2,129 @@ package ee.carlrobert.codegpt.agent.tools
 
 import com.intellij.openapi.diagnostic.thisLogger
 import kotlinx.coroutines.*
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.flow.update
+import java.io.InputStream
+import java.nio.file.Files
+import java.nio.file.Path
 import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicInteger
 
 object BackgroundProcessManager {
 
+    private const val READ_BUFFER_SIZE = 8 * 1024
+
     private val logger = thisLogger()
     private val processes = ConcurrentHashMap<String, Process>()
     private val outputBuffers = ConcurrentHashMap<String, ProcessOutput>()
+    private val sessionProcesses = ConcurrentHashMap<String, MutableSet<String>>()
+    private val sessionLogFiles = ConcurrentHashMap<String, MutableSet<Path>>()
     private val scope = CoroutineScope(Dispatchers.IO + SupervisorJob())
 
-    data class ProcessOutput(
-        val stdout: StringBuilder = StringBuilder(),
-        val stderr: StringBuilder = StringBuilder(),
-        var exitCode: Int? = null,
+    /**
+     * Output of a background process. Each stream is kept in a bounded [ProcessOutputBuffer], and
+     * readers pull only the lines written since their last read through a [Reader]. Once the
+     * process has completed and every reader has read to the end, [onDrained] is called.
+     */
+    class ProcessOutput internal constructor(memoryLimit: Int) {
+        constructor() : this(ProcessOutputBuffer.DEFAULT_MEMORY_LIMIT)
+
+        val stdout = ProcessOutputBuffer(memoryLimit)
+        val stderr = ProcessOutputBuffer(memoryLimit)
+
+        @Volatile
+        var exitCode: Int? = null
+            internal set
+
+        @Volatile
         var isComplete: Boolean = false
+            internal set
+
+        private val changes = MutableStateFlow(0L)
+        private val openReaders = AtomicInteger()
+
+        @Volatile
+        internal var onDrained: (() -> Unit)? = null
+
+        /** Reader of the BashOutput tool, which returns only output written since its last call. */
+        val toolReader = newReader()
+
+        /** Increases whenever output is written or the process completes. */
+        val version: Long
+            get() = changes.value
+
+        fun newReader(): Reader {
+            openReaders.incrementAndGet()
+            return Reader()
+        }
+
+        /** Suspends until [version] differs from [seenVersion] or [timeoutMillis] passes. */
+        suspend fun awaitChange(seenVersion: Long, timeoutMillis: Long) {
+            withTimeoutOrNull(timeoutMillis) {
+                changes.first { it != seenVersion }
+            }
+        }
+
+        internal fun notifyChanged() {
+            changes.update { it + 1 }
+        }
+
+        internal fun close() {
+            stdout.close()
+            stderr.close()
+        }
+
+        inner class Reader {
+            private val stdoutCursor = ProcessOutputBuffer.Cursor()
+            private val stderrCursor = ProcessOutputBuffer.Cursor()
+            private var finished = false
+
+            @Synchronized
+            fun readNewOutput(): NewOutput {
+                // Completion is set after both streams closed, so this read reaches their end.
+                val complete = isComplete
+                val droppedBefore = droppedBytes()
+                val stdoutLines = stdout.readNewLines(stdoutCursor)
+                val stderrLines = stderr.readNewLines(stderrCursor)
+                if (complete) {
+                    close()
+                }
+                return NewOutput(stdoutLines, stderrLines, droppedBytes() - droppedBefore)
+            }
+
+            /** Stops counting this reader as one that still has output to read. */
+            @Synchronized
+            fun close() {
+                if (!finished) {
+                    finished = true
+                    if (openReaders.decrementAndGet() == 0 && isComplete) {
+                        onDrained?.invoke()
+                    }
+                }
+            }
+
+            private fun droppedBytes() = stdoutCursor.droppedBytes + stderrCursor.droppedBytes
+        }
+    }
+
+    data class NewOutput(
+        val stdout: List<String>,
+        val stderr: List<String>,
+        val droppedBytes: Long
     )
 
-    fun registerProcess(id: String, process: Process) {
+    /**
+     * Starts collecting the output of [process]. The output is kept after the process exits,
+     * until every reader has read all of it, [terminateProcess] is called, or the session is
+     * removed through [removeSession].
+     */
+    fun registerProcess(id: String, process: Process, sessionId: String? = null) {
         processes[id] = process
-        outputBuffers[id] = ProcessOutput()
+        outputBuffers[id] = ProcessOutput().apply {
+            onDrained = { releaseBuffers(id, this) }
+        }
+        sessionId?.let { sessionProcesses.computeIfAbsent(it) { ConcurrentHashMap.newKeySet() }.add(id) }
 
         scope.launch {
             try {
@@ -49,11 +153,46 @@ object BackgroundProcessManager {
         false
     }
 
+    /** Keeps the output log of a finished foreground command until [sessionId] is removed. */
+    fun registerLogFile(sessionId: String, logFile: Path) {
+        sessionLogFiles.computeIfAbsent(sessionId) { ConcurrentHashMap.newKeySet() }.add(logFile)
+    }
+
+    /**
+     * Terminates the processes started by [sessionId], releases their output and deletes the
+     * output logs of its foreground commands.
+     */
+    fun removeSession(sessionId: String) {
+        sessionProcesses.remove(sessionId)?.forEach { terminateProcess(it) }
+        sessionLogFiles.remove(sessionId)?.forEach { logFile ->
+            try {
+                Files.deleteIfExists(logFile)
+            } catch (e: Exception) {
+                logger.debug("Could not delete process output log: $logFile", e)
+            }
+        }
+    }
+
+    /** Forgets the process and releases its buffers and spill files. */
     private fun cleanup(id: String) {
         processes.remove(id)
-        scope.launch {
-            delay(30000)
-            outputBuffers.remove(id)
+        outputBuffers.remove(id)?.close()
+        sessionProcesses.values.forEach { it.remove(id) }
+    }
+
+    /**
+     * Replaces fully read output with an empty record of the same result, so the exit code can
+     * still be reported without keeping the buffers.
+     */
+    private fun releaseBuffers(id: String, output: ProcessOutput) {
+        val finished = ProcessOutput(memoryLimit = 0).apply {
+            stdout.closeWriter()
+            stderr.closeWriter()
+            exitCode = output.exitCode
+            isComplete = true
+        }
+        if (outputBuffers.replace(id, output, finished)) {
+            output.close()
         }
     }
 
@@ -61,40 +200,42 @@ object BackgroundProcessManager {
         val output = outputBuffers[bashId] ?: return
 
         withContext(Dispatchers.IO) {
-            val stdoutJob = launch {
-                try {
-                    process.inputStream.bufferedReader().useLines { lines ->
-                        lines.forEach { line ->
-                            output.stdout.appendLine(line)
-                        }
-                    }
-                } catch (_: Exception) {
-                    // Stream closed, ignore
-                }
-            }
+            try {
+                val stdoutJob = launch { copyStream(process.inputStream, output.stdout, output) }
+                val stderrJob = launch { copyStream(process.errorStream, output.stderr, output) }
 
-            val stderrJob = launch {
                 try {
-                    process.errorStream.bufferedReader().useLines { lines ->
-                        lines.forEach { line ->
-                            output.stderr.appendLine(line)
-                        }
-                    }
+                    process.waitFor()
+                    output.exitCode = process.exitValue()
                 } catch (_: Exception) {
-                    // Stream closed, ignore
                 }
-            }
 
-            try {
-                process.waitFor()
-                output.exitCode = process.exitValue()
-                output.isComplete = true
-            } catch (_: Exception) {
+                stdoutJob.join()
+                stderrJob.join()
+            } finally {
                 output.isComplete = true
+                output.notifyChanged()
             }
+        }
+    }
 
-            stdoutJob.join()
-            stderrJob.join()
+    private fun copyStream(stream: InputStream, buffer: ProcessOutputBuffer, output: ProcessOutput) {
+        try {
+            stream.use {
+                val bytes = ByteArray(READ_BUFFER_SIZE)
+                while (true) {
+                    val read = it.read(bytes)
+                    if (read < 0) {
+                        break
+                    }
+                    buffer.write(bytes, 0, read)
+                    output.notifyChanged()
+                }
+            }
+        } catch (_: Exception) {
+            // Stream closed, ignore
+        } finally {
+            buffer.closeWriter()
         }
     }
-}
\ No newline at end of file
+}
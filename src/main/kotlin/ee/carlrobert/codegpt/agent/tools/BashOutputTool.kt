@@ -74,37 +74,37 @@ class BashOutputTool(
                 exitCode = null
             )
 
-        val stdout = processOutput.stdout.toString()
-        val stderr = processOutput.stderr.toString()
-        val filteredStdout = getFilteredOutput(stdout, args.filter)
-        val filteredStderr = getFilteredOutput(stderr, args.filter)
+        val status = when {
+            processOutput.isComplete -> "completed"
+            BackgroundProcessManager.getProcess(args.bashId)?.isAlive == true -> "running"
+            else -> "terminated"
+        }
+        val newOutput = processOutput.toolReader.readNewOutput()
+        val filteredStdout = getFilteredOutput(newOutput.stdout, args.filter)
+        val filteredStderr = getFilteredOutput(newOutput.stderr, args.filter)
 
         if (toolId != null) {
             val publisher = ApplicationManager.getApplication()
                 .messageBus
                 .syncPublisher(AgentToolOutputNotifier.AGENT_TOOL_OUTPUT_TOPIC)
-            if (filteredStdout.isNotEmpty()) {
-                filteredStdout.split('\n').forEach { line ->
-                    if (line.isNotEmpty()) publisher.toolOutput(toolId, line, false)
-                }
+            filteredStdout.forEach { line ->
+                if (line.isNotEmpty()) publisher.toolOutput(toolId, line, false)
             }
-            if (filteredStderr.isNotEmpty()) {
-                filteredStderr.split('\n').forEach { line ->
-                    if (line.isNotEmpty()) publisher.toolOutput(toolId, line, true)
-                }
+            filteredStderr.forEach { line ->
+                if (line.isNotEmpty()) publisher.toolOutput(toolId, line, true)
             }
         }
 
-        val status = when {
-            processOutput.isComplete -> "completed"
-            BackgroundProcessManager.getProcess(args.bashId)?.isAlive == true -> "running"
-            else -> "terminated"
+        val droppedNotice = if (newOutput.droppedBytes > 0) {
+            "[${newOutput.droppedBytes} bytes of earlier output were dropped]\n"
+        } else {
+            ""
         }
 
         Result(
             bashId = args.bashId,
-            stdout = filteredStdout.trimEnd(),
-            stderr = filteredStderr.trimEnd(),
+            stdout = (droppedNotice + filteredStdout.joinToString("\n")).trimEnd(),
+            stderr = filteredStderr.joinToString("\n").trimEnd(),
             status = status,
             exitCode = processOutput.exitCode
         )
@@ -150,12 +150,12 @@ class BashOutputTool(
             }
         }.trimEnd().truncateToolResult()
 
-    private fun getFilteredOutput(output: String, filter: String?): String {
+    private fun getFilteredOutput(lines: List<String>, filter: String?): List<String> {
         return if (filter != null) {
             val regex = Regex(filter)
-            output.lines().filter { it.matches(regex) }.joinToString("\n")
+            lines.filter { it.matches(regex) }
         } else {
-            output
+            lines
         }
     }
 }
@@ -26,6 +26,7 @@ import kotlinx.serialization.SerialName
 import kotlinx.serialization.Serializable
 import java.io.File
 import java.io.IOException
+import java.io.InputStream
 import java.nio.file.Paths
 import java.util.*
 import java.util.concurrent.atomic.AtomicBoolean
@@ -72,7 +73,7 @@ class BashTool(
       - The command argument is required.
       - You can specify an optional timeout in milliseconds (up to 600000ms / 10 minutes). If not specified, commands will timeout after 120000ms (2 minutes).
       - It is very helpful if you write a clear, concise description of what this command does in 5-10 words.
-      - If the output exceeds 30000 characters, output will be truncated before being returned to you.
+      - If the output exceeds 30000 characters, only its beginning and end are returned to you, and the full output is saved to a log file that you can page through with the Read tool.
       - You can use the `run_in_background` parameter to run the command in the background, which allows you to continue working while the command runs. You can monitor the output using the Bash tool as it becomes available. You do not need to use '&' at the end of the command when using this parameter.
       - Avoid using Bash with the `find`, `grep`, `cat`, `head`, `tail`, `sed`, `awk`, or `echo` commands, unless explicitly instructed or when these commands are truly necessary for the task. Instead, always prefer using the dedicated tools for these commands:
         - Content search: Use Grep (NOT grep or rg)
@@ -181,6 +182,7 @@ class BashTool(
 
     companion object {
         const val NAME = "Bash"
+        private const val READ_BUFFER_SIZE = 8 * 1024
     }
 
 
@@ -361,8 +363,8 @@ class BashTool(
             .syncPublisher(AgentToolOutputNotifier.AGENT_TOOL_OUTPUT_TOPIC)
 
         return withContext(Dispatchers.IO) {
-            val stdoutBuilder = StringBuilder()
-            val stderrBuilder = StringBuilder()
+            val stdoutCapture = ProcessOutputCapture()
+            val stderrCapture = ProcessOutputCapture()
             val activityChannel = Channel<Unit>(Channel.CONFLATED)
 
             val shellCommand = buildShellCommand(args.command)
@@ -382,28 +384,14 @@ class BashTool(
                     }
                 }
                 val stdoutJob = launch {
-                    try {
-                        process.inputStream.bufferedReader().useLines { lines ->
-                            lines.forEach { line ->
-                                stdoutBuilder.appendLine(line)
-                                publisher.toolOutput(toolId, line, false)
-                                activityChannel.trySend(Unit)
-                            }
-                        }
-                    } catch (_: IOException) {
+                    captureStream(process.inputStream, stdoutCapture, activityChannel) { line ->
+                        publisher.toolOutput(toolId, line, false)
                     }
                 }
 
                 val stderrJob = launch {
-                    try {
-                        process.errorStream.bufferedReader().useLines { lines ->
-                            lines.forEach { line ->
-                                stderrBuilder.appendLine(line)
-                                publisher.toolOutput(toolId, line, true)
-                                activityChannel.trySend(Unit)
-                            }
-                        }
-                    } catch (_: IOException) {
+                    captureStream(process.errorStream, stderrCapture, activityChannel) { line ->
+                        publisher.toolOutput(toolId, line, true)
                     }
                 }
 
@@ -421,9 +409,13 @@ class BashTool(
                 stderrJob.join()
 
                 val combinedOutput = buildCombinedOutput(
-                    stdoutBuilder.toString().trimEnd(),
-                    stderrBuilder.toString().trimEnd(),
-                    if (timedOut.get()) "Command timed out after ${args.timeout}ms of inactivity" else null
+                    stdoutCapture.getText(),
+                    stderrCapture.getText(),
+                    if (timedOut.get()) "Command timed out after ${args.timeout}ms of inactivity" else null,
+                    listOfNotNull(
+                        stdoutCapture.getTruncationNotice(),
+                        stderrCapture.getTruncationNotice()
+                    )
                 )
 
                 refreshWorkingDirectory(workingDirectory)
@@ -438,7 +430,36 @@ class BashTool(
                 if (process.isAlive) {
                     terminateProcess(process)
                 }
+                stdoutCapture.close()
+                stderrCapture.close()
+                listOfNotNull(stdoutCapture.logFile, stderrCapture.logFile).forEach {
+                    BackgroundProcessManager.registerLogFile(sessionId, it)
+                }
+            }
+        }
+    }
+
+    private fun captureStream(
+        stream: InputStream,
+        capture: ProcessOutputCapture,
+        activityChannel: Channel<Unit>,
+        onLine: (String) -> Unit
+    ) {
+        try {
+            stream.reader().use { reader ->
+                val chars = CharArray(READ_BUFFER_SIZE)
+                while (true) {
+                    val read = reader.read(chars)
+                    if (read < 0) {
+                        break
+                    }
+                    capture.write(chars, 0, read, onLine)
+                    activityChannel.trySend(Unit)
+                }
             }
+        } catch (_: IOException) {
+        } finally {
+            capture.finish(onLine)
         }
     }
 
@@ -467,9 +488,11 @@ class BashTool(
     private fun buildCombinedOutput(
         stdout: String,
         stderr: String,
-        message: String? = null
+        message: String? = null,
+        truncationNotices: List<String> = emptyList()
     ): String {
         return buildString {
+            truncationNotices.forEach { appendLine(it) }
             if (stdout.isNotEmpty()) appendLine(stdout)
             if (stderr.isNotEmpty()) appendLine(stderr)
             message?.let { appendLine(it) }
@@ -558,7 +581,7 @@ class BashTool(
             }
             .start()
 
-        BackgroundProcessManager.registerProcess(bashId, process)
+        BackgroundProcessManager.registerProcess(bashId, process, sessionId)
         return bashId
     }
 
@@ -274,6 +274,7 @@ class EditTool(
 
                 count
             }
+            AgentFileCache.getInstance().invalidate(file.toPath())
 
             if (replacementsMade == 0) {
                 return Result.Error(
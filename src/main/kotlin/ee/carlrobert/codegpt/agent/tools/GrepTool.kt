@@ -0,0 +1,378 @@
+package ee.carlrobert.codegpt.agent.tools
+
+import ai.koog.agents.core.tools.annotations.LLMDescription
+import ai.koog.serialization.JSONSerializer
+import com.intellij.find.FindModel
+import com.intellij.find.impl.FindInProjectUtil
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.components.service
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.progress.EmptyProgressIndicator
+import com.intellij.openapi.progress.ProcessCanceledException
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.TextRange
+import com.intellij.openapi.vfs.LocalFileSystem
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.psi.search.GlobalSearchScope
+import com.intellij.usageView.UsageInfo
+import com.intellij.usages.FindUsagesProcessPresentation
+import com.intellij.usages.UsageViewPresentation
+import com.intellij.util.Processor
+import com.intellij.util.concurrency.AppExecutorUtil
+import ee.carlrobert.codegpt.settings.ProxyAISettingsService
+import ee.carlrobert.codegpt.settings.hooks.HookManager
+import ee.carlrobert.codegpt.tokens.truncateToolResult
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.job
+import kotlinx.coroutines.withContext
+import kotlinx.serialization.SerialName
+import kotlinx.serialization.Serializable
+import java.nio.file.FileSystems
+import java.nio.file.Path
+import java.nio.file.Paths
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.regex.Pattern
+import java.util.regex.PatternSyntaxException
+
+/**
+ * Content search backed by the IDE's Find in Files engine, which narrows candidate files with the
+ * trigram index and searches them in parallel. The search stops as soon as the requested number
+ * of results is collected.
+ */
+class GrepTool(
+    private val project: Project,
+    sessionId: String,
+    hookManager: HookManager,
+) : BaseTool<GrepTool.Args, GrepTool.Result>(
+    workingDirectory = project.basePath ?: System.getProperty("user.dir"),
+    argsClass = Args::class,
+    resultClass = Result::class,
+    name = NAME,
+    description = """
+        Searches file contents with a regular expression, using the IDE's index.
+
+        - Supports full Java regex syntax (e.g. "log.*Error", "fun\\s+\\w+")
+        - Filter files with the glob parameter (e.g. "*.kt", "src/**/*.{ts,tsx}")
+        - Output modes: "content" shows matching lines, "files_with_matches" shows only file
+          paths (default), "count" shows match counts per file
+        - Patterns match within a single line
+        - Files excluded from the project and files ignored in ProxyAI settings are not searched
+        - Use this instead of running grep or rg through Bash
+        - For file, class or symbol names, use IntelliJSearch instead
+    """.trimIndent(),
+    hookManager = hookManager,
+    sessionId = sessionId,
+) {
+
+    companion object {
+        const val NAME = "Grep"
+        private const val DEFAULT_LIMIT = 100
+        private const val MAX_LIMIT = 500
+        private const val MAX_LINE_LENGTH = 500
+        private const val SEARCH_TIMEOUT_SECONDS = 20L
+    }
+
+    enum class OutputMode(val id: String) {
+        CONTENT("content"),
+        FILES_WITH_MATCHES("files_with_matches"),
+        COUNT("count");
+
+        companion object {
+            fun from(value: String?): OutputMode? =
+                if (value.isNullOrBlank()) FILES_WITH_MATCHES
+                else entries.firstOrNull { it.id.equals(value.trim(), ignoreCase = true) }
+        }
+    }
+
+    @Serializable
+    data class Args(
+        @property:LLMDescription(
+            "The regular expression to search for in file contents"
+        )
+        val pattern: String,
+        @property:LLMDescription(
+            "File or directory to search in, absolute or relative to the project root. Defaults to the whole project."
+        )
+        val path: String? = null,
+        @property:LLMDescription(
+            "Glob pattern to filter files (e.g. \"*.kt\", \"*.{ts,tsx}\", \"src/**/*.java\")"
+        )
+        val glob: String? = null,
+        @property:LLMDescription(
+            "Output mode: 'content', 'files_with_matches' or 'count'. Default: 'files_with_matches'"
+        )
+        @SerialName("output_mode")
+        val outputMode: String? = null,
+        @property:LLMDescription(
+            "Case insensitive search. Default: false"
+        )
+        @SerialName("case_insensitive")
+        val caseInsensitive: Boolean? = null,
+        @property:LLMDescription(
+            "Maximum number of lines (content) or files (files_with_matches, count) to return. Default: 100"
+        )
+        @SerialName("head_limit")
+        val headLimit: Int? = null
+    )
+
+    @Serializable
+    data class Result(
+        val pattern: String,
+        val outputMode: String,
+        val totalMatches: Int,
+        val fileCount: Int,
+        val truncated: Boolean,
+        val output: String
+    )
+
+    override suspend fun doExecute(args: Args): Result {
+        val outputMode = OutputMode.from(args.outputMode)
+            ?: return errorResult(args, "Unknown output mode: ${args.outputMode}")
+        try {
+            Pattern.compile(args.pattern)
+        } catch (e: PatternSyntaxException) {
+            return errorResult(args, "Invalid regular expression: ${e.description}")
+        }
+
+        val root = if (args.path.isNullOrBlank()) {
+            null
+        } else {
+            resolvePath(args.path) ?: return errorResult(args, "Path not found: ${args.path}")
+        }
+        val limit = (args.headLimit ?: DEFAULT_LIMIT).coerceIn(1, MAX_LIMIT)
+
+        return try {
+            withContext(Dispatchers.IO) {
+                search(args, outputMode, root, limit, coroutineContext.job)
+            }
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            errorResult(args, "Search failed: ${e.message}")
+        }
+    }
+
+    override fun createDeniedResult(originalArgs: Args, deniedReason: String): Result =
+        errorResult(originalArgs, deniedReason)
+
+    override fun encodeResultToString(result: Result, serializer: JSONSerializer): String =
+        buildString {
+            appendLine("Pattern: ${result.pattern}")
+            appendLine("Found ${result.totalMatches} matches in ${result.fileCount} files")
+            appendLine()
+            append(result.output.ifEmpty { "No matches found." })
+            if (result.truncated) {
+                appendLine()
+                appendLine()
+                append("Results truncated. Narrow the search with path or glob, or raise head_limit.")
+            }
+        }.trimEnd().truncateToolResult()
+
+    private fun search(
+        args: Args,
+        outputMode: OutputMode,
+        root: VirtualFile?,
+        limit: Int,
+        job: Job,
+    ): Result {
+        val collector = MatchCollector(outputMode, limit)
+        val fileFilter = createFileFilter(args.glob, root)
+        val indicator = EmptyProgressIndicator()
+        val timeout = AppExecutorUtil.getAppScheduledExecutorService()
+            .schedule({ indicator.cancel() }, SEARCH_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        val jobCancellation = job.invokeOnCompletion { indicator.cancel() }
+
+        try {
+            ProgressManager.getInstance().runProcess({
+                FindInProjectUtil.findUsages(
+                    createFindModel(args, root),
+                    project,
+                    Processor<UsageInfo> { usage ->
+                        if (!job.isActive) {
+                            return@Processor false
+                        }
+                        val file = usage.virtualFile ?: return@Processor true
+                        !fileFilter(file) || collector.add(file, usage)
+                    },
+                    FindUsagesProcessPresentation(UsageViewPresentation())
+                )
+            }, indicator)
+        } catch (_: ProcessCanceledException) {
+            // Checked below: the search may also stop quietly without rethrowing it.
+        } finally {
+            timeout.cancel(false)
+            jobCancellation.dispose()
+        }
+        val timedOut = indicator.isCanceled && job.isActive
+
+        val output = collector.format()
+        return Result(
+            pattern = args.pattern,
+            outputMode = outputMode.id,
+            totalMatches = collector.totalMatches,
+            fileCount = collector.fileCount,
+            truncated = collector.truncated || timedOut,
+            output = if (timedOut) {
+                "$output\n\nSearch timed out after ${SEARCH_TIMEOUT_SECONDS}s; results are partial."
+                    .trimStart()
+            } else {
+                output
+            }
+        )
+    }
+
+    private fun createFindModel(args: Args, root: VirtualFile?): FindModel =
+        FindModel().apply {
+            stringToFind = args.pattern
+            isRegularExpressions = true
+            isCaseSensitive = args.caseInsensitive != true
+            searchContext = FindModel.SearchContext.ANY
+            if (isSimpleMask(args.glob)) {
+                fileFilter = args.glob
+            }
+
+            when {
+                root == null -> isProjectScope = true
+                root.isDirectory -> {
+                    isProjectScope = false
+                    directoryName = root.path
+                    isWithSubdirectories = true
+                }
+
+                else -> {
+                    isProjectScope = false
+                    setCustomScope(true)
+                    setCustomScope(GlobalSearchScope.fileScope(project, root))
+                }
+            }
+        }
+
+    /**
+     * Returns the filter applied to every matching file: ignore rules always, and the glob when
+     * the Find in Files file mask cannot express it.
+     */
+    private fun createFileFilter(glob: String?, root: VirtualFile?): (VirtualFile) -> Boolean {
+        val settingsService = project.service<ProxyAISettingsService>()
+        val ignored = ConcurrentHashMap<String, Boolean>()
+        val globMatcher = glob
+            ?.takeIf { it.isNotBlank() && !isSimpleMask(it) }
+            ?.let { FileSystems.getDefault().getPathMatcher("glob:$it") }
+        val basePath = (root?.takeIf { it.isDirectory }?.path ?: project.basePath)
+            ?.let { Paths.get(it) }
+
+        return { file ->
+            val isIgnored = ignored.computeIfAbsent(file.path) {
+                settingsService.isPathIgnored(it)
+            }
+            !isIgnored && (globMatcher == null || globMatcher.matches(globTarget(file, glob!!, basePath)))
+        }
+    }
+
+    private fun globTarget(file: VirtualFile, glob: String, basePath: Path?): Path {
+        val path = Paths.get(file.path)
+        if ('/' !in glob) {
+            return path.fileName
+        }
+        return if (basePath != null && path.startsWith(basePath)) basePath.relativize(path) else path
+    }
+
+    /** Whether Find in Files can apply [glob] itself as a comma-separated file name mask. */
+    private fun isSimpleMask(glob: String?): Boolean =
+        !glob.isNullOrBlank() && glob.none { it == '/' || it == '{' || it == '[' || it == '\\' }
+
+    private fun resolvePath(path: String): VirtualFile? {
+        val absolutePath = Paths.get(path).let {
+            if (it.isAbsolute) it else Paths.get(workingDirectory).resolve(it)
+        }.normalize().toString().replace('\\', '/')
+        return LocalFileSystem.getInstance().findFileByPath(absolutePath)
+    }
+
+    private fun errorResult(args: Args, message: String): Result =
+        Result(
+            pattern = args.pattern,
+            outputMode = args.outputMode ?: OutputMode.FILES_WITH_MATCHES.id,
+            totalMatches = 0,
+            fileCount = 0,
+            truncated = false,
+            output = message
+        )
+
+    /**
+     * Collects matches from the concurrent search. [add] returns false once [limit] lines or
+     * files are collected, which stops the search.
+     */
+    private class MatchCollector(
+        private val outputMode: OutputMode,
+        private val limit: Int,
+    ) {
+        private val countsByFile = LinkedHashMap<String, Int>()
+        private val lines = sortedMapOf<String, MutableMap<Int, String>>()
+        private var lineCount = 0
+
+        var totalMatches = 0
+            private set
+        var truncated = false
+            private set
+
+        val fileCount: Int
+            @Synchronized get() = countsByFile.size
+
+        @Synchronized
+        fun add(file: VirtualFile, usage: UsageInfo): Boolean {
+            if (truncated) {
+                return false
+            }
+            val path = file.path
+            if (path !in countsByFile && countsByFile.size >= limit) {
+                truncated = true
+                return false
+            }
+
+            if (outputMode == OutputMode.CONTENT) {
+                val (lineNumber, text) = getLine(file, usage) ?: return true
+                val fileLines = lines.getOrPut(path) { sortedMapOf() }
+                if (lineNumber !in fileLines) {
+                    if (lineCount >= limit) {
+                        truncated = true
+                        return false
+                    }
+                    fileLines[lineNumber] = text
+                    lineCount++
+                }
+            }
+            countsByFile.merge(path, 1, Int::plus)
+            totalMatches++
+            return true
+        }
+
+        @Synchronized
+        fun format(): String = when (outputMode) {
+            OutputMode.FILES_WITH_MATCHES -> countsByFile.keys.sorted().joinToString("\n")
+            OutputMode.COUNT -> countsByFile.toSortedMap().entries
+                .joinToString("\n") { (path, count) -> "$path:$count" }
+
+            OutputMode.CONTENT -> lines.entries.joinToString("\n") { (path, fileLines) ->
+                fileLines.entries.joinToString("\n") { (line, text) -> "$path:$line:$text" }
+            }
+        }
+
+        private fun getLine(file: VirtualFile, usage: UsageInfo): Pair<Int, String>? =
+            runReadAction {
+                val offset = usage.navigationRange?.startOffset ?: return@runReadAction null
+                val document = FileDocumentManager.getInstance().getDocument(file)
+                    ?: return@runReadAction null
+                if (offset > document.textLength) {
+                    return@runReadAction null
+                }
+                val line = document.getLineNumber(offset)
+                val text = document.getText(
+                    TextRange(document.getLineStartOffset(line), document.getLineEndOffset(line))
+                )
+                line + 1 to text.take(MAX_LINE_LENGTH)
+            }
+    }
+}
@@ -8,6 +8,8 @@ import com.intellij.ide.util.gotoByName.GotoFileModel
 import com.intellij.ide.util.gotoByName.GotoSymbolModel2
 import com.intellij.openapi.application.ReadAction
 import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.debug
+import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.editor.Document
 import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.project.Project
@@ -17,19 +19,28 @@ import com.intellij.openapi.util.TextRange
 import com.intellij.openapi.vfs.LocalFileSystem
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.*
+import com.intellij.psi.codeStyle.MinusculeMatcher
 import com.intellij.psi.codeStyle.NameUtil
 import com.intellij.psi.search.GlobalSearchScope
 import com.intellij.psi.search.GlobalSearchScopesCore
+import com.intellij.psi.util.PsiModificationTracker
 import com.intellij.util.concurrency.AppExecutorUtil
 import ee.carlrobert.codegpt.settings.ProxyAISettingsService
 import ee.carlrobert.codegpt.settings.hooks.HookManager
 import ee.carlrobert.codegpt.tokens.truncateToolResult
 import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.TimeoutCancellationException
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.runInterruptible
 import kotlinx.coroutines.withContext
 import kotlinx.coroutines.withTimeout
 import kotlinx.serialization.Serializable
 import java.nio.file.Paths
+import java.util.PriorityQueue
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
 import kotlin.time.Duration.Companion.seconds
 
 /**
@@ -65,8 +76,31 @@ class IntelliJSearchTool(
         const val MAX_CONTEXT_CHARS = 200
         const val MAX_OUTPUT_LINES = 100
         const val MAX_OUTPUT_CHARS = 6000
+        private const val CANDIDATE_NAMES_PER_RESULT = 4
+        private const val CANCELLATION_CHECK_MASK = 0xFFF
+
+        private val logger = thisLogger()
+    }
+
+    private enum class NameModel(val label: String) {
+        FILES("files"),
+        CLASSES("classes"),
+        SYMBOLS("symbols");
+
+        fun create(project: Project): ChooseByNameModel = when (this) {
+            FILES -> GotoFileModel(project)
+            CLASSES -> GotoClassModel2(project)
+            SYMBOLS -> GotoSymbolModel2(project, project)
+        }
     }
 
+    private class CachedNames(val modificationCount: Long, val names: Array<String>)
+
+    private class RankedName(val name: String, val degree: Int)
+
+    /** Name arrays of the models; one tool instance serves one agent session. */
+    private val nameCache = ConcurrentHashMap<NameModel, CachedNames>()
+
     @Serializable
     data class Args(
         @property:LLMDescription(
@@ -126,7 +160,8 @@ class IntelliJSearchTool(
         val scope: String,
         val totalMatches: Int,
         val matches: List<SearchMatch>,
-        val output: String
+        val output: String,
+        val timings: Map<String, Long> = emptyMap()
     )
 
     @Serializable
@@ -139,39 +174,33 @@ class IntelliJSearchTool(
     )
 
     override suspend fun doExecute(args: Args): Result {
+        val timings = ConcurrentHashMap<String, Long>()
         try {
             val maxResults = (args.limit ?: 10).coerceIn(1, 50)
             val matches = withTimeout(5.seconds) {
-                withContext(Dispatchers.IO) {
-                    ProgressManager.checkCanceled()
-                    val scope = createSearchScope(args, project)
-                    ReadAction
-                        .nonBlocking<List<SearchMatch>> {
-                            ProgressManager.checkCanceled()
-                            searchEverywhere(args.pattern, scope, maxResults)
-                        }
-                        .inSmartMode(project)
-                        .expireWith(project)
-                        .submit(AppExecutorUtil.getAppExecutorService())
-                        .get()
-                }
+                val scope = withContext(Dispatchers.IO) { createSearchScope(args, project) }
+                searchEverywhere(args.pattern, scope, maxResults, timings)
             }
             val output = formatOutput(matches, args)
+            logger.debug { "Search for '${args.pattern}' took $timings" }
 
             return Result(
                 pattern = args.pattern,
                 scope = args.scope ?: "project",
                 totalMatches = matches.size,
                 matches = matches,
-                output = output
+                output = output,
+                timings = timings.toSortedMap()
             )
         } catch (_: TimeoutCancellationException) {
+            logger.info("Search for '${args.pattern}' timed out after phases $timings")
             return Result(
                 pattern = args.pattern,
                 scope = args.scope ?: "project",
                 totalMatches = 0,
                 matches = emptyList(),
-                output = "Search timed out. Try a more specific pattern or lower scope."
+                output = "Search timed out. Try a more specific pattern or lower scope.",
+                timings = timings.toSortedMap()
             )
         } catch (e: Exception) {
             return Result(
@@ -228,86 +257,199 @@ class IntelliJSearchTool(
         }
     }
 
-    private fun searchEverywhere(
+    /**
+     * Searches the file, class and symbol models in parallel and merges their results in that
+     * order of priority.
+     */
+    private suspend fun searchEverywhere(
         pattern: String,
         scope: GlobalSearchScope,
-        limit: Int?
+        limit: Int?,
+        timings: MutableMap<String, Long>
     ): List<SearchMatch> {
-        val results = mutableListOf<SearchMatch>()
         val max = (limit ?: 10).coerceAtLeast(1)
 
         val tokens = pattern.split(Regex("[^A-Za-z0-9]+")).filter { it.isNotBlank() }
-        val tokenMatchers = if (tokens.isEmpty()) {
-            listOf(NameUtil.buildMatcher("*${pattern.trim()}*").build())
-        } else {
-            tokens.map { t -> NameUtil.buildMatcher("*$t*").build() }
+            .ifEmpty { listOf(pattern.trim()) }
+        val tokenMatchers = tokens.map { t -> NameUtil.buildMatcher("*$t*").build() }
+        // No name ranks above one that equals a token, so a heap full of those ends the scan.
+        val topDegree = tokens.zip(tokenMatchers).maxOf { (token, matcher) ->
+            matcher.matchingDegree(token)
         }
 
-        fun addFromModel(model: ChooseByNameModel) {
-            val names: Array<String> = when (model) {
-                is GotoFileModel -> model.getNames(true)
-                is GotoClassModel2 -> model.getNames(true)
-                is GotoSymbolModel2 -> model.getNames(true)
-                else -> emptyArray()
-            }
+        val results = coroutineScope {
+            NameModel.entries.map { nameModel ->
+                async(Dispatchers.IO) {
+                    searchModel(nameModel, tokenMatchers, topDegree, scope, max, timings)
+                }
+            }.awaitAll()
+        }
 
-            val ranked = names.mapNotNull { name ->
-                val degree = tokenMatchers.maxOfOrNull { it.matchingDegree(name) } ?: Int.MIN_VALUE
-                if (degree != Int.MIN_VALUE) name to degree else null
-            }.sortedByDescending { it.second }
-
-            for ((name, _) in ranked) {
-                val elements = when (model) {
-                    is GotoFileModel -> model.getElementsByName(name, true, name)
-                    is GotoClassModel2 -> model.getElementsByName(name, true, name)
-                    is GotoSymbolModel2 -> model.getElementsByName(name, true, name)
-                    else -> emptyArray()
-                }.filterIsInstance<PsiElement>()
-
-                for (psi in elements) {
-                    val target = psi.navigationElement ?: psi
-                    val psiFile = target.containingFile
-                    val vf = psiFile?.virtualFile
-                    if (vf != null && !scope.contains(vf)) continue
-
-                    val offset = when (target) {
-                        is PsiNameIdentifierOwner -> target.nameIdentifier?.textOffset
-                            ?: target.textOffset
-
-                        else -> target.textOffset
-                    }.coerceAtLeast(0)
-
-                    val document =
-                        psiFile?.let { PsiDocumentManager.getInstance(project).getDocument(it) }
-                    val (line, col) = computeLineCol(document, offset)
-                    val context = if (psiFile != null) getContextText(psiFile, offset) else null
-
-                    val displayFile = vf?.path ?: (psiFile?.name ?: psi.toString())
-                    val svc = project.service<ProxyAISettingsService>()
-                    if (vf?.path != null && svc.isPathIgnored(vf.path)) continue
-
-                    results.add(
-                        SearchMatch(
-                            file = displayFile,
-                            line = line,
-                            column = col,
-                            text = (target as? PsiNamedElement)?.name ?: name,
-                            context = context
-                        )
-                    )
+        return results.flatten().distinctBy { Triple(it.file, it.line, it.column) }.take(max)
+    }
 
-                    if (results.size >= max) return
+    private suspend fun searchModel(
+        nameModel: NameModel,
+        tokenMatchers: List<MinusculeMatcher>,
+        topDegree: Int,
+        scope: GlobalSearchScope,
+        max: Int,
+        timings: MutableMap<String, Long>
+    ): List<SearchMatch> {
+        val promise = ReadAction
+            .nonBlocking<List<SearchMatch>> {
+                ProgressManager.checkCanceled()
+                val model = nameModel.create(project)
+                val names = measure(timings, "${nameModel.label}.names") {
+                    getNames(nameModel, model)
+                }
+                val results = mutableListOf<SearchMatch>()
+                val resolvedNames = HashSet<String>()
+                var capacity = max * CANDIDATE_NAMES_PER_RESULT
+                while (true) {
+                    val ranked = measure(timings, "${nameModel.label}.rank") {
+                        rankNames(names, tokenMatchers, topDegree, capacity)
+                    }
+                    val batch = ranked.filter { resolvedNames.add(it) }
+                    results += measure(timings, "${nameModel.label}.resolve") {
+                        resolveMatches(model, batch, scope, max - results.size)
+                    }
+                    // Scope and ignore rules drop names after ranking, so rank further down
+                    // until enough of them resolve or no matching names are left.
+                    if (results.size >= max || ranked.size < capacity) break
+                    capacity = (capacity.toLong() * 2).coerceAtMost(Int.MAX_VALUE.toLong()).toInt()
                 }
+                results
+            }
+            .inSmartMode(project)
+            .expireWith(project)
+            .submit(AppExecutorUtil.getAppExecutorService())
+        return try {
+            runInterruptible { promise.get() }
+        } finally {
+            promise.cancel()
+        }
+    }
+
+    /**
+     * Returns the names of [model], cached for this agent session until PSI changes.
+     */
+    private fun getNames(nameModel: NameModel, model: ChooseByNameModel): Array<String> {
+        val modificationCount = PsiModificationTracker.getInstance(project).modificationCount
+        nameCache[nameModel]
+            ?.takeIf { it.modificationCount == modificationCount }
+            ?.let { return it.names }
+
+        val names: Array<String> = when (model) {
+            is GotoFileModel -> model.getNames(true)
+            is GotoClassModel2 -> model.getNames(true)
+            is GotoSymbolModel2 -> model.getNames(true)
+            else -> emptyArray()
+        }
+        nameCache[nameModel] = CachedNames(modificationCount, names)
+        return names
+    }
+
+    /**
+     * Keeps the [capacity] best matching names in a bounded min-heap, so ranking costs
+     * O(n log capacity) instead of sorting every match.
+     */
+    private fun rankNames(
+        names: Array<String>,
+        tokenMatchers: List<MinusculeMatcher>,
+        topDegree: Int,
+        capacity: Int
+    ): List<String> {
+        val heap = PriorityQueue<RankedName>(
+            minOf(capacity, names.size).coerceAtLeast(1),
+            compareBy { it.degree }
+        )
+        for ((index, name) in names.withIndex()) {
+            if (index and CANCELLATION_CHECK_MASK == 0) {
+                ProgressManager.checkCanceled()
+            }
+
+            var degree = Int.MIN_VALUE
+            for (matcher in tokenMatchers) {
+                degree = maxOf(degree, matcher.matchingDegree(name))
             }
+            if (degree == Int.MIN_VALUE) continue
+
+            if (heap.size < capacity) {
+                heap.add(RankedName(name, degree))
+            } else if (degree > heap.peek().degree) {
+                heap.poll()
+                heap.add(RankedName(name, degree))
+            }
+            if (heap.size == capacity && heap.peek().degree >= topDegree) break
         }
+        return heap.sortedByDescending { it.degree }.map { it.name }
+    }
 
-        addFromModel(GotoFileModel(project))
-        if (results.size >= max) return results.distinctBy { Triple(it.file, it.line, it.column) }
-        addFromModel(GotoClassModel2(project))
-        if (results.size >= max) return results.distinctBy { Triple(it.file, it.line, it.column) }
-        addFromModel(GotoSymbolModel2(project, project))
+    private fun resolveMatches(
+        model: ChooseByNameModel,
+        rankedNames: List<String>,
+        scope: GlobalSearchScope,
+        max: Int
+    ): List<SearchMatch> {
+        val results = mutableListOf<SearchMatch>()
+        val settingsService = project.service<ProxyAISettingsService>()
+
+        for (name in rankedNames) {
+            ProgressManager.checkCanceled()
+            val elements = when (model) {
+                is GotoFileModel -> model.getElementsByName(name, true, name)
+                is GotoClassModel2 -> model.getElementsByName(name, true, name)
+                is GotoSymbolModel2 -> model.getElementsByName(name, true, name)
+                else -> emptyArray()
+            }.filterIsInstance<PsiElement>()
+
+            for (psi in elements) {
+                val target = psi.navigationElement ?: psi
+                val psiFile = target.containingFile
+                val vf = psiFile?.virtualFile
+                if (vf != null && !scope.contains(vf)) continue
+                if (vf?.path != null && settingsService.isPathIgnored(vf.path)) continue
+
+                val offset = when (target) {
+                    is PsiNameIdentifierOwner -> target.nameIdentifier?.textOffset
+                        ?: target.textOffset
+
+                    else -> target.textOffset
+                }.coerceAtLeast(0)
+
+                val document =
+                    psiFile?.let { PsiDocumentManager.getInstance(project).getDocument(it) }
+                val (line, col) = computeLineCol(document, offset)
+                val context = if (psiFile != null) getContextText(psiFile, offset) else null
+
+                results.add(
+                    SearchMatch(
+                        file = vf?.path ?: (psiFile?.name ?: psi.toString()),
+                        line = line,
+                        column = col,
+                        text = (target as? PsiNamedElement)?.name ?: name,
+                        context = context
+                    )
+                )
 
-        return results.distinctBy { Triple(it.file, it.line, it.column) }.take(max)
+                if (results.size >= max) return results
+            }
+        }
+        return results
+    }
+
+    private inline fun <T> measure(
+        timings: MutableMap<String, Long>,
+        phase: String,
+        block: () -> T
+    ): T {
+        val start = System.nanoTime()
+        try {
+            return block()
+        } finally {
+            timings.merge(phase, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Long::plus)
+        }
     }
 
     private fun computeLineCol(document: Document?, offset: Int): Pair<Int?, Int?> {
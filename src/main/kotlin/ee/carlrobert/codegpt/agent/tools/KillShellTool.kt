@@ -59,6 +59,7 @@ class KillShellTool(
             )
         if (!process.isAlive) {
             val exitCode = runCatching { process.exitValue() }.getOrNull()
+            BackgroundProcessManager.terminateProcess(args.bashId)
             return@withContext Result(
                 bashId = args.bashId,
                 success = false,
@@ -0,0 +1,279 @@
+package ee.carlrobert.codegpt.agent.tools
+
+import com.intellij.openapi.editor.Document
+import com.intellij.openapi.util.SystemInfo
+import com.intellij.openapi.util.text.StringUtil
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+
+/**
+ * Reads windows of lines from files without loading them whole.
+ *
+ * The first read of a file scans it once and builds a sparse index with the byte offset of every
+ * [INDEX_STRIDE]th line. The index is cached by path while the file's size and modification time
+ * stay the same, so paging through a large file seeks to the nearest indexed line and decodes only
+ * the requested lines. Files of at least [MMAP_THRESHOLD] bytes are memory-mapped, except on
+ * Windows, where a mapping would keep the file locked against edits until it is garbage collected.
+ *
+ * Lines end at `\n`, `\r\n` or a lone `\r`, as in [String.lines]. Lines are split on raw bytes,
+ * so only charsets for which [supports] returns true can be read this way.
+ */
+object LineIndexedFileReader {
+
+    const val INDEX_STRIDE = 256
+
+    private const val MMAP_THRESHOLD = 4L shl 20
+    private const val MAP_REGION_SIZE = 256L shl 20
+    private const val READ_BUFFER_SIZE = 64 * 1024
+    private const val MAX_CACHED_INDEXES = 32
+    private const val LF = '\n'.code.toByte()
+    private const val CR = '\r'.code.toByte()
+
+    /** Lines of one window and the number of lines in the whole file. */
+    data class Window(val lines: List<String>, val totalLines: Int)
+
+    private class LineIndex(
+        val size: Long,
+        val lastModified: Long,
+        val contentStart: Long,
+        val lineStarts: LongArray,
+        val totalLines: Int,
+    )
+
+    private val indexes = object : LinkedHashMap<Path, LineIndex>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Path, LineIndex>): Boolean =
+            size > MAX_CACHED_INDEXES
+    }
+
+    /**
+     * Returns whether files in [charset] can be split into lines on raw bytes: line separators
+     * must be encoded as the single ASCII bytes, as in UTF-8 and the single-byte charsets, and
+     * unlike in UTF-16 or UTF-32.
+     */
+    fun supports(charset: Charset): Boolean =
+        runCatching { "\r\nA".toByteArray(charset).contentEquals(byteArrayOf(CR, LF, 'A'.code.toByte())) }
+            .getOrDefault(false)
+
+    /**
+     * Reads up to [maxLines] lines of [path] starting at the 0-based [startLine]. Lines are clipped
+     * to [maxLineLength] characters, and only that many are decoded. The first [bomSize] bytes of
+     * the file are skipped.
+     */
+    fun read(
+        path: Path,
+        startLine: Int,
+        maxLines: Int,
+        maxLineLength: Int,
+        charset: Charset = StandardCharsets.UTF_8,
+        bomSize: Int = 0,
+    ): Window {
+        require(supports(charset)) { "Lines of $charset files cannot be indexed by bytes" }
+        val filePath = path.toAbsolutePath().normalize()
+        FileChannel.open(filePath, StandardOpenOption.READ).use { channel ->
+            val index = getIndex(filePath, channel, bomSize.toLong())
+            val start = startLine.coerceIn(0, index.totalLines)
+            val end = (start.toLong() + maxLines.coerceAtLeast(0))
+                .coerceAtMost(index.totalLines.toLong())
+                .toInt()
+            if (start == end) {
+                return Window(emptyList(), index.totalLines)
+            }
+            return Window(
+                readLines(channel, index, start, end, maxLineLength, charset),
+                index.totalLines
+            )
+        }
+    }
+
+    /** Reads a window of an in-memory [document]. The caller must hold a read lock. */
+    fun read(document: Document, startLine: Int, maxLines: Int, maxLineLength: Int): Window {
+        val text = document.immutableCharSequence
+        val totalLines = StringUtil.countNewLines(text) + 1
+        val start = startLine.coerceIn(0, totalLines)
+        val end = (start.toLong() + maxLines.coerceAtLeast(0))
+            .coerceAtMost(totalLines.toLong())
+            .toInt()
+
+        val lines = (start until end).map { line ->
+            if (line >= document.lineCount) {
+                ""
+            } else {
+                val lineStart = document.getLineStartOffset(line)
+                val lineEnd = minOf(document.getLineEndOffset(line), lineStart + maxLineLength)
+                text.subSequence(lineStart, lineEnd).toString()
+            }
+        }
+        return Window(lines, totalLines)
+    }
+
+    fun invalidate(path: Path) {
+        synchronized(indexes) {
+            indexes.remove(path.toAbsolutePath().normalize())
+        }
+    }
+
+    private fun getIndex(path: Path, channel: FileChannel, bomSize: Long): LineIndex {
+        val attributes = Files.readAttributes(path, BasicFileAttributes::class.java)
+        val size = attributes.size()
+        val contentStart = bomSize.coerceIn(0, size)
+        val lastModified = attributes.lastModifiedTime().toMillis()
+        synchronized(indexes) { indexes[path] }
+            ?.takeIf {
+                it.size == size && it.lastModified == lastModified && it.contentStart == contentStart
+            }
+            ?.let { return it }
+
+        val index = buildIndex(channel, size, lastModified, contentStart)
+        synchronized(indexes) {
+            indexes[path] = index
+        }
+        return index
+    }
+
+    private fun buildIndex(
+        channel: FileChannel,
+        size: Long,
+        lastModified: Long,
+        contentStart: Long,
+    ): LineIndex {
+        var lineStarts = LongArray(16)
+        lineStarts[0] = contentStart
+        var indexedLines = 1
+        var lineCount = 1
+        var pendingCr = false
+
+        fun startLine(offset: Long) {
+            if (lineCount % INDEX_STRIDE == 0) {
+                if (indexedLines == lineStarts.size) {
+                    lineStarts = lineStarts.copyOf(lineStarts.size * 2)
+                }
+                lineStarts[indexedLines++] = offset
+            }
+            lineCount++
+        }
+
+        scan(channel, contentStart, size) { bytes, length, offset ->
+            for (i in 0 until length) {
+                val byte = bytes[i]
+                if (pendingCr) {
+                    pendingCr = false
+                    if (byte == LF) {
+                        startLine(offset + i + 1)
+                        continue
+                    }
+                    startLine(offset + i)
+                }
+                if (byte == LF) {
+                    startLine(offset + i + 1)
+                } else if (byte == CR) {
+                    pendingCr = true
+                }
+            }
+            true
+        }
+        if (pendingCr) {
+            startLine(size)
+        }
+        return LineIndex(size, lastModified, contentStart, lineStarts.copyOf(indexedLines), lineCount)
+    }
+
+    private fun readLines(
+        channel: FileChannel,
+        index: LineIndex,
+        start: Int,
+        end: Int,
+        maxLineLength: Int,
+        charset: Charset,
+    ): List<String> {
+        val lines = ArrayList<String>(minOf(end - start, READ_BUFFER_SIZE))
+        // Enough bytes for maxLineLength characters in any encoding used for source files.
+        val lineBytes = ByteArray(maxLineLength.coerceAtLeast(0) * 4 + 4)
+        var lineLength = 0
+        var lineNumber = start / INDEX_STRIDE * INDEX_STRIDE
+        var skipLf = false
+
+        fun endLine(): Boolean {
+            if (lineNumber >= start) {
+                lines.add(String(lineBytes, 0, lineLength, charset).take(maxLineLength))
+            }
+            lineLength = 0
+            lineNumber++
+            return lineNumber < end
+        }
+
+        scan(channel, index.lineStarts[start / INDEX_STRIDE], index.size) { bytes, length, _ ->
+            for (i in 0 until length) {
+                val byte = bytes[i]
+                if (skipLf) {
+                    skipLf = false
+                    if (byte == LF) {
+                        continue
+                    }
+                }
+                when (byte) {
+                    LF -> if (!endLine()) return@scan false
+                    CR -> {
+                        skipLf = true
+                        if (!endLine()) return@scan false
+                    }
+
+                    else -> if (lineNumber >= start && lineLength < lineBytes.size) {
+                        lineBytes[lineLength++] = byte
+                    }
+                }
+            }
+            true
+        }
+        if (lineNumber < end) {
+            endLine()
+        }
+        return lines
+    }
+
+    /**
+     * Passes the bytes of `[from, size)` to [consumer] in chunks, together with the file offset of
+     * each chunk, until it returns false.
+     */
+    private fun scan(
+        channel: FileChannel,
+        from: Long,
+        size: Long,
+        consumer: (bytes: ByteArray, length: Int, offset: Long) -> Boolean,
+    ) {
+        val chunk = ByteArray(READ_BUFFER_SIZE)
+        val end = minOf(size, channel.size())
+        var position = from
+        if (end >= MMAP_THRESHOLD && !SystemInfo.isWindows) {
+            while (position < end) {
+                val regionSize = minOf(MAP_REGION_SIZE, end - position)
+                val region = channel.map(FileChannel.MapMode.READ_ONLY, position, regionSize)
+                while (region.hasRemaining()) {
+                    val offset = position + region.position()
+                    val length = minOf(chunk.size, region.remaining())
+                    region.get(chunk, 0, length)
+                    if (!consumer(chunk, length, offset)) {
+                        return
+                    }
+                }
+                position += regionSize
+            }
+            return
+        }
+
+        val buffer = ByteBuffer.wrap(chunk)
+        while (position < end) {
+            buffer.clear()
+            val read = channel.read(buffer, position)
+            if (read <= 0 || !consumer(chunk, read, position)) {
+                return
+            }
+            position += read
+        }
+    }
+}
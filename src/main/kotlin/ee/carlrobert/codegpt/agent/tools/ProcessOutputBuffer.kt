@@ -0,0 +1,243 @@
+package ee.carlrobert.codegpt.agent.tools
+
+import com.intellij.openapi.diagnostic.thisLogger
+import java.io.Closeable
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+
+/**
+ * Bounded, thread-safe byte buffer for one output stream of a background process.
+ *
+ * Every byte has a sequence number, its offset in the stream, so each reader keeps its own
+ * [Cursor] and only reads what was written after it. The newest [memoryLimit] bytes are kept in a
+ * ring buffer that grows on demand up to that size; older bytes are moved to a temporary file until it holds [spillLimit] bytes, and
+ * are dropped after that. Readers that fall behind dropped output skip ahead and are told how
+ * many bytes they missed.
+ */
+class ProcessOutputBuffer(
+    private val memoryLimit: Int = DEFAULT_MEMORY_LIMIT,
+    private val spillLimit: Long = DEFAULT_SPILL_LIMIT,
+) : Closeable {
+
+    companion object {
+        const val DEFAULT_MEMORY_LIMIT = 1 shl 20
+        const val DEFAULT_SPILL_LIMIT = 64L shl 20
+        private const val INITIAL_CAPACITY = 8 * 1024
+        private const val MAX_READ_BYTES = 64 * 1024
+
+        private val logger = thisLogger()
+    }
+
+    class Cursor {
+        var position: Long = 0
+            internal set
+        var droppedBytes: Long = 0
+            internal set
+    }
+
+    private var ring = ByteArray(minOf(INITIAL_CAPACITY, memoryLimit))
+    private var endSequence = 0L
+    private var spilledBytes = 0L
+    private var spillFile: Path? = null
+    private var spillChannel: FileChannel? = null
+    private var writerClosed = false
+    private var spillDisabled = false
+
+    @get:Synchronized
+    val size: Long
+        get() = endSequence
+
+    private val memoryStart: Long
+        get() = maxOf(0L, endSequence - memoryLimit)
+
+    @Synchronized
+    fun write(bytes: ByteArray, offset: Int = 0, length: Int = bytes.size) {
+        if (length <= 0) {
+            return
+        }
+
+        val newEnd = endSequence + length
+        val newMemoryStart = maxOf(0L, newEnd - memoryLimit)
+        if (newMemoryStart > memoryStart) {
+            evict(memoryStart, newMemoryStart, bytes, offset)
+        }
+
+        if (ring.size < memoryLimit && newEnd > ring.size) {
+            // Nothing has wrapped around yet, so every byte is still at its sequence number.
+            ring = ring.copyOf(minOf(memoryLimit.toLong(), maxOf(ring.size * 2L, newEnd)).toInt())
+        }
+        val keptLength = minOf(length, memoryLimit)
+        copyIntoRing(bytes, offset + length - keptLength, keptLength, newEnd - keptLength)
+        endSequence = newEnd
+    }
+
+    /** Marks the stream as finished, so that a trailing line without a line break is readable. */
+    @Synchronized
+    fun closeWriter() {
+        writerClosed = true
+    }
+
+    /**
+     * Returns the complete lines written after [cursor] and moves it past them. A line longer
+     * than the read window, and the last line once the writer is closed, are returned even
+     * without a line break.
+     */
+    @Synchronized
+    fun readNewLines(cursor: Cursor): List<String> {
+        val lines = mutableListOf<String>()
+        while (true) {
+            skipDropped(cursor)
+            val readableEnd = if (cursor.position < spilledBytes) {
+                // Bytes between the spill file and the ring buffer were dropped.
+                if (spilledBytes < memoryStart) spilledBytes else endSequence
+            } else {
+                endSequence
+            }
+            val length = minOf(readableEnd - cursor.position, MAX_READ_BYTES.toLong()).toInt()
+            if (length == 0) {
+                break
+            }
+
+            val bytes = ByteArray(length)
+            readInto(cursor.position, bytes)
+            var consumed = bytes.lastIndexOf('\n'.code.toByte()) + 1
+            if (consumed == 0) {
+                val reachesEnd = cursor.position + length == endSequence
+                if (reachesEnd && !writerClosed) {
+                    break
+                }
+                consumed = length
+            }
+
+            String(bytes, 0, consumed, Charsets.UTF_8)
+                .removeSuffix("\n")
+                .split('\n')
+                .mapTo(lines) { it.removeSuffix("\r") }
+            cursor.position += consumed
+        }
+        return lines
+    }
+
+    /** Deletes the spill file; output that was only kept there is treated as dropped. */
+    @Synchronized
+    override fun close() {
+        spillDisabled = true
+        spilledBytes = 0
+        try {
+            spillChannel?.close()
+            spillFile?.let { Files.deleteIfExists(it) }
+        } catch (e: IOException) {
+            logger.debug("Could not delete process output spill file", e)
+        }
+        spillChannel = null
+        spillFile = null
+    }
+
+    private fun skipDropped(cursor: Cursor) {
+        if (cursor.position in spilledBytes until memoryStart) {
+            cursor.droppedBytes += memoryStart - cursor.position
+            cursor.position = memoryStart
+        }
+    }
+
+    /** Reads bytes starting at [from] from the spill file and the ring buffer. */
+    private fun readInto(from: Long, target: ByteArray) {
+        var position = from
+        var written = 0
+        if (position < spilledBytes) {
+            val length = minOf(spilledBytes - position, target.size.toLong()).toInt()
+            readSpill(position, target, length)
+            position += length
+            written = length
+        }
+        while (written < target.size) {
+            val ringIndex = (position % memoryLimit).toInt()
+            val length = minOf(target.size - written, memoryLimit - ringIndex)
+            System.arraycopy(ring, ringIndex, target, written, length)
+            position += length
+            written += length
+        }
+    }
+
+    /**
+     * Moves the bytes in `[from, to)` out of memory. Bytes before the current end are still in
+     * the ring buffer; the rest come straight from the write that overflows it.
+     */
+    private fun evict(from: Long, to: Long, incoming: ByteArray, incomingOffset: Int) {
+        if (spillDisabled || from != spilledBytes || spilledBytes >= spillLimit) {
+            return
+        }
+
+        val end = minOf(to, spillLimit)
+        var position = from
+        while (position < end) {
+            val length: Int
+            if (position < endSequence) {
+                val ringIndex = (position % memoryLimit).toInt()
+                length = minOf(
+                    end - position,
+                    (memoryLimit - ringIndex).toLong(),
+                    endSequence - position
+                ).toInt()
+                if (!spill(ring, ringIndex, length)) {
+                    return
+                }
+            } else {
+                length = (end - position).toInt()
+                val incomingIndex = incomingOffset + (position - endSequence).toInt()
+                if (!spill(incoming, incomingIndex, length)) {
+                    return
+                }
+            }
+            position += length
+        }
+    }
+
+    private fun spill(bytes: ByteArray, offset: Int, length: Int): Boolean {
+        return try {
+            val channel = spillChannel ?: openSpillChannel()
+            val buffer = ByteBuffer.wrap(bytes, offset, length)
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, spilledBytes + buffer.position() - offset)
+            }
+            spilledBytes += length
+            true
+        } catch (e: IOException) {
+            logger.warn("Could not spill process output to disk", e)
+            close()
+            false
+        }
+    }
+
+    private fun readSpill(position: Long, target: ByteArray, length: Int) {
+        val buffer = ByteBuffer.wrap(target, 0, length)
+        val channel = spillChannel ?: return
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break
+            }
+        }
+    }
+
+    private fun openSpillChannel(): FileChannel {
+        val file = Files.createTempFile("proxyai-process-output-", ".log")
+        file.toFile().deleteOnExit()
+        spillFile = file
+        return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+            .also { spillChannel = it }
+    }
+
+    private fun copyIntoRing(bytes: ByteArray, offset: Int, length: Int, startSequence: Long) {
+        var copied = 0
+        while (copied < length) {
+            val ringIndex = ((startSequence + copied) % memoryLimit).toInt()
+            val chunk = minOf(length - copied, memoryLimit - ringIndex)
+            System.arraycopy(bytes, offset + copied, ring, ringIndex, chunk)
+            copied += chunk
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package ee.carlrobert.codegpt.agent.tools
+
+import com.intellij.openapi.diagnostic.thisLogger
+import java.io.Closeable
+import java.io.IOException
+import java.io.Writer
+import java.nio.CharBuffer
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Bounded capture of one output stream of a foreground process.
+ *
+ * The first [headLimit] characters and the last [tailLimit] characters of the output are kept in
+ * memory, and the lines in between are only counted. Lines longer than [maxLineLength] are clipped,
+ * which keeps heap use constant whatever the size of the output. Once output is dropped or clipped
+ * for the first time, the unclipped output is written to a temporary log file (unless
+ * [logFilePrefix] is null) so that it can be paged through with the Read tool. The log is left in
+ * place when the capture is closed; its owner deletes it.
+ */
+class ProcessOutputCapture(
+    private val headLimit: Int = DEFAULT_HEAD_LIMIT,
+    private val tailLimit: Int = DEFAULT_TAIL_LIMIT,
+    private val maxLineLength: Int = minOf(DEFAULT_MAX_LINE_LENGTH, tailLimit),
+    private val logFilePrefix: String? = DEFAULT_LOG_FILE_PREFIX,
+    private val logLimit: Long = DEFAULT_LOG_LIMIT,
+) : Closeable {
+
+    companion object {
+        const val DEFAULT_HEAD_LIMIT = 10_000
+        const val DEFAULT_TAIL_LIMIT = 20_000
+        const val DEFAULT_MAX_LINE_LENGTH = 4_000
+        const val DEFAULT_LOG_FILE_PREFIX = "proxyai-bash-"
+        const val DEFAULT_LOG_LIMIT = 256L shl 20
+
+        private val logger = thisLogger()
+    }
+
+    private val head = StringBuilder()
+    private val tail = ArrayDeque<String>()
+    private val partialLine = StringBuilder()
+    private var headFull = false
+    private var tailLength = 0
+    private var clippedLength = 0L
+    private var logWriter: Writer? = null
+    private var logWrittenChars = 0L
+    private var logDisabled = logFilePrefix == null
+
+    var lineCount: Long = 0
+        private set
+    var droppedLines: Long = 0
+        private set
+    var droppedBytes: Long = 0
+        private set
+    var clippedLines: Long = 0
+        private set
+    var logFile: Path? = null
+        private set
+    var isLogTruncated: Boolean = false
+        private set
+
+    /**
+     * Appends a chunk of output and calls [onLine] with every line it completes. Completed lines
+     * are passed on clipped to [maxLineLength].
+     */
+    @Synchronized
+    fun write(chars: CharArray, offset: Int = 0, length: Int = chars.size, onLine: (String) -> Unit = {}) {
+        var lineStart = offset
+        val end = offset + length
+        for (index in offset until end) {
+            if (chars[index] == '\n') {
+                appendPartial(chars, lineStart, index - lineStart)
+                writeToLog("\n")
+                onLine(completeLine())
+                lineStart = index + 1
+            }
+        }
+        appendPartial(chars, lineStart, end - lineStart)
+    }
+
+    /** Completes a trailing line without a line break and closes the log file. */
+    @Synchronized
+    fun finish(onLine: (String) -> Unit = {}) {
+        if (partialLine.isNotEmpty() || clippedLength > 0) {
+            onLine(completeLine())
+        }
+        closeLog()
+    }
+
+    /**
+     * Returns the kept output. When lines were dropped, a short marker takes their place; the
+     * details are in [getTruncationNotice].
+     */
+    @Synchronized
+    fun getText(): String = buildString {
+        append(head)
+        if (droppedLines > 0) {
+            append("... [").append(droppedLines).append(" lines omitted]\n")
+        }
+        tail.forEach { append(it).append('\n') }
+    }.trimEnd()
+
+    /**
+     * Returns a one-line notice of what was dropped or clipped and where the full output is, or
+     * null when the output is complete. Callers put it before the output, so that truncating the
+     * result afterwards cannot cut it.
+     */
+    @Synchronized
+    fun getTruncationNotice(): String? {
+        if (droppedLines == 0L && clippedLines == 0L) {
+            return null
+        }
+        return buildString {
+            append("[Output truncated: ")
+            if (droppedLines > 0) {
+                append(droppedLines).append(" lines (").append(droppedBytes).append(" bytes) omitted")
+                if (clippedLines > 0) {
+                    append(", ")
+                }
+            }
+            if (clippedLines > 0) {
+                append(clippedLines).append(" long lines clipped")
+            }
+            logFile?.let {
+                append("; full output in ").append(it)
+                if (isLogTruncated) {
+                    append(" (first ").append(logLimit shr 20).append(" MB)")
+                }
+                append(", use Read with offset and limit to page through it")
+            }
+            append("]")
+        }
+    }
+
+    /** Closes the log file; output written after this is no longer logged. */
+    @Synchronized
+    override fun close() {
+        closeLog()
+        logDisabled = true
+    }
+
+    private fun appendPartial(chars: CharArray, offset: Int, length: Int) {
+        if (partialLine.length + length > maxLineLength && logWriter == null && !logDisabled) {
+            openLog()
+        }
+        writeToLog(CharBuffer.wrap(chars, offset, length))
+        val kept = minOf(length, maxLineLength - partialLine.length).coerceAtLeast(0)
+        partialLine.appendRange(chars, offset, offset + kept)
+        clippedLength += length - kept
+    }
+
+    private fun completeLine(): String {
+        var line = partialLine.toString().removeSuffix("\r")
+        if (clippedLength > 0) {
+            line += " ... [$clippedLength characters clipped]"
+            clippedLines++
+        }
+        partialLine.setLength(0)
+        clippedLength = 0
+        addLine(line)
+        return line
+    }
+
+    private fun addLine(line: String) {
+        lineCount++
+
+        if (!headFull) {
+            if (head.length + line.length + 1 <= headLimit) {
+                head.append(line).append('\n')
+                return
+            }
+            headFull = true
+        }
+
+        tail.addLast(line)
+        tailLength += line.length + 1
+        if (tailLength > tailLimit && tail.size > 1) {
+            if (logWriter == null && !logDisabled) {
+                openLog()
+            }
+            while (tailLength > tailLimit && tail.size > 1) {
+                val dropped = tail.removeFirst()
+                tailLength -= dropped.length + 1
+                droppedLines++
+                droppedBytes += utf8Length(dropped) + 1
+            }
+        }
+    }
+
+    /**
+     * Opens the log when output is first dropped or clipped; until then, all of it is still in
+     * memory, so the log starts with the kept lines and the current partial line. From then on the
+     * output is written to the log as it arrives, before it is clipped.
+     */
+    private fun openLog() {
+        try {
+            val file = Files.createTempFile(logFilePrefix!!, ".log")
+            file.toFile().deleteOnExit()
+            logFile = file
+            logWriter = Files.newBufferedWriter(file)
+            writeToLog(head)
+            tail.forEach {
+                writeToLog(it)
+                writeToLog("\n")
+            }
+            writeToLog(partialLine)
+        } catch (e: IOException) {
+            logger.warn("Could not write process output to a log file", e)
+            disableLog()
+        }
+    }
+
+    private fun writeToLog(text: CharSequence) {
+        val writer = logWriter ?: return
+        if (logWrittenChars + text.length > logLimit) {
+            isLogTruncated = true
+            closeLog()
+            logDisabled = true
+            return
+        }
+        try {
+            writer.append(text)
+            logWrittenChars += text.length
+        } catch (e: IOException) {
+            logger.warn("Could not write process output to a log file", e)
+            disableLog()
+        }
+    }
+
+    private fun disableLog() {
+        closeLog()
+        logDisabled = true
+        logFile?.let { runCatching { Files.deleteIfExists(it) } }
+        logFile = null
+    }
+
+    private fun closeLog() {
+        try {
+            logWriter?.close()
+        } catch (e: IOException) {
+            logger.debug("Could not close process output log file", e)
+        }
+        logWriter = null
+    }
+
+    private fun utf8Length(text: String): Int {
+        var length = 0
+        var index = 0
+        while (index < text.length) {
+            val char = text[index]
+            length += when {
+                char.code < 0x80 -> 1
+                char.code < 0x800 -> 2
+                Character.isHighSurrogate(char) && index + 1 < text.length -> {
+                    index++
+                    4
+                }
+
+                else -> 3
+            }
+            index++
+        }
+        return length
+    }
+}
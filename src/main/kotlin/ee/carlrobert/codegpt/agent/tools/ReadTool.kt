@@ -4,11 +4,14 @@ import ai.koog.agents.core.tools.annotations.LLMDescription
 import ai.koog.serialization.JSONSerializer
 import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.components.service
-import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.editor.Document
 import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.fileEditor.FileEditorManager
+import com.intellij.openapi.fileTypes.FileType
 import com.intellij.openapi.fileTypes.FileTypeManager
 import com.intellij.openapi.project.Project
 import com.intellij.openapi.vfs.LocalFileSystem
+import com.intellij.openapi.vfs.VirtualFile
 import ee.carlrobert.codegpt.settings.ProxyAISettingsService
 import ee.carlrobert.codegpt.settings.ToolPermissionPolicy
 import ee.carlrobert.codegpt.settings.hooks.HookEventType
@@ -18,10 +21,12 @@ import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.withContext
 import kotlinx.serialization.SerialName
 import kotlinx.serialization.Serializable
+import java.nio.charset.Charset
 import java.nio.charset.StandardCharsets
 import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Reads a file from the local filesystem using IntelliJ's Document and VirtualFile APIs.
@@ -49,6 +54,7 @@ class ReadTool(
         - Images are returned visually for analysis
         - PDFs are processed page by page
         - Jupyter notebooks return all cells with outputs
+        - Reading the same unchanged lines a second time returns a short notice instead of the content; any further read of them returns the content again
     """.trimIndent(),
     argsClass = Args::class,
     resultClass = Result::class,
@@ -58,9 +64,24 @@ class ReadTool(
 
     companion object {
         const val NAME = "Read"
-        private val logger = thisLogger()
+        private const val DEFAULT_LINE_LIMIT = 2000
+        private const val MAX_LINE_LENGTH = 2000
+        private const val UNCHANGED_SINCE_LAST_READ =
+            "File unchanged since last read. The content returned by the previous Read of these " +
+                "lines is still current; read them again if it is no longer available."
     }
 
+    private data class ReadKey(val path: Path, val window: String)
+
+    private data class ReadState(val version: AgentFileCache.Version, val stubbed: Boolean)
+
+    /**
+     * Line windows this tool returned, the file versions they were read at, and whether the stub
+     * was already returned for that version. Each agent creates its own tool, so subagents that
+     * share the parent's session do not get the parent's stubs.
+     */
+    private val reads = ConcurrentHashMap<ReadKey, ReadState>()
+
     @Serializable
     data class Args(
         @property:LLMDescription(
@@ -131,86 +152,34 @@ class ReadTool(
                 )
             }
 
-            val result = withContext(Dispatchers.Default) {
-                runReadAction {
-                    if (settingsService.isPathIgnored(args.filePath)) {
-                        return@runReadAction Result.Error(
-                            filePath = args.filePath,
-                            error = "File not found: ${args.filePath}"
-                        )
-                    }
-
-                    val fileSystemPath = path.toString().replace('\\', '/')
-                    val virtualFile = LocalFileSystem.getInstance().findFileByPath(fileSystemPath)
-
-                    val fileType = when {
-                        virtualFile != null -> FileTypeManager.getInstance()
-                            .getFileTypeByFile(virtualFile)
-
-                        else -> FileTypeManager.getInstance()
-                            .getFileTypeByFileName(path.fileName.toString())
-                    }
-
-                    when {
-                        fileType.isBinary -> {
-                            Result.Error(
-                                filePath = args.filePath,
-                                error = "Binary files are not supported by ProxyAI yet."
-                            )
-                        }
-
-                        else -> {
-                            val content = readFileContent(path, virtualFile?.path)
-
-                            val lines = content.lines()
-                            val totalLines = lines.size
-
-                            val (startIdx, endIdx, truncated) = when {
-                                args.offset != null && args.limit != null -> {
-                                    val start = (args.offset - 1).coerceIn(0, totalLines)
-                                    val end = (start + args.limit).coerceIn(start, totalLines)
-                                    Triple(start, end, end < totalLines)
-                                }
-
-                                args.offset != null -> {
-                                    val start = (args.offset - 1).coerceIn(0, totalLines)
-                                    Triple(start, totalLines, false)
-                                }
-
-                                args.limit != null -> {
-                                    Triple(
-                                        0,
-                                        args.limit.coerceIn(0, totalLines),
-                                        totalLines > args.limit
-                                    )
-                                }
-
-                                else -> {
-                                    val limit = 2000
-                                    Triple(0, limit.coerceIn(0, totalLines), totalLines > limit)
-                                }
-                            }
-
-                            val startLine = if (startIdx == 0) null else startIdx + 1
-                            val endLine = if (endIdx == totalLines) null else endIdx
+            if (settingsService.isPathIgnored(args.filePath)) {
+                return Result.Error(
+                    filePath = args.filePath,
+                    error = "File not found: ${args.filePath}"
+                )
+            }
 
-                            val selectedLines = lines.subList(startIdx, endIdx)
-                            val numberedContent = buildString {
-                                selectedLines.forEachIndexed { index, line ->
-                                    val lineNumber = startIdx + index + 1
-                                    appendLine("${lineNumber}\t${line.take(2000)}")
-                                }
-                            }
+            val fileCache = AgentFileCache.getInstance()
+            val window = "${args.offset}:${args.limit}"
+            val result = withContext(Dispatchers.IO) {
+                val version = fileCache.getVersion(path)
+                val readKey = ReadKey(path.toAbsolutePath().normalize(), window)
+                if (version != null
+                    && reads.replace(readKey, ReadState(version, false), ReadState(version, true))
+                ) {
+                    return@withContext Result.Success(
+                        filePath = args.filePath,
+                        content = UNCHANGED_SINCE_LAST_READ,
+                        lineCount = 0,
+                        truncated = false,
+                        fileType = null
+                    )
+                }
 
-                            Result.Success(
-                                filePath = args.filePath,
-                                content = numberedContent.trimEnd(),
-                                lineCount = selectedLines.size,
-                                truncated = truncated,
-                                fileType = fileType.name,
-                                startLine = startLine,
-                                endLine = endLine
-                            )
+                readFile(args, path).also {
+                    if (it is Result.Success && version != null) {
+                        reads.compute(readKey) { _, state ->
+                            state?.takeIf { it.version == version } ?: ReadState(version, false)
                         }
                     }
                 }
@@ -273,26 +242,105 @@ class ReadTool(
             }
         }
 
-    private fun readFileContent(path: Path, virtualFilePath: String?): String {
-        if (virtualFilePath != null) {
-            val virtualFile = LocalFileSystem.getInstance().findFileByPath(virtualFilePath)
-            if (virtualFile != null) {
-                try {
-                    val document = FileDocumentManager.getInstance().getDocument(virtualFile)
-                    if (document != null) {
-                        return document.text
-                    }
-                    return String(virtualFile.contentsToByteArray(), StandardCharsets.UTF_8)
-                } catch (e: Exception) {
-                    logger.error("Error reading document from $virtualFile", e)
-                }
+    /**
+     * Reads the requested lines. A file that is open in an editor or has unsaved changes is read
+     * from its document under a read lock; any other file is read from disk through
+     * [LineIndexedFileReader], which decodes only the requested lines and holds no lock.
+     */
+    private fun readFile(args: Args, path: Path): Result {
+        val startIndex = ((args.offset ?: 1) - 1).coerceAtLeast(0)
+        val maxLines = when {
+            args.limit != null -> args.limit
+            args.offset != null -> Int.MAX_VALUE
+            else -> DEFAULT_LINE_LIMIT
+        }
+
+        val fileSystemPath = path.toString().replace('\\', '/')
+        val read = runReadAction {
+            val virtualFile = LocalFileSystem.getInstance().findFileByPath(fileSystemPath)
+            val fileType = when {
+                virtualFile != null -> FileTypeManager.getInstance()
+                    .getFileTypeByFile(virtualFile)
+
+                else -> FileTypeManager.getInstance()
+                    .getFileTypeByFileName(path.fileName.toString())
             }
+            val charset = virtualFile?.charset ?: StandardCharsets.UTF_8
+            val byteIndexed = LineIndexedFileReader.supports(charset)
+            val document = virtualFile
+                ?.takeUnless { fileType.isBinary }
+                ?.let {
+                    if (byteIndexed) getEditedDocument(it)
+                    else FileDocumentManager.getInstance().getDocument(it)
+                }
+            FileRead(
+                fileType = fileType,
+                charset = charset,
+                bomSize = virtualFile?.bom?.size ?: 0,
+                byteIndexed = byteIndexed,
+                documentWindow = document?.let {
+                    LineIndexedFileReader.read(it, startIndex, maxLines, MAX_LINE_LENGTH)
+                }
+            )
         }
+        val fileType = read.fileType
 
-        return try {
-            Files.readString(path, StandardCharsets.UTF_8)
-        } catch (_: Exception) {
-            String(Files.readAllBytes(path), StandardCharsets.UTF_8)
+        if (fileType.isBinary) {
+            return Result.Error(
+                filePath = args.filePath,
+                error = "Binary files are not supported by ProxyAI yet."
+            )
         }
+        if (read.documentWindow == null && !read.byteIndexed) {
+            return Result.Error(
+                filePath = args.filePath,
+                error = "Unable to read ${read.charset.name()} file, it may be too large."
+            )
+        }
+
+        val window = read.documentWindow
+            ?: LineIndexedFileReader.read(
+                path,
+                startIndex,
+                maxLines,
+                MAX_LINE_LENGTH,
+                read.charset,
+                read.bomSize
+            )
+        val totalLines = window.totalLines
+        val startIdx = startIndex.coerceAtMost(totalLines)
+        val endIdx = startIdx + window.lines.size
+
+        val numberedContent = buildString {
+            window.lines.forEachIndexed { index, line ->
+                val lineNumber = startIdx + index + 1
+                appendLine("${lineNumber}\t${line.take(MAX_LINE_LENGTH)}")
+            }
+        }
+
+        return Result.Success(
+            filePath = args.filePath,
+            content = numberedContent.trimEnd(),
+            lineCount = window.lines.size,
+            truncated = endIdx < totalLines,
+            fileType = fileType.name,
+            startLine = if (startIdx == 0) null else startIdx + 1,
+            endLine = if (endIdx == totalLines) null else endIdx
+        )
+    }
+
+    private class FileRead(
+        val fileType: FileType,
+        val charset: Charset,
+        val bomSize: Int,
+        val byteIndexed: Boolean,
+        val documentWindow: LineIndexedFileReader.Window?,
+    )
+
+    private fun getEditedDocument(virtualFile: VirtualFile): Document? {
+        val fileDocumentManager = FileDocumentManager.getInstance()
+        val document = fileDocumentManager.getCachedDocument(virtualFile) ?: return null
+        val isOpen = FileEditorManager.getInstance(project).isFileOpen(virtualFile)
+        return document.takeIf { isOpen || fileDocumentManager.isDocumentUnsaved(it) }
     }
 }
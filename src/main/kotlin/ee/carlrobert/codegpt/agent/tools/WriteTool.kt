@@ -187,6 +187,7 @@ class WriteTool(
                 }
             }
 
+            AgentFileCache.getInstance().invalidate(file.toPath())
             val action = if (isNewFile) "created" else "overwritten"
 
             Result.Success(
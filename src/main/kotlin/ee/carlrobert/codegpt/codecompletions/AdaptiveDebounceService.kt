@@ -0,0 +1,161 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.thisLogger
+import ee.carlrobert.codegpt.settings.service.ServiceType
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Learns the user's inter-keystroke timing and each provider's completion latency, and picks the
+ * debounce delay with the lowest expected cost. A request is wasted when the next keystroke
+ * arrives after the debounce fired but before the response came back; each wasted request is
+ * weighted as [WASTED_REQUEST_COST_MS] of extra waiting time.
+ */
+@Service
+class AdaptiveDebounceService {
+
+    companion object {
+        const val DEFAULT_DEBOUNCE_MS = 500L
+
+        private const val MIN_DEBOUNCE_MS = 50L
+        private const val MAX_DEBOUNCE_MS = 600L
+        private const val DEBOUNCE_STEP_MS = 25L
+        private const val WASTED_REQUEST_COST_MS = 300.0
+        private const val MAX_KEYSTROKE_INTERVAL_MS = 2_000L
+        private const val DEFAULT_LATENCY_MS = 400L
+        private const val MIN_KEYSTROKE_SAMPLES = 20
+        private const val MIN_LATENCY_SAMPLES = 5
+        private const val SAMPLE_SIZE = 200
+
+        private val logger = thisLogger()
+
+        @JvmStatic
+        fun getInstance(): AdaptiveDebounceService = service()
+    }
+
+    private val keystrokeIntervals = SampleWindow(SAMPLE_SIZE)
+    private val providerStats = ConcurrentHashMap<ServiceType, ProviderStats>()
+
+    fun recordKeystrokeInterval(intervalMs: Long) {
+        keystrokeIntervals.add(intervalMs.coerceIn(0, MAX_KEYSTROKE_INTERVAL_MS))
+    }
+
+    fun recordCompleted(serviceType: ServiceType, latencyMs: Long) {
+        providerStats(serviceType).apply {
+            latencies.add(latencyMs)
+            completed.incrementAndGet()
+        }
+    }
+
+    fun recordCancelled(serviceType: ServiceType) {
+        providerStats(serviceType).cancelled.incrementAndGet()
+    }
+
+    fun getDebounceDelay(serviceType: ServiceType): Long {
+        val intervals = keystrokeIntervals.sorted()
+        if (intervals.size < MIN_KEYSTROKE_SAMPLES) {
+            return DEFAULT_DEBOUNCE_MS
+        }
+
+        val latency = getLatencyPercentile(serviceType, 0.5) ?: DEFAULT_LATENCY_MS
+        var bestDelay = DEFAULT_DEBOUNCE_MS
+        var bestCost = Double.MAX_VALUE
+        for (delay in MIN_DEBOUNCE_MS..MAX_DEBOUNCE_MS step DEBOUNCE_STEP_MS) {
+            val fired = intervals.size - upperBound(intervals, delay)
+            val wasted = lowerBound(intervals, delay + latency) - upperBound(intervals, delay)
+            val wasteRatio = if (fired == 0) 0.0 else wasted.toDouble() / fired
+            val cost = delay + WASTED_REQUEST_COST_MS * wasteRatio
+            if (cost < bestCost) {
+                bestCost = cost
+                bestDelay = delay
+            }
+        }
+
+        val stats = providerStats(serviceType)
+        if (stats.lastDelay.getAndSet(bestDelay) != bestDelay) {
+            logger.debug("Debounce delay for $serviceType set to $bestDelay ms (p50 latency $latency ms)")
+        }
+        return bestDelay
+    }
+
+    fun getMetrics(serviceType: ServiceType): Metrics {
+        val stats = providerStats(serviceType)
+        val completed = stats.completed.get()
+        val cancelled = stats.cancelled.get()
+        return Metrics(
+            debounceMs = stats.lastDelay.get(),
+            latencyP50Ms = getLatencyPercentile(serviceType, 0.5),
+            latencyP95Ms = getLatencyPercentile(serviceType, 0.95),
+            cancelledRatio = if (completed + cancelled == 0L) 0.0
+            else cancelled.toDouble() / (completed + cancelled)
+        )
+    }
+
+    private fun getLatencyPercentile(serviceType: ServiceType, percentile: Double): Long? {
+        val latencies = providerStats(serviceType).latencies.sorted()
+        if (latencies.size < MIN_LATENCY_SAMPLES) {
+            return null
+        }
+        return latencies[((latencies.size - 1) * percentile).toInt()]
+    }
+
+    private fun providerStats(serviceType: ServiceType): ProviderStats {
+        return providerStats.computeIfAbsent(serviceType) { ProviderStats() }
+    }
+
+    /** Index of the first value that is not less than [value]. */
+    private fun lowerBound(sorted: LongArray, value: Long): Int {
+        var low = 0
+        var high = sorted.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (sorted[mid] < value) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    /** Index of the first value that is greater than [value]. */
+    private fun upperBound(sorted: LongArray, value: Long): Int {
+        var low = 0
+        var high = sorted.size
+        while (low < high) {
+            val mid = (low + high) ushr 1
+            if (sorted[mid] <= value) low = mid + 1 else high = mid
+        }
+        return low
+    }
+
+    data class Metrics(
+        val debounceMs: Long,
+        val latencyP50Ms: Long?,
+        val latencyP95Ms: Long?,
+        val cancelledRatio: Double,
+    )
+
+    private class ProviderStats {
+        val latencies = SampleWindow(SAMPLE_SIZE)
+        val completed = AtomicLong()
+        val cancelled = AtomicLong()
+        val lastDelay = AtomicLong(DEFAULT_DEBOUNCE_MS)
+    }
+
+    private class SampleWindow(capacity: Int) {
+        private val samples = LongArray(capacity)
+        private var size = 0
+        private var next = 0
+
+        @Synchronized
+        fun add(sample: Long) {
+            samples[next] = sample
+            next = (next + 1) % samples.size
+            size = minOf(size + 1, samples.size)
+        }
+
+        @Synchronized
+        fun sorted(): LongArray {
+            return samples.copyOf(size).apply { sort() }
+        }
+    }
+}
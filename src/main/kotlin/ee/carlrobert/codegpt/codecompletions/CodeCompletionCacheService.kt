@@ -5,73 +5,197 @@ import com.google.common.cache.CacheBuilder
 import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.editor.Editor
-import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
+/**
+ * Caches completions by the text around the caret rather than by the whole document. Keys are
+ * rolling hashes of a fixed-size window before and after the caret, which also makes it cheap to
+ * look up completions requested a few characters earlier: when the text typed since then matches
+ * the start of a cached completion, the rest of it is served without a new request. Entries keep
+ * the windows themselves, so a hash collision is never served.
+ */
 @Service(Service.Level.PROJECT)
-class CodeCompletionCacheService() {
-    private val cacheCounter = ConcurrentHashMap<String, Int>()
-    private val cache: Cache<String, String> = CacheBuilder.newBuilder()
-        .maximumSize(10)
-        .recordStats()
-        .build()
+class CodeCompletionCacheService {
 
-    fun get(key: String): String? {
-        val value = cache.getIfPresent(key)
-        if (value != null) {
-            cache.invalidate(key)
-            cache.put(key, value)
+    companion object {
+        private const val PREFIX_WINDOW = 512
+        private const val SUFFIX_WINDOW = 128
+        private const val MAX_TYPED_AHEAD = 64
+        private const val MAX_REUSES = 3
+        private const val MAX_ENTRIES = 256L
+        private const val TTL_MINUTES = 5L
+        private const val BASE = 1_000_003L
+
+        private val BASE_POW_PREFIX_WINDOW = pow(BASE, PREFIX_WINDOW)
+
+        private fun pow(base: Long, exponent: Int): Long {
+            var result = 1L
+            repeat(exponent) { result *= base }
+            return result
         }
-        return value
     }
 
+    private val cache: Cache<Key, Entry> = CacheBuilder.newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        .expireAfterWrite(TTL_MINUTES, TimeUnit.MINUTES)
+        .build()
+    private val hits = AtomicLong()
+    private val typedAheadHits = AtomicLong()
+    private val misses = AtomicLong()
+
     fun clear() {
         cache.invalidateAll()
     }
 
-    fun delete(key: String) {
-        cache.invalidate(key)
+    /**
+     * Returns the cached completion at the caret of [editor]. Completions that were cached before
+     * the caret reached their position, such as prefetched ones, are formatted here like any
+     * other completion.
+     */
+    fun getCache(editor: Editor): String? {
+        val (text, caretOffset) = runReadAction {
+            editor.document.immutableCharSequence to editor.caretModel.offset
+        }
+        val hit = find(text, caretOffset) ?: return null
+        return if (hit.formatted) hit.completion else CodeCompletionFormatter(editor).format(hit.completion)
+    }
+
+    /**
+     * Returns the cached completion at the caret, or the untyped rest of a completion that was
+     * requested up to [MAX_TYPED_AHEAD] characters earlier and still matches the typed text.
+     */
+    fun getCache(text: CharSequence, caretOffset: Int): String? = find(text, caretOffset)?.completion
+
+    private fun find(text: CharSequence, caretOffset: Int): Hit? {
+        val suffixHash = hash(text, caretOffset, minOf(text.length, caretOffset + SUFFIX_WINDOW))
+        val maxTypedAhead = minOf(MAX_TYPED_AHEAD, caretOffset)
+        val prefixHashes = prefixHashes(text, caretOffset - maxTypedAhead, caretOffset)
+
+        for (typedLength in 0..maxTypedAhead) {
+            val key = Key(prefixHashes[maxTypedAhead - typedLength], suffixHash)
+            val entry = cache.getIfPresent(key) ?: continue
+            if (!entry.matches(text, caretOffset - typedLength, caretOffset)) {
+                continue
+            }
+            if (typedLength == 0) {
+                return reuse(key, entry, entry.completion)
+            }
+
+            val completion = entry.completion
+            if (completion.length > typedLength
+                && completion.startsWithRegion(text, caretOffset - typedLength, typedLength)
+            ) {
+                typedAheadHits.incrementAndGet()
+                return reuse(key, entry, completion.substring(typedLength))
+            }
+        }
+
+        misses.incrementAndGet()
+        return null
+    }
+
+    /**
+     * Caches [completion] for the caret between [prefix] and [suffix]. Pass false for [formatted]
+     * when the completion has not been through [CodeCompletionFormatter] yet, because the editor
+     * was not at that position when it arrived.
+     */
+    fun setCache(prefix: String, suffix: String, completion: String, formatted: Boolean = true) {
+        val prefixWindow = prefix.substring(maxOf(0, prefix.length - PREFIX_WINDOW))
+        val suffixWindow = suffix.substring(0, minOf(suffix.length, SUFFIX_WINDOW))
+        cache.put(getKey(prefix, suffix), Entry(completion, formatted, prefixWindow, suffixWindow))
+    }
+
+    fun contains(prefix: String, suffix: String): Boolean {
+        return cache.getIfPresent(getKey(prefix, suffix)) != null
     }
 
-    fun set(key: String, value: String) {
-        cache.put(key, value)
+    fun getStats(): Stats {
+        return Stats(hits.get(), typedAheadHits.get(), misses.get(), cache.size())
     }
 
-    fun normalize(src: String): String {
-        return src.replace("\n", "").replace("\\s+".toRegex(), "").replace("\\s".toRegex(), "")
+    private fun getKey(prefix: String, suffix: String): Key {
+        val prefixHash = hash(prefix, maxOf(0, prefix.length - PREFIX_WINDOW), prefix.length)
+        val suffixHash = hash(suffix, 0, minOf(suffix.length, SUFFIX_WINDOW))
+        return Key(prefixHash, suffixHash)
     }
 
-    fun getKey(prefix: String, suffix: String): String {
-        return if (suffix.isNotEmpty()) {
-            normalize("$prefix #### $suffix")
-        } else {
-            normalize(prefix)
+    private fun reuse(key: Key, entry: Entry, completion: String): Hit? {
+        if (entry.reuses.incrementAndGet() > MAX_REUSES) {
+            cache.invalidate(key)
+            misses.incrementAndGet()
+            return null
         }
+        hits.incrementAndGet()
+        return Hit(completion, entry.formatted)
     }
 
-    fun getCache(editor: Editor): String? {
-        val caretOffset = runReadAction { editor.caretModel.offset }
-        val prefix = editor.document.text.substring(0, caretOffset)
-        val suffix = editor.document.text.substring(caretOffset)
-        return getCache(prefix, suffix)
+    /**
+     * Hashes of the prefix windows ending at every offset in [fromEnd]..[toEnd], computed by
+     * rolling a single window forward instead of hashing each window from scratch.
+     */
+    private fun prefixHashes(text: CharSequence, fromEnd: Int, toEnd: Int): LongArray {
+        val hashes = LongArray(toEnd - fromEnd + 1)
+        var hash = hash(text, maxOf(0, fromEnd - PREFIX_WINDOW), fromEnd)
+        hashes[0] = hash
+        for (end in fromEnd + 1..toEnd) {
+            hash = hash * BASE + text[end - 1].code
+            val removed = end - 1 - PREFIX_WINDOW
+            if (removed >= 0) {
+                hash -= text[removed].code * BASE_POW_PREFIX_WINDOW
+            }
+            hashes[end - fromEnd] = hash
+        }
+        return hashes
     }
 
-    fun getCache(prefix: String, suffix: String): String? {
-        val key = getKey(prefix, suffix)
-        if (cacheCounter.containsKey(key)) {
-            cacheCounter[key] = cacheCounter[key]!! + 1
-        } else {
-            cacheCounter[key] = 1
+    private fun hash(text: CharSequence, start: Int, end: Int): Long {
+        var hash = 0L
+        for (i in start until end) {
+            hash = hash * BASE + text[i].code
         }
-        if (cacheCounter[key]!! > 3) {
-            cache.invalidate(key)
-            cacheCounter.remove(key)
+        return hash
+    }
+
+    private fun String.startsWithRegion(other: CharSequence, otherOffset: Int, length: Int): Boolean {
+        for (i in 0 until length) {
+            if (this[i] != other[otherOffset + i]) {
+                return false
+            }
         }
+        return true
+    }
 
-        return get(key)
+    data class Stats(val hits: Long, val typedAheadHits: Long, val misses: Long, val size: Long) {
+        val hitRate: Double
+            get() = if (hits + misses == 0L) 0.0 else hits.toDouble() / (hits + misses)
     }
 
-    fun setCache(prefix: String, suffix: String, completion: String) {
-        val key = getKey(prefix, suffix)
-        set(key, completion)
+    private data class Key(val prefixHash: Long, val suffixHash: Long)
+
+    private class Entry(
+        val completion: String,
+        val formatted: Boolean,
+        val prefixWindow: String,
+        val suffixWindow: String,
+    ) {
+        val reuses = AtomicInteger()
+
+        /**
+         * Whether [text] has this entry's windows before [prefixEnd] and after [suffixStart].
+         */
+        fun matches(text: CharSequence, prefixEnd: Int, suffixStart: Int): Boolean {
+            val prefixStart = prefixEnd - prefixWindow.length
+            return prefixStart >= 0
+                    && (prefixStart == 0 || prefixWindow.length == PREFIX_WINDOW)
+                    && suffixStart + suffixWindow.length <= text.length
+                    && (suffixStart + suffixWindow.length == text.length
+                    || suffixWindow.length == SUFFIX_WINDOW)
+                    && prefixWindow.regionMatches(0, text, prefixStart, prefixWindow.length)
+                    && suffixWindow.regionMatches(0, text, suffixStart, suffixWindow.length)
+        }
     }
-}
\ No newline at end of file
+
+    private class Hit(val completion: String, val formatted: Boolean)
+}
@@ -33,10 +33,14 @@ class CodeCompletionEventListener(
     private val cancelled = AtomicBoolean(false)
     private val messageBuilder = StringBuilder()
     private val cursorOffset = runReadAction { editor.caretModel.offset }
+    private val modificationStamp = editor.document.modificationStamp
     private val prefix = editor.document.getText(TextRange(0, cursorOffset))
     private val suffix =
         editor.document.getText(TextRange(cursorOffset, editor.document.textLength))
     private val cache = editor.project?.service<CodeCompletionCacheService>()
+    private val serviceType =
+        service<ModelSettings>().getServiceForFeature(FeatureType.CODE_COMPLETION)
+    private val requestStartTime = System.currentTimeMillis()
 
     override fun onOpen() {
         setLoading(true)
@@ -59,9 +63,25 @@ class CodeCompletionEventListener(
                 return
             }
 
-            val finalResult = CodeCompletionFormatter(editor).format(messageBuilder.toString())
+            AdaptiveDebounceService.getInstance()
+                .recordCompleted(serviceType, System.currentTimeMillis() - requestStartTime)
+
+            val repairedResult = editor.project?.service<DocumentSyntaxTreeService>()
+                ?.repairCompletion(
+                    editor.document,
+                    modificationStamp,
+                    prefix,
+                    suffix,
+                    messageBuilder.toString()
+                )
+                ?: messageBuilder.toString()
+            val finalResult = CodeCompletionFormatter(editor).format(repairedResult)
             cache?.setCache(prefix, suffix, finalResult)
             runInEdt { channel.trySend(InlineCompletionGrayTextElement(finalResult)) }
+            if (finalResult.isNotBlank()) {
+                editor.project?.service<CodeCompletionPrefetchService>()
+                    ?.prefetch(editor, prefix + finalResult, suffix)
+            }
         } finally {
             handleCompleted()
         }
@@ -69,6 +89,7 @@ class CodeCompletionEventListener(
 
     override fun onCancelled(messageBuilder: StringBuilder) {
         cancelled.set(true)
+        AdaptiveDebounceService.getInstance().recordCancelled(serviceType)
         handleCompleted()
     }
 
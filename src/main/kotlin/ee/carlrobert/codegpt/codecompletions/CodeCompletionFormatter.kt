@@ -34,6 +34,11 @@ class CodeCompletionFormatter(private val editor: Editor) {
     private val charAfterCursor = if (textAfterCursor.isNotEmpty()) textAfterCursor[0] else ' '
     private val charBeforeCursor = if (cursorPosition > lineStartOffset)
         document.getText(TextRange(cursorPosition - 1, cursorPosition))[0] else ' '
+    private val isCursorInsideComment by lazy {
+        editor.project?.service<DocumentSyntaxTreeService>()
+            ?.getNodeTypesAt(document, cursorPosition)
+            ?.any { it.contains("comment") } == true
+    }
     private var completion = ""
     private var normalizedCompletion = ""
     private var originalCompletion = ""
@@ -75,6 +80,14 @@ class CodeCompletionFormatter(private val editor: Editor) {
     }
 
     private fun matchCompletionBrackets(): CodeCompletionFormatter {
+        if (isCursorInsideComment) {
+            completion = originalCompletion.trimEnd()
+            if (isDebugEnabled) {
+                logger.info("Skipped matchCompletionBrackets inside a comment: $completion")
+            }
+            return this
+        }
+
         var accumulatedCompletion = ""
         val openBrackets = mutableListOf<Char>()
         var inString = false
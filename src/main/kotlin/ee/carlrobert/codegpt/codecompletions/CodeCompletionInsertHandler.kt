@@ -31,6 +31,11 @@ class CodeCompletionInsertHandler : InlineCompletionInsertHandler {
 
             val currentContent = runReadAction { editor.document.text }
             val caretOffset = runReadAction { editor.caretModel.offset }
+            editor.project?.service<CodeCompletionPrefetchService>()?.prefetch(
+                editor,
+                currentContent.substring(0, caretOffset),
+                currentContent.substring(caretOffset)
+            )
 
             val completionRange = runReadAction { editor.getUserData(CodeGPTKeys.RECENT_COMPLETION_RANGE) }
             val contentWithImports = AutoImportOrchestrator.previewImports(editor, completionRange)
@@ -0,0 +1,47 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.fileEditor.FileEditorManager
+import com.intellij.openapi.project.Project
+import ee.carlrobert.codegpt.treesitter.CodeCompletionParser
+import ee.carlrobert.codegpt.treesitter.CodeCompletionParserPool
+
+@Service
+class CodeCompletionParserService : Disposable {
+
+    companion object {
+        private val logger = thisLogger()
+
+        @JvmStatic
+        fun getInstance(): CodeCompletionParserService = service()
+    }
+
+    val pool: CodeCompletionParserPool = CodeCompletionParserPool.shared()
+
+    fun <T> withParser(extension: String, action: (CodeCompletionParser) -> T): T? {
+        val pooled = pool.borrow(extension.lowercase()) ?: return null
+        return pooled.use { action(it.parser()) }
+    }
+
+    fun warmUp(project: Project) {
+        val extensions = FileEditorManager.getInstance(project).openFiles
+            .mapNotNull { it.extension?.lowercase() }
+            .toSet()
+        if (extensions.isEmpty()) {
+            return
+        }
+
+        pool.warmUp(extensions)
+        logger.debug("Warmed up tree-sitter parsers for $extensions, ${pool.stats}")
+    }
+
+    fun getStats(): CodeCompletionParserPool.Stats = pool.stats
+
+    override fun dispose() {
+        logger.debug("Disposing tree-sitter parser pool, ${pool.stats}")
+        pool.close()
+    }
+}
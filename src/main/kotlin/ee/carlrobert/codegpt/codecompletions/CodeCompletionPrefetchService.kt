@@ -0,0 +1,201 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.editor.Editor
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.text.StringUtil
+import ee.carlrobert.codegpt.completions.CancellableRequest
+import ee.carlrobert.codegpt.completions.CompletionError
+import ee.carlrobert.codegpt.completions.CompletionStreamEventListener
+import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
+import ee.carlrobert.codegpt.settings.models.ModelSettings
+import ee.carlrobert.codegpt.settings.service.FeatureType
+import ee.carlrobert.codegpt.settings.service.ServiceType
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.cancel
+import kotlinx.coroutines.isActive
+import kotlinx.coroutines.launch
+import java.util.concurrent.atomic.AtomicReference
+
+/**
+ * Requests the completion for the caret position the user is expected to reach next (after
+ * accepting the shown suggestion) and stores the result in [CodeCompletionCacheService], so the
+ * follow-up completion is served without waiting for a round trip.
+ */
+@Service(Service.Level.PROJECT)
+class CodeCompletionPrefetchService(private val project: Project) : Disposable {
+
+    companion object {
+        private const val MAX_CONCURRENT_PREFETCHES = 2
+
+        private val logger = thisLogger()
+
+        /**
+         * ProxyAI is left out because its gRPC client serves a single completion stream per
+         * project, so a prefetch would cancel the completion that is currently shown.
+         */
+        val PREFETCH_CAPABLE_SERVICES = listOf(
+            ServiceType.OPENAI,
+            ServiceType.CUSTOM_OPENAI,
+            ServiceType.MISTRAL,
+            ServiceType.INCEPTION,
+            ServiceType.OLLAMA,
+            ServiceType.LLAMA_CPP,
+        )
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val activePrefetches = LinkedHashMap<PrefetchKey, CancellableRequest>()
+
+    fun prefetch(editor: Editor, prefix: String, suffix: String) {
+        if (!isPrefetchEnabled()) {
+            return
+        }
+
+        val cache = project.service<CodeCompletionCacheService>()
+        val key = PrefetchKey(prefix, suffix)
+        if (cache.contains(prefix, suffix) || synchronized(activePrefetches) { key in activePrefetches }) {
+            return
+        }
+
+        synchronized(activePrefetches) {
+            if (key in activePrefetches) {
+                return
+            }
+            while (activePrefetches.size >= MAX_CONCURRENT_PREFETCHES) {
+                val oldestKey = activePrefetches.keys.first()
+                activePrefetches.remove(oldestKey)?.cancel()
+            }
+
+            val call = AtomicReference<CancellableRequest?>()
+            val job = scope.launch {
+                try {
+                    val infillRequest = InfillRequestUtil.buildInfillRequest(editor, prefix, suffix)
+                    val request = service<CodeCompletionService>().getCodeCompletionAsync(
+                        infillRequest,
+                        PrefetchEventListener(key, editor, prefix, suffix)
+                    )
+                    call.set(request)
+                    if (!isActive) {
+                        request.cancel()
+                    }
+                } catch (e: CancellationException) {
+                    throw e
+                } catch (e: Exception) {
+                    finish(key)
+                    logger.debug("Failed to build the completion prefetch request", e)
+                }
+            }
+            activePrefetches[key] = CancellableRequest {
+                job.cancel()
+                call.get()?.cancel()
+            }
+        }
+    }
+
+    /**
+     * Cancels the prefetches that the caret at [caretOffset] in [text] no longer leads to: the
+     * text after the caret changed, or the text before it is no longer on the way to, or past,
+     * the prefetched position.
+     */
+    fun cancelStale(text: CharSequence, caretOffset: Int) {
+        val requests = synchronized(activePrefetches) {
+            val stale = activePrefetches.keys.filterNot { it.isReachableFrom(text, caretOffset) }
+            stale.mapNotNull { activePrefetches.remove(it) }
+        }
+        requests.forEach { it.cancel() }
+    }
+
+    internal fun isPrefetching(prefix: String, suffix: String): Boolean =
+        synchronized(activePrefetches) { PrefetchKey(prefix, suffix) in activePrefetches }
+
+    fun cancelAll() {
+        val requests = synchronized(activePrefetches) {
+            activePrefetches.values.toList().also { activePrefetches.clear() }
+        }
+        requests.forEach { it.cancel() }
+    }
+
+    override fun dispose() {
+        cancelAll()
+        scope.cancel()
+    }
+
+    private fun isPrefetchEnabled(): Boolean {
+        val settings = service<ConfigurationSettings>().state.codeCompletionSettings
+        if (!settings.prefetchEnabled) {
+            return false
+        }
+
+        val selectedService =
+            ModelSettings.getInstance().getServiceForFeature(FeatureType.CODE_COMPLETION)
+        return selectedService in PREFETCH_CAPABLE_SERVICES
+                && selectedService.name !in settings.prefetchDisabledServices
+                && service<CodeCompletionService>().isCodeCompletionsEnabled(selectedService)
+    }
+
+    private fun finish(key: PrefetchKey) {
+        synchronized(activePrefetches) {
+            activePrefetches.remove(key)
+        }
+    }
+
+    private data class PrefetchKey(val prefix: String, val suffix: String) {
+
+        fun isReachableFrom(text: CharSequence, caretOffset: Int): Boolean {
+            if (text.length - caretOffset != suffix.length || !StringUtil.endsWith(text, suffix)) {
+                return false
+            }
+            return if (caretOffset >= prefix.length) {
+                StringUtil.startsWith(text, prefix)
+            } else {
+                StringUtil.startsWith(prefix, text.subSequence(0, caretOffset))
+            }
+        }
+    }
+
+    private inner class PrefetchEventListener(
+        private val key: PrefetchKey,
+        private val editor: Editor,
+        private val prefix: String,
+        private val suffix: String,
+    ) : CompletionStreamEventListener {
+
+        override fun onMessage(message: String) {
+        }
+
+        override fun onComplete(messageBuilder: StringBuilder) {
+            finish(key)
+            if (project.isDisposed || messageBuilder.isBlank()) {
+                return
+            }
+
+            val completion = project.service<DocumentSyntaxTreeService>().repairCompletion(
+                editor.document,
+                null,
+                prefix,
+                suffix,
+                messageBuilder.toString()
+            )
+            if (completion.isNotBlank()) {
+                project.service<CodeCompletionCacheService>()
+                    .setCache(prefix, suffix, completion, formatted = false)
+            }
+        }
+
+        override fun onCancelled(messageBuilder: StringBuilder) {
+            finish(key)
+        }
+
+        override fun onError(error: CompletionError, ex: Throwable) {
+            finish(key)
+            logger.debug("Completion prefetch failed: ${error.message}", ex)
+        }
+    }
+}
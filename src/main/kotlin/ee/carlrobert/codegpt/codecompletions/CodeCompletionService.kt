@@ -8,6 +8,7 @@ import ee.carlrobert.codegpt.agent.clients.toCompletionError
 import ee.carlrobert.codegpt.codecompletions.edit.GrpcClientService
 import ee.carlrobert.codegpt.completions.CancellableRequest
 import ee.carlrobert.codegpt.completions.CompletionStreamEventListener
+import ee.carlrobert.codegpt.completions.FirstTokenLatencyTracker
 import ee.carlrobert.codegpt.settings.models.ModelSettings
 import ee.carlrobert.codegpt.settings.models.LLMClientFactory
 import ee.carlrobert.codegpt.settings.service.FeatureType
@@ -99,7 +100,12 @@ class CodeCompletionService {
                     ?: error("Code completion not supported by ${client::class.simpleName}")
             },
             infillRequest = infillRequest,
-            eventListener = eventListener
+            eventListener = eventListener,
+            latency = FirstTokenLatencyTracker.start(
+                serviceType,
+                FeatureType.CODE_COMPLETION,
+                LLMClientFactory.resolveOrigin(serviceType, FeatureType.CODE_COMPLETION)
+            )
         )
     }
 
@@ -116,13 +122,15 @@ class CodeCompletionService {
     private fun executeWithClient(
         clientProvider: () -> CodeCompletionCapable,
         infillRequest: InfillRequest,
-        eventListener: CompletionStreamEventListener
+        eventListener: CompletionStreamEventListener,
+        latency: FirstTokenLatencyTracker.Request? = null
     ): CancellableRequest {
         val job = scope.launch {
             val messageBuilder = StringBuilder()
             val client = clientProvider()
             try {
                 val completion = client.getCodeCompletion(infillRequest)
+                latency?.onFirstToken()
                 eventListener.onOpen()
                 if (completion.isNotEmpty()) {
                     messageBuilder.append(completion)
@@ -134,6 +142,7 @@ class CodeCompletionService {
             } catch (ex: Throwable) {
                 eventListener.onError(ex.toCompletionError(), ex)
             } finally {
+                latency?.onFinished()
                 runCatching { client.close() }
             }
         }
@@ -2,24 +2,30 @@ package ee.carlrobert.codegpt.codecompletions
 
 import com.intellij.openapi.editor.Editor
 import com.intellij.openapi.util.Key
+import ee.carlrobert.codegpt.settings.service.ServiceType
 
 object CompletionTracker {
 
     private val LAST_COMPLETION_REQUEST_TIME: Key<Long> = Key.create("LAST_COMPLETION_REQUEST_TIME")
-    private const val DEBOUNCE_INTERVAL_MS = 500L
 
-    fun calcDebounceTime(editor: Editor): Long {
+    fun calcDebounceTime(editor: Editor, serviceType: ServiceType): Long {
         val lastCompletionTimestamp = editor.getUserData(LAST_COMPLETION_REQUEST_TIME)
         if (lastCompletionTimestamp != null) {
+            val debounceInterval = AdaptiveDebounceService.getInstance().getDebounceDelay(serviceType)
             val elapsed = System.currentTimeMillis() - lastCompletionTimestamp
-            if (elapsed < DEBOUNCE_INTERVAL_MS) {
-                return DEBOUNCE_INTERVAL_MS - elapsed
+            if (elapsed < debounceInterval) {
+                return debounceInterval - elapsed
             }
         }
         return 0
     }
 
     fun updateLastCompletionRequestTime(editor: Editor) {
-        editor.putUserData(LAST_COMPLETION_REQUEST_TIME, System.currentTimeMillis())
+        val now = System.currentTimeMillis()
+        val lastCompletionTimestamp = editor.getUserData(LAST_COMPLETION_REQUEST_TIME)
+        if (lastCompletionTimestamp != null) {
+            AdaptiveDebounceService.getInstance().recordKeystrokeInterval(now - lastCompletionTimestamp)
+        }
+        editor.putUserData(LAST_COMPLETION_REQUEST_TIME, now)
     }
 }
@@ -4,6 +4,7 @@ import com.intellij.codeInsight.inline.completion.*
 import com.intellij.codeInsight.inline.completion.elements.InlineCompletionGrayTextElement
 import com.intellij.codeInsight.inline.completion.suggestion.InlineCompletionSingleSuggestion
 import com.intellij.codeInsight.inline.completion.suggestion.InlineCompletionSuggestion
+import com.intellij.openapi.application.runReadAction
 import com.intellij.openapi.components.service
 import ee.carlrobert.codegpt.CodeGPTKeys.REMAINING_CODE_COMPLETION
 import ee.carlrobert.codegpt.completions.CancellableRequest
@@ -67,6 +68,10 @@ class DebouncedCodeCompletionProvider : DebouncedInlineCompletionProvider() {
                     return@channelFlow
                 }
 
+                val (text, caretOffset) = runReadAction {
+                    editor.document.immutableCharSequence to editor.caretModel.offset
+                }
+                project.service<CodeCompletionPrefetchService>().cancelStale(text, caretOffset)
                 CompletionProgressNotifier.update(project, true)
 
                 val eventListener = CodeCompletionEventListener(request.editor, this)
@@ -91,7 +96,9 @@ class DebouncedCodeCompletionProvider : DebouncedInlineCompletionProvider() {
     override suspend fun getDebounceDelay(request: InlineCompletionRequest): Duration {
         val force = request.event is InlineCompletionEvent.DirectCall
         return if (!force) {
-            val debounceMs = CompletionTracker.calcDebounceTime(request.editor)
+            val serviceType =
+                service<ModelSettings>().getServiceForFeature(FeatureType.CODE_COMPLETION)
+            val debounceMs = CompletionTracker.calcDebounceTime(request.editor, serviceType)
             CompletionTracker.updateLastCompletionRequestTime(request.editor)
             debounceMs.toDuration(DurationUnit.MILLISECONDS)
         } else {
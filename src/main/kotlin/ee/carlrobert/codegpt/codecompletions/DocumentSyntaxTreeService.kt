@@ -0,0 +1,158 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.editor.Document
+import com.intellij.openapi.editor.Editor
+import com.intellij.openapi.editor.EditorFactory
+import com.intellij.openapi.editor.event.DocumentEvent
+import com.intellij.openapi.editor.event.DocumentListener
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.text.StringUtil
+import ee.carlrobert.codegpt.EditorNotifier
+import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
+import ee.carlrobert.codegpt.treesitter.CodeCompletionParser.RepairBudget
+import ee.carlrobert.codegpt.treesitter.CodeCompletionParserFactory
+import ee.carlrobert.codegpt.treesitter.IncrementalSyntaxTree
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Keeps one tree-sitter tree per open document, updated incrementally from document events, so
+ * that completion post-processing can ask syntax questions without parsing the file again.
+ */
+@Service(Service.Level.PROJECT)
+class DocumentSyntaxTreeService(private val project: Project) : Disposable {
+
+    companion object {
+        private const val MAX_DOCUMENT_LENGTH = 500_000
+
+        private val logger = thisLogger()
+    }
+
+    private val syntaxTrees = ConcurrentHashMap<Document, IncrementalSyntaxTree>()
+
+    init {
+        EditorFactory.getInstance().eventMulticaster.addDocumentListener(object : DocumentListener {
+            override fun documentChanged(event: DocumentEvent) {
+                onDocumentChanged(event)
+            }
+        }, this)
+        project.messageBus.connect(this).subscribe(
+            EditorNotifier.Released.TOPIC,
+            object : EditorNotifier.Released {
+                override fun editorReleased(editor: Editor) {
+                    evictIfUnused(editor)
+                }
+            })
+    }
+
+    /**
+     * Returns the syntax node types enclosing the offset, innermost first, or an empty list when
+     * the document's language is not supported.
+     */
+    fun getNodeTypesAt(document: Document, offset: Int): List<String> = runReadAction {
+        getOrCreate(document)?.getNodeTypesAt(document.immutableCharSequence, offset).orEmpty()
+    }
+
+    /**
+     * Removes the trailing part of the completion that would leave the document with syntax
+     * errors. Only runs while tree-sitter post-processing is enabled. The cached tree is reused
+     * whenever the document still reads [prefix] + [suffix], whether or not its stamp matches
+     * [modificationStamp]; otherwise they are parsed from scratch.
+     */
+    fun repairCompletion(
+        document: Document,
+        modificationStamp: Long?,
+        prefix: String,
+        suffix: String,
+        completion: String
+    ): String {
+        if (!service<ConfigurationSettings>().state.codeCompletionSettings.treeSitterProcessingEnabled) {
+            return completion
+        }
+
+        val parserService = CodeCompletionParserService.getInstance()
+        val documentTree = runReadAction {
+            val text = document.immutableCharSequence
+            if (document.modificationStamp == modificationStamp || text.isSplitInto(prefix, suffix)) {
+                getOrCreate(document)?.getTree(text)
+            } else {
+                null
+            }
+        }
+        val extension = getExtension(document) ?: return completion
+        val result = parserService.withParser(extension) { parser ->
+            if (documentTree != null) {
+                parser.repair(documentTree, prefix, suffix, completion, RepairBudget.DEFAULT)
+            } else {
+                parser.repair(prefix, suffix, completion, RepairBudget.DEFAULT)
+            }
+        } ?: return completion
+
+        if (result.budgetExhausted) {
+            logger.debug("Completion repair budget exhausted after ${result.iterations} iterations")
+        }
+        return result.text
+    }
+
+    override fun dispose() {
+        syntaxTrees.clear()
+    }
+
+    private fun getOrCreate(document: Document): IncrementalSyntaxTree? {
+        if (document.textLength > MAX_DOCUMENT_LENGTH) {
+            return null
+        }
+
+        val extension = getExtension(document) ?: return null
+        return syntaxTrees.computeIfAbsent(document) {
+            IncrementalSyntaxTree(CodeCompletionParserService.getInstance().pool, extension)
+        }
+    }
+
+    private fun onDocumentChanged(event: DocumentEvent) {
+        val document = event.document
+        val syntaxTree = syntaxTrees[document] ?: return
+        if (document.textLength > MAX_DOCUMENT_LENGTH) {
+            syntaxTrees.remove(document)
+            return
+        }
+        if (event.isWholeTextReplaced) {
+            syntaxTree.invalidate()
+            return
+        }
+
+        val offset = event.offset
+        val line = document.getLineNumber(offset)
+        syntaxTree.edit(
+            offset,
+            line,
+            offset - document.getLineStartOffset(line),
+            event.oldFragment,
+            event.newFragment
+        )
+    }
+
+    private fun evictIfUnused(editor: Editor) {
+        val document = editor.document
+        val stillOpen = EditorFactory.getInstance().getEditors(document, project)
+            .any { it != editor }
+        if (!stillOpen) {
+            syntaxTrees.remove(document)
+        }
+    }
+
+    private fun CharSequence.isSplitInto(prefix: String, suffix: String): Boolean =
+        length == prefix.length + suffix.length
+                && StringUtil.startsWith(this, prefix)
+                && StringUtil.endsWith(this, suffix)
+
+    private fun getExtension(document: Document): String? {
+        val extension = FileDocumentManager.getInstance().getFile(document)?.extension?.lowercase()
+        return extension?.takeIf { CodeCompletionParserFactory.getLanguageId(it) != null }
+    }
+}
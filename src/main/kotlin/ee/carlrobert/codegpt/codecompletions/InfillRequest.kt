@@ -65,6 +65,19 @@ class InfillRequest private constructor(
             this.fileDetails = FileDetails(editor.document.text, editor.virtualFile?.path ?: "")
         }
 
+        /**
+         * Builds the request for the editor's file as if its text were [prefix] followed by
+         * [suffix] and the caret were between them, e.g. after a completion is accepted.
+         */
+        constructor(editor: Editor, prefix: String, suffix: String) {
+            this.prefix = prefix.truncateText(MAX_PROMPT_TOKENS, false)
+            this.suffix = suffix.truncateText(MAX_PROMPT_TOKENS)
+            this.caretOffset = prefix.length
+            this.stopTokens = getStopTokens()
+            this.editor = editor
+            this.fileDetails = FileDetails(prefix + suffix, editor.virtualFile?.path ?: "")
+        }
+
         fun gitDiff(gitDiff: String) =
             apply { this.gitDiff = gitDiff }
 
@@ -1,17 +1,38 @@
 package ee.carlrobert.codegpt.codecompletions
 
 import com.intellij.codeInsight.inline.completion.InlineCompletionRequest
+import com.intellij.openapi.application.readAction
 import com.intellij.openapi.components.service
+import com.intellij.openapi.editor.Editor
+import com.intellij.psi.PsiDocumentManager
+import com.intellij.psi.PsiFile
 import ee.carlrobert.codegpt.psistructure.PsiStructureProvider
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.util.GitUtil
 
 object InfillRequestUtil {
 
-    suspend fun buildInfillRequest(request: InlineCompletionRequest): InfillRequest {
-        val infillRequestBuilder = InfillRequest.Builder(request.editor)
+    suspend fun buildInfillRequest(request: InlineCompletionRequest): InfillRequest =
+        buildInfillRequest(InfillRequest.Builder(request.editor), request.editor, request.file)
 
-        val project = request.editor.project ?: return infillRequestBuilder.build()
+    /**
+     * Builds the request for the editor's file as if its text were [prefix] followed by [suffix],
+     * with the same context as a request for the current caret position.
+     */
+    suspend fun buildInfillRequest(editor: Editor, prefix: String, suffix: String): InfillRequest {
+        val project = editor.project
+        val file = project?.let {
+            readAction { PsiDocumentManager.getInstance(it).getPsiFile(editor.document) }
+        }
+        return buildInfillRequest(InfillRequest.Builder(editor, prefix, suffix), editor, file)
+    }
+
+    private suspend fun buildInfillRequest(
+        infillRequestBuilder: InfillRequest.Builder,
+        editor: Editor,
+        file: PsiFile?
+    ): InfillRequest {
+        val project = editor.project ?: return infillRequestBuilder.build()
         if (service<ConfigurationSettings>().state.codeCompletionSettings.gitDiffEnabled) {
             GitUtil.getCurrentChanges(project)?.let { diff ->
                 if (diff.isNotEmpty()) {
@@ -20,10 +41,12 @@ object InfillRequestUtil {
             }
         }
 
-        if (service<ConfigurationSettings>().state.codeCompletionSettings.collectDependencyStructure) {
+        if (file != null
+            && service<ConfigurationSettings>().state.codeCompletionSettings.collectDependencyStructure
+        ) {
             val depth =
                 service<ConfigurationSettings>().state.codeCompletionSettings.psiStructureAnalyzeDepth
-            val psiStructure = PsiStructureProvider().get(listOf(request.file), depth)
+            val psiStructure = PsiStructureProvider().get(listOf(file), depth)
             if (psiStructure.isNotEmpty()) {
                 infillRequestBuilder.addDependenciesStructure(psiStructure)
             }
@@ -6,6 +6,7 @@ import com.intellij.openapi.editor.Editor
 import ee.carlrobert.codegpt.CodeGPTKeys
 import ee.carlrobert.codegpt.completions.CompletionError
 import ee.carlrobert.codegpt.completions.CompletionStreamEventListener
+import ee.carlrobert.codegpt.completions.FirstTokenLatencyTracker
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.ui.OverlayUtil
 import ee.carlrobert.service.PartialCodeCompletionResponse
@@ -16,6 +17,7 @@ import io.grpc.stub.StreamObserver
 class CodeCompletionStreamObserver(
     private val editor: Editor,
     private val eventListener: CompletionStreamEventListener,
+    private val latency: FirstTokenLatencyTracker.Request? = null,
 ) : StreamObserver<PartialCodeCompletionResponse> {
 
     companion object {
@@ -27,12 +29,14 @@ class CodeCompletionStreamObserver(
         if (ConfigurationSettings.getState().debugModeEnabled) {
             logger.info("Autocomplete gRPC response chunk: $value")
         }
+        latency?.onFirstToken()
         CodeGPTKeys.LAST_COMPLETION_RESPONSE_ID.set(editor, value.id)
         messageBuilder.append(value.partialCompletion)
         eventListener.onMessage(value.partialCompletion)
     }
 
     override fun onError(t: Throwable?) {
+        latency?.onFinished()
         if (t is StatusRuntimeException) {
             val code = t.status.code
             if (code == Status.Code.CANCELLED || code == Status.Code.DEADLINE_EXCEEDED) {
@@ -61,6 +65,7 @@ class CodeCompletionStreamObserver(
         if (ConfigurationSettings.getState().debugModeEnabled) {
             logger.info("Autocomplete gRPC stream completed")
         }
+        latency?.onFinished()
         eventListener.onComplete(messageBuilder)
     }
 }
@@ -10,15 +10,18 @@ import ee.carlrobert.codegpt.CodeGPTPlugin
 import ee.carlrobert.codegpt.codecompletions.InfillRequest
 import ee.carlrobert.codegpt.completions.CancellableRequest
 import ee.carlrobert.codegpt.completions.CompletionStreamEventListener
+import ee.carlrobert.codegpt.completions.FirstTokenLatencyTracker
 import ee.carlrobert.codegpt.credentials.CredentialsStore
 import ee.carlrobert.codegpt.credentials.CredentialsStore.CredentialKey.CodeGptApiKey
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.models.ModelSettings
+import ee.carlrobert.codegpt.settings.service.ServiceType
 import ee.carlrobert.codegpt.util.GitUtil
 import ee.carlrobert.codegpt.util.RecentlyViewedFilesUtil
 import ee.carlrobert.codegpt.util.file.FileUtil
 import ee.carlrobert.service.*
+import io.grpc.ConnectivityState
 import io.grpc.Context
 import io.grpc.ManagedChannel
 import io.grpc.netty.shaded.io.grpc.netty.GrpcSslContexts
@@ -59,8 +62,15 @@ class GrpcClientService(private val project: Project) : Disposable {
         val grpcRequest = createCodeCompletionGrpcRequest(request)
         logDebugPayload("Autocomplete gRPC request", grpcRequest)
         eventListener.onOpen()
-        codeCompletionObserver =
-            CodeCompletionStreamObserver(editor, eventListener)
+        codeCompletionObserver = CodeCompletionStreamObserver(
+            editor,
+            eventListener,
+            FirstTokenLatencyTracker.start(
+                ServiceType.PROXYAI,
+                FeatureType.CODE_COMPLETION,
+                FirstTokenLatencyTracker.GRPC_ORIGIN
+            )
+        )
         codeCompletionContext?.cancel(null)
         val ctx = Context.current().withCancellation()
         codeCompletionContext = ctx
@@ -172,6 +182,30 @@ class GrpcClientService(private val project: Project) : Disposable {
         }
     }
 
+    /**
+     * Opens the channel and its stubs ahead of the first request and asks the channel to connect.
+     * [onReady] is called once the connection is established.
+     */
+    @Synchronized
+    fun warmUp(onReady: () -> Unit = {}) {
+        ensureCodeCompletionConnection()
+        ensureNextEditConnection()
+        channel?.let {
+            val state = it.getState(true)
+            if (state == ConnectivityState.READY) onReady() else awaitReady(it, state, onReady)
+        }
+    }
+
+    private fun awaitReady(channel: ManagedChannel, state: ConnectivityState, onReady: () -> Unit) {
+        channel.notifyWhenStateChanged(state) {
+            when (val next = channel.getState(false)) {
+                ConnectivityState.READY -> onReady()
+                ConnectivityState.IDLE, ConnectivityState.SHUTDOWN -> Unit
+                else -> awaitReady(channel, next, onReady)
+            }
+        }
+    }
+
     @Synchronized
     private fun ensureCodeCompletionConnection() {
         ensureActiveChannel()
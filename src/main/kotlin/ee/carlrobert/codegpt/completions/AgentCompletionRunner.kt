@@ -8,9 +8,7 @@ import ai.koog.agents.features.eventHandler.feature.handleEvents
 import ai.koog.agents.features.tokenizer.feature.MessageTokenizer
 import ai.koog.prompt.dsl.prompt
 import ai.koog.prompt.message.Message
-import ai.koog.prompt.tokenizer.Tokenizer
 import com.intellij.openapi.components.service
-import ee.carlrobert.codegpt.EncodingManager
 import ee.carlrobert.codegpt.agent.AgentEvents
 import ee.carlrobert.codegpt.agent.MessageWithContext
 import ee.carlrobert.codegpt.agent.clients.shouldStream
@@ -24,6 +22,7 @@ import ee.carlrobert.codegpt.mcp.McpToolCallHandler
 import ee.carlrobert.codegpt.settings.models.ModelSettings
 import ee.carlrobert.codegpt.settings.service.ServiceType
 import ee.carlrobert.codegpt.settings.service.custom.CustomServicesSettings
+import ee.carlrobert.codegpt.tokens.TokenizerRegistry
 import ee.carlrobert.codegpt.util.ReasoningFrameTextAdapter
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.cancel
@@ -87,7 +86,8 @@ internal object AgentCompletionRunner : CompletionRunner {
                         pendingMessageQueue = ArrayDeque<MessageWithContext>(),
                         historyCompressionConfig = HistoryCompressionConfig(
                             isLimitExceeded = { _, _ -> false },
-                            compressionStrategy = CODE_AGENT_COMPRESSION
+                            compressionStrategy = CODE_AGENT_COMPRESSION,
+                            modelTokenizer = TokenizerRegistry.getInstance().getTokenizer(request.model)
                         ),
                         events = events,
                         sessionId = request.callParameters.sessionId?.toString()
@@ -107,11 +107,7 @@ internal object AgentCompletionRunner : CompletionRunner {
                 ) {
                     val frameAdapter = ReasoningFrameTextAdapter()
                     install(MessageTokenizer) {
-                        tokenizer = object : Tokenizer {
-                            override fun countTokens(text: String): Int {
-                                return EncodingManager.getInstance().countTokens(text)
-                            }
-                        }
+                        tokenizer = TokenizerRegistry.getInstance().getTokenizer(request.model)
                         enableCaching = false
                     }
                     handleEvents {
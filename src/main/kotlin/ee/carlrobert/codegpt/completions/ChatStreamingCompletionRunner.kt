@@ -1,5 +1,7 @@
 package ee.carlrobert.codegpt.completions
 
+import ee.carlrobert.codegpt.settings.models.LLMClientFactory
+import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.util.ReasoningFrameTextAdapter
 import kotlinx.coroutines.CancellationException
 import kotlinx.coroutines.cancel
@@ -16,12 +18,17 @@ internal object ChatStreamingCompletionRunner : CompletionRunner {
     private fun executeAsync(request: CompletionRunnerRequest.Chat): CancellableRequest {
         val asyncRequest = AsyncRequestContext()
         val scope = asyncRequest.scope
+        val latency = FirstTokenLatencyTracker.start(
+            request.serviceType,
+            FeatureType.CHAT,
+            LLMClientFactory.resolveOrigin(request.serviceType, FeatureType.CHAT)
+        )
 
         request.eventListener.onOpen()
         val job = scope.launch {
             val messageBuilder = StringBuilder()
             try {
-                streamOrFallback(request, messageBuilder)
+                streamOrFallback(request, messageBuilder, latency)
 
                 if (asyncRequest.isCancelled()) {
                     request.eventListener.onCancelled(StringBuilder(messageBuilder))
@@ -36,6 +43,7 @@ internal object ChatStreamingCompletionRunner : CompletionRunner {
                     exception
                 )
             } finally {
+                latency.onFinished()
                 runCatching { request.executor.close() }
                 scope.cancel()
             }
@@ -47,7 +55,8 @@ internal object ChatStreamingCompletionRunner : CompletionRunner {
 
     private suspend fun streamOrFallback(
         request: CompletionRunnerRequest.Chat,
-        messageBuilder: StringBuilder
+        messageBuilder: StringBuilder,
+        latency: FirstTokenLatencyTracker.Request
     ) {
         val frameAdapter = ReasoningFrameTextAdapter()
 
@@ -55,12 +64,14 @@ internal object ChatStreamingCompletionRunner : CompletionRunner {
             request.executor.executeStreaming(request.prompt, request.model, emptyList())
                 .collect { frame ->
                     frameAdapter.consume(frame).forEach { chunk ->
+                        latency.onFirstToken()
                         emit(chunk, request, messageBuilder)
                     }
                 }
         }.getOrElse {
             val responses = request.executor.execute(request.prompt, request.model, emptyList())
             val text = CompletionTextExtractor.extract(responses)
+            latency.onFirstToken()
             emit(text, request, messageBuilder)
         }
     }
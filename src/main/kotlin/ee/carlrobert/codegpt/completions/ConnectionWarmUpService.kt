@@ -0,0 +1,155 @@
+package ee.carlrobert.codegpt.completions
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ApplicationManager
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.project.Project
+import ee.carlrobert.codegpt.agent.clients.HttpClientProvider
+import ee.carlrobert.codegpt.codecompletions.edit.GrpcClientService
+import ee.carlrobert.codegpt.settings.advanced.AdvancedSettingsListener
+import ee.carlrobert.codegpt.settings.models.LLMClientFactory
+import ee.carlrobert.codegpt.settings.models.ModelSettings
+import ee.carlrobert.codegpt.settings.service.FeatureType
+import ee.carlrobert.codegpt.settings.service.ModelChangeNotifier
+import ee.carlrobert.codegpt.settings.service.ModelChangeNotifierAdapter
+import ee.carlrobert.codegpt.settings.service.ProviderChangeNotifier
+import ee.carlrobert.codegpt.settings.service.ServiceType
+import io.ktor.client.request.*
+import kotlinx.coroutines.*
+import java.net.InetAddress
+import java.net.URI
+
+/**
+ * Opens the connections of the providers selected for each [FeatureType] before the first request
+ * needs them, so that it does not pay for DNS, TCP and TLS setup, or for the gRPC channel of
+ * ProxyAI code completions. HTTP connections stay open in the shared pool of [HttpClientProvider].
+ *
+ * Runs once on project startup and again when a model, the provider or the proxy settings change.
+ * Origins that are still warm, for example from another open project, are skipped. The latencies
+ * collected by [FirstTokenLatencyTracker] are logged at debug level; set the
+ * `proxyai.warmUp.disabled` system property to compare them against cold connections.
+ */
+@Service(Service.Level.PROJECT)
+class ConnectionWarmUpService(private val project: Project) : Disposable {
+
+    companion object {
+        private const val DISABLED_PROPERTY = "proxyai.warmUp.disabled"
+        private const val DEBOUNCE_MS = 500L
+        private const val REQUEST_TIMEOUT_MS = 10_000L
+
+        private val logger = thisLogger()
+    }
+
+    private val scope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private var warmUpJob: Job? = null
+
+    init {
+        ApplicationManager.getApplication().messageBus.connect(this).apply {
+            subscribe(ModelChangeNotifier.getTopic(), object : ModelChangeNotifierAdapter() {
+                override fun modelChanged(
+                    featureType: FeatureType,
+                    newModel: String,
+                    serviceType: ServiceType
+                ) {
+                    warmUp()
+                }
+            })
+            subscribe(ProviderChangeNotifier.TOPIC, object : ProviderChangeNotifier {
+                override fun providerChanged(provider: ServiceType) {
+                    warmUp()
+                }
+            })
+            subscribe(AdvancedSettingsListener.TOPIC, AdvancedSettingsListener {
+                FirstTokenLatencyTracker.clearWarmOrigins()
+                warmUp()
+            })
+        }
+    }
+
+    /** Warms up the connections of all selected providers; bursts of calls are merged. */
+    @Synchronized
+    fun warmUp() {
+        if (ApplicationManager.getApplication().isUnitTestMode
+            || java.lang.Boolean.getBoolean(DISABLED_PROPERTY)
+        ) {
+            return
+        }
+
+        warmUpJob?.cancel()
+        warmUpJob = scope.launch {
+            delay(DEBOUNCE_MS)
+            warmUpSelectedProviders()
+        }
+    }
+
+    override fun dispose() {
+        scope.cancel()
+    }
+
+    /** Warms up the origins of the selected providers that are not warm already. */
+    private suspend fun warmUpSelectedProviders() {
+        val selections = FeatureType.entries.mapNotNull { featureType ->
+            runCatching {
+                featureType to ModelSettings.getInstance().getServiceForFeature(featureType)
+            }.getOrNull()
+        }
+
+        if (selections.any { (featureType, serviceType) -> usesGrpc(featureType, serviceType) }
+            && !FirstTokenLatencyTracker.isWarm(FirstTokenLatencyTracker.GRPC_ORIGIN)
+        ) {
+            warmUpGrpc()
+        }
+        coroutineScope {
+            selections
+                .filterNot { (featureType, serviceType) -> usesGrpc(featureType, serviceType) }
+                .mapNotNull { (featureType, serviceType) -> resolveOrigin(serviceType, featureType) }
+                .distinct()
+                .filterNot { FirstTokenLatencyTracker.isWarm(it) }
+                .map { origin -> async { warmUpHttp(origin) } }
+                .awaitAll()
+        }
+    }
+
+    private fun usesGrpc(featureType: FeatureType, serviceType: ServiceType): Boolean =
+        serviceType == ServiceType.PROXYAI
+                && (featureType == FeatureType.CODE_COMPLETION || featureType == FeatureType.NEXT_EDIT)
+
+    private fun warmUpGrpc() {
+        try {
+            project.service<GrpcClientService>().warmUp {
+                FirstTokenLatencyTracker.markWarm(FirstTokenLatencyTracker.GRPC_ORIGIN)
+            }
+        } catch (e: Exception) {
+            logger.debug("Could not warm up gRPC connection", e)
+        }
+    }
+
+    /** Any response, whatever its status, leaves a kept-alive connection in the pool. */
+    private suspend fun warmUpHttp(origin: String) {
+        try {
+            HttpClientProvider.createHttpClient().use { client ->
+                withTimeout(REQUEST_TIMEOUT_MS) {
+                    client.head(origin)
+                }
+            }
+            FirstTokenLatencyTracker.markWarm(origin)
+            logger.debug("Warmed up connection to $origin")
+        } catch (e: CancellationException) {
+            throw e
+        } catch (e: Exception) {
+            logger.debug("Could not warm up connection to $origin", e)
+        }
+    }
+
+    /** Local servers have no connection setup worth saving, so they are skipped. */
+    private fun resolveOrigin(serviceType: ServiceType, featureType: FeatureType): String? {
+        val origin = LLMClientFactory.resolveOrigin(serviceType, featureType) ?: return null
+        val host = URI(origin).host
+        if (host == "localhost" || runCatching { InetAddress.getByName(host).isLoopbackAddress }.getOrDefault(false)) {
+            return null
+        }
+        return origin
+    }
+}
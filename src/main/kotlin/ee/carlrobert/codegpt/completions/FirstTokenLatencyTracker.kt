@@ -0,0 +1,103 @@
+package ee.carlrobert.codegpt.completions
+
+import com.intellij.openapi.diagnostic.thisLogger
+import ee.carlrobert.codegpt.agent.clients.HttpClientProvider
+import ee.carlrobert.codegpt.settings.service.FeatureType
+import ee.carlrobert.codegpt.settings.service.ServiceType
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Records how long requests wait for their first token, split by whether the connection to the
+ * provider's origin was cold or already warm when the request was sent. An origin counts as warm
+ * for [WARM_TTL_MS] after a warm-up or an earlier request connected to it, which is how long the
+ * shared pool keeps an idle connection open.
+ */
+object FirstTokenLatencyTracker {
+
+    const val WARM_TTL_MS = HttpClientProvider.IDLE_CONNECTION_EVICT_SECONDS * 1000
+
+    /** Origin of the ProxyAI gRPC channel used for code completions and next edits. */
+    const val GRPC_ORIGIN = "grpc://proxyai"
+
+    private val logger = thisLogger()
+    private val warmOrigins = ConcurrentHashMap<String, Long>()
+    private val stats = ConcurrentHashMap<Key, Stats>()
+
+    data class Key(
+        val serviceType: ServiceType,
+        val featureType: FeatureType,
+        val warm: Boolean
+    )
+
+    data class Snapshot(
+        val count: Long,
+        val averageMillis: Long,
+        val minMillis: Long,
+        val maxMillis: Long
+    )
+
+    class Request internal constructor(
+        private val serviceType: ServiceType,
+        private val featureType: FeatureType,
+        private val origin: String?
+    ) {
+        private val startNanos = System.nanoTime()
+        private val warm = origin != null && isWarm(origin)
+        private val recorded = AtomicBoolean(false)
+
+        fun onFirstToken() {
+            if (!recorded.compareAndSet(false, true)) {
+                return
+            }
+            val millis = (System.nanoTime() - startNanos) / 1_000_000
+            stats.computeIfAbsent(Key(serviceType, featureType, warm)) { Stats() }.add(millis)
+            origin?.let { markWarm(it) }
+            logger.debug {
+                "First token for $featureType from $serviceType after ${millis}ms (${if (warm) "warm" else "cold"})"
+            }
+        }
+
+        /** Marks the origin warm even when the request finished without a token. */
+        fun onFinished() {
+            origin?.let { markWarm(it) }
+        }
+    }
+
+    /** Starts timing a request to [origin], or to an unknown origin when it is null. */
+    fun start(serviceType: ServiceType, featureType: FeatureType, origin: String?): Request =
+        Request(serviceType, featureType, origin)
+
+    fun markWarm(origin: String, nowMillis: Long = System.currentTimeMillis()) {
+        warmOrigins[origin] = nowMillis
+    }
+
+    /** Returns whether a connection to [origin] is still expected to be open at [nowMillis]. */
+    fun isWarm(origin: String, nowMillis: Long = System.currentTimeMillis()): Boolean =
+        warmOrigins[origin]?.let { nowMillis - it < WARM_TTL_MS } == true
+
+    /** Forgets warm connections, for example after the proxy settings changed. */
+    fun clearWarmOrigins() {
+        warmOrigins.clear()
+    }
+
+    fun getStats(): Map<Key, Snapshot> = stats.mapValues { it.value.snapshot() }
+
+    private class Stats {
+        private var count = 0L
+        private var totalMillis = 0L
+        private var minMillis = Long.MAX_VALUE
+        private var maxMillis = 0L
+
+        @Synchronized
+        fun add(millis: Long) {
+            count++
+            totalMillis += millis
+            minMillis = minOf(minMillis, millis)
+            maxMillis = maxOf(maxMillis, millis)
+        }
+
+        @Synchronized
+        fun snapshot(): Snapshot = Snapshot(count, totalMillis / count, minMillis, maxMillis)
+    }
+}
@@ -0,0 +1,293 @@
+package ee.carlrobert.codegpt.settings
+
+/**
+ * Matches paths against gitignore-style patterns with one automaton built from all patterns.
+ *
+ * Patterns are split into path segments and merged into a trie, so patterns that share leading
+ * segments share states and literal segments are looked up in a map instead of being tested one
+ * pattern at a time. A path is fed to the automaton segment by segment; matching stops as soon as
+ * no state is left (nothing can match below this directory) or a pattern ending in `**` is
+ * reached (everything below this directory matches).
+ *
+ * Patterns without a leading `/` match at any depth. Patterns with a leading `/` are anchored to
+ * the base path, and also to the file system root so that absolute paths keep working. A trailing
+ * `/` or `/**` also matches everything below the directory.
+ */
+internal class IgnoreMatcher private constructor(
+    private val relativeRoot: Node,
+    private val absoluteRoot: Node?,
+    private val ignoreCase: Boolean
+) {
+
+    companion object {
+        fun from(patterns: List<String>, ignoreCase: Boolean): IgnoreMatcher {
+            val relativeRoot = Node(doubleStar = false)
+            var absoluteRoot: Node? = null
+            patterns.forEach { pattern ->
+                val segments = parse(pattern, ignoreCase) ?: return@forEach
+                if (pattern.trim().replace('\\', '/').startsWith("/")) {
+                    relativeRoot.add(segments)
+                    absoluteRoot = (absoluteRoot ?: Node(doubleStar = false)).apply { add(segments) }
+                } else {
+                    relativeRoot.add(listOf(Segment.DoubleStar) + segments)
+                }
+            }
+            return IgnoreMatcher(relativeRoot, absoluteRoot, ignoreCase)
+        }
+
+        private fun parse(pattern: String, ignoreCase: Boolean): List<Segment>? {
+            var normalized = pattern.trim().replace('\\', '/')
+            if (normalized.isEmpty()) {
+                return null
+            }
+            val matchesDescendants = normalized.endsWith("/")
+            normalized = normalized.trimEnd('/')
+            val segments = normalized.split('/')
+                .filter { it.isNotEmpty() }
+                .map { Segment.of(it, ignoreCase) }
+                .toMutableList()
+            if (segments.isEmpty()) {
+                return null
+            }
+            if (matchesDescendants && segments.last() != Segment.DoubleStar) {
+                segments += Segment.DoubleStar
+            }
+            return segments
+        }
+    }
+
+    fun matches(path: String, basePath: String): Boolean {
+        return newSession(basePath).matches(path)
+    }
+
+    /**
+     * Returns a matcher for many paths under the same base path. Results for directories are
+     * remembered, so paths that share a parent only feed their own segments to the automaton.
+     * A session is not thread-safe.
+     */
+    fun newSession(basePath: String): Session = Session(normalizeBase(basePath))
+
+    inner class Session internal constructor(private val basePath: String) {
+
+        private val directoryStates = HashMap<String, State>()
+
+        fun matches(path: String): Boolean {
+            val normalizedPath = normalizePath(path)
+            val relativePath = if (basePath.isNotEmpty() && isUnder(normalizedPath, basePath)) {
+                normalizedPath.substring(basePath.length).trimStart('/')
+            } else {
+                normalizedPath
+            }
+
+            if (run(relativeRoot, relativePath)) {
+                return true
+            }
+            return absoluteRoot != null
+                    && relativePath !== normalizedPath
+                    && run(absoluteRoot, normalizedPath)
+        }
+
+        private fun run(root: Node, path: String): Boolean {
+            val key = if (root === relativeRoot) path else "/$path"
+            return when (val state = stateOf(root, key, path)) {
+                is State.Decided -> state.matches
+                is State.Active -> state.nodes.any { it.terminal }
+            }
+        }
+
+        private fun stateOf(root: Node, key: String, path: String): State {
+            directoryStates[key]?.let { return it }
+
+            val trimmedPath = path.trimEnd('/')
+            val separator = trimmedPath.lastIndexOf('/')
+            val parentState = if (separator < 0) {
+                State.Active(closure(listOf(root)))
+            } else {
+                val parentPath = trimmedPath.substring(0, separator)
+                val parentKey = if (root === relativeRoot) parentPath else "/$parentPath"
+                stateOf(root, parentKey, parentPath)
+            }
+            val segment = trimmedPath.substring(separator + 1)
+            val state = when {
+                parentState is State.Decided -> parentState
+                segment.isEmpty() -> parentState
+                else -> step(parentState as State.Active, segment)
+            }
+            directoryStates[key] = state
+            return state
+        }
+    }
+
+    private fun step(state: State.Active, segment: String): State {
+        val comparableSegment = if (ignoreCase) segment.lowercase() else segment
+        val next = LinkedHashSet<Node>()
+        for (node in state.nodes) {
+            if (node.doubleStar) {
+                next += node
+            }
+            node.literalChildren[comparableSegment]?.let { addClosure(it, next) }
+            node.globChildren.forEach { (glob, child) ->
+                if (glob.matches(comparableSegment)) {
+                    addClosure(child, next)
+                }
+            }
+        }
+
+        return when {
+            next.isEmpty() -> State.NO_MATCH
+            next.any { it.terminal && it.doubleStar } -> State.MATCH
+            else -> State.Active(next.toList())
+        }
+    }
+
+    private fun closure(nodes: List<Node>): List<Node> {
+        val result = LinkedHashSet<Node>()
+        nodes.forEach { addClosure(it, result) }
+        return result.toList()
+    }
+
+    private fun addClosure(node: Node, result: MutableSet<Node>) {
+        if (result.add(node)) {
+            node.doubleStarChild?.let { addClosure(it, result) }
+        }
+    }
+
+    private fun normalizeBase(basePath: String): String {
+        return if (basePath.isBlank()) "" else normalizePath(basePath).trimEnd('/')
+    }
+
+    private fun normalizePath(path: String): String {
+        val slashed = path.replace('\\', '/')
+        if (!needsNormalization(slashed)) {
+            return slashed
+        }
+
+        val prefix = if (slashed.startsWith("/")) "/" else ""
+        val segments = ArrayList<String>()
+        slashed.split('/').forEach { segment ->
+            when (segment) {
+                "", "." -> Unit
+                ".." -> if (segments.isNotEmpty() && segments.last() != "..") {
+                    segments.removeAt(segments.lastIndex)
+                } else if (prefix.isEmpty()) {
+                    segments += segment
+                }
+
+                else -> segments += segment
+            }
+        }
+        return prefix + segments.joinToString("/")
+    }
+
+    private fun needsNormalization(path: String): Boolean {
+        return path.contains("//")
+                || path.contains("/./")
+                || path.contains("/../")
+                || path.endsWith("/.")
+                || path.endsWith("/..")
+                || path.startsWith("./")
+                || path.startsWith("../")
+    }
+
+    private fun isUnder(path: String, basePath: String): Boolean {
+        return path.startsWith(basePath)
+                && (path.length == basePath.length || path[basePath.length] == '/')
+    }
+
+    private sealed class State {
+        class Decided(val matches: Boolean) : State()
+        class Active(val nodes: List<Node>) : State()
+
+        companion object {
+            val MATCH = Decided(true)
+            val NO_MATCH = Decided(false)
+        }
+    }
+
+    private class Node(val doubleStar: Boolean) {
+        val literalChildren = HashMap<String, Node>()
+        val globChildren = ArrayList<Pair<Segment.Glob, Node>>()
+        var doubleStarChild: Node? = null
+        var terminal = false
+
+        fun add(segments: List<Segment>) {
+            var node = this
+            for (segment in segments) {
+                node = when (segment) {
+                    is Segment.Literal -> node.literalChildren.getOrPut(segment.text) {
+                        Node(doubleStar = false)
+                    }
+
+                    is Segment.Glob -> node.globChildren.firstOrNull { it.first.source == segment.source }?.second
+                        ?: Node(doubleStar = false).also { node.globChildren += segment to it }
+
+                    Segment.DoubleStar -> node.doubleStarChild
+                        ?: Node(doubleStar = true).also { node.doubleStarChild = it }
+                }
+            }
+            node.terminal = true
+        }
+    }
+
+    private sealed class Segment {
+        object DoubleStar : Segment()
+
+        data class Literal(val text: String) : Segment()
+
+        class Glob(val source: String, private val suffix: String?, private val regex: Regex?) :
+            Segment() {
+
+            fun matches(segment: String): Boolean {
+                return if (suffix != null) segment.endsWith(suffix) else regex!!.matches(segment)
+            }
+        }
+
+        companion object {
+            private val WILDCARDS = charArrayOf('*', '?', '[', '{')
+
+            fun of(segment: String, ignoreCase: Boolean): Segment {
+                val text = if (ignoreCase) segment.lowercase() else segment
+                if (text == "**") {
+                    return DoubleStar
+                }
+                if (text.indexOfAny(WILDCARDS) < 0) {
+                    return Literal(text)
+                }
+                val rest = text.substring(1)
+                if (text[0] == '*' && rest.indexOfAny(WILDCARDS) < 0) {
+                    return Glob(text, rest, null)
+                }
+                return Glob(text, null, globToRegex(text))
+            }
+
+            private fun globToRegex(glob: String): Regex {
+                val sb = StringBuilder()
+                var i = 0
+                while (i < glob.length) {
+                    when (val c = glob[i]) {
+                        '*' -> {
+                            sb.append("[^/]*")
+                            while (i + 1 < glob.length && glob[i + 1] == '*') {
+                                i++
+                            }
+                        }
+
+                        '?' -> sb.append('.')
+                        '.', '(', ')', '+', '|', '^', '$', '@', '%', '\\' -> sb.append('\\').append(c)
+                        '[', ']' -> sb.append(c)
+                        '{' -> sb.append("(?:")
+                        '}' -> sb.append(')')
+                        ',' -> sb.append('|')
+                        else -> sb.append(c)
+                    }
+                    i++
+                }
+                return try {
+                    Regex(sb.toString())
+                } catch (_: Exception) {
+                    Regex(Regex.escape(glob))
+                }
+            }
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package ee.carlrobert.codegpt.settings
 
 import ai.koog.agents.core.tools.Tool
+import com.intellij.openapi.Disposable
 import com.intellij.openapi.components.Service
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.LocalFileSystem
 import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.openapi.vfs.newvfs.events.VFileMoveEvent
+import com.intellij.openapi.vfs.newvfs.events.VFilePropertyChangeEvent
 import ee.carlrobert.codegpt.agent.external.ExternalAcpAgents
 import ee.carlrobert.codegpt.settings.agents.SubagentDefaults
 import ee.carlrobert.codegpt.settings.hooks.HookConfiguration
@@ -26,11 +33,15 @@ import java.nio.file.Files
 import java.nio.file.Path
 import java.nio.file.Paths
 import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.atomic.AtomicLong
+import java.util.function.Predicate
 import kotlin.io.path.inputStream
 import kotlin.io.path.notExists
 
 @Service(Service.Level.PROJECT)
-class ProxyAISettingsService(private val project: Project) {
+class ProxyAISettingsService(private val project: Project) : Disposable {
 
     private val json = Json {
         ignoreUnknownKeys = true
@@ -44,7 +55,25 @@ class ProxyAISettingsService(private val project: Project) {
     private val store: ProxyAISettingsStore by lazy {
         ProxyAISettingsStore(settingsFile, json, logger)
     }
+    private val settingsPath: String by lazy {
+        settingsFile.toString().replace('\\', '/')
+    }
     private val isWindows = System.getProperty("os.name")?.lowercase()?.contains("windows") == true
+    private val fileVersion = AtomicLong()
+
+    @Volatile
+    private var cachedSnapshot: SettingsSnapshot? = null
+
+    init {
+        project.messageBus.connect(this)
+            .subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
+                override fun after(events: List<VFileEvent>) {
+                    if (events.any { affectsSettingsFile(it) }) {
+                        fileVersion.incrementAndGet()
+                    }
+                }
+            })
+    }
 
     fun getSubagents(): List<ProxyAISubagent> {
         val settings = snapshot().settings
@@ -106,6 +135,14 @@ class ProxyAISettingsService(private val project: Project) {
         return snapshot().ignoreMatcher.matches(path, basePath)
     }
 
+    /**
+     * Returns a number that changes whenever the settings are reloaded, so callers can cache
+     * results derived from them.
+     */
+    fun getSettingsVersion(): Long {
+        return snapshot().version
+    }
+
     fun isPathVisible(path: String): Boolean {
         return !isPathIgnored(path)
     }
@@ -114,6 +151,22 @@ class ProxyAISettingsService(private val project: Project) {
         return isPathVisible(file.path)
     }
 
+    /**
+     * Returns a visibility check for a batch of files, e.g. a directory walk. Matching state is
+     * shared between files in the same directory, which makes it cheaper than calling
+     * [isVirtualFileVisible] for each file. The check is not thread-safe and uses the settings
+     * as they were when it was created.
+     */
+    fun visibilityFilter(): Predicate<VirtualFile> {
+        val session = snapshot().ignoreMatcher.newSession(project.basePath ?: "")
+        return Predicate { file -> !session.matches(file.path) }
+    }
+
+    fun filterVisibleFiles(files: Collection<VirtualFile>): List<VirtualFile> {
+        val isVisible = visibilityFilter()
+        return files.filter { isVisible.test(it) }
+    }
+
     private fun permissionTargets(target: String): List<String> {
         val normalized = try {
             Paths.get(target).normalize().toString().replace('\\', '/')
@@ -139,29 +192,79 @@ class ProxyAISettingsService(private val project: Project) {
         }.distinct()
     }
 
+    override fun dispose() {
+        cachedSnapshot = null
+    }
+
+    /**
+     * Returns the parsed settings and compiled ignore rules. The file is re-read when VFS reported
+     * a change to it, the settings were saved through this service, or its modification time or
+     * size on disk changed, which catches writes that VFS has not seen yet.
+     */
     private fun snapshot(): SettingsSnapshot {
-        val settings = (store.load() ?: ProxyAISettings.default()).normalized()
-        val ignoreMatcher = IgnoreMatcher.from(settings.ignore, isWindows)
-        return SettingsSnapshot(settings, ignoreMatcher)
+        val fileVersion = fileVersion.get()
+        val stamp = store.stamp()
+        cachedSnapshot?.takeIf { it.fileVersion == fileVersion && it.stamp == stamp }?.let { return it }
+
+        synchronized(this) {
+            val current = cachedSnapshot
+            if (current != null && current.fileVersion == fileVersion && current.stamp == stamp) {
+                return current
+            }
+
+            // Makes VFS track the file (or its parent), so that later changes are reported
+            LocalFileSystem.getInstance().findFileByNioFile(settingsFile)
+            val settings = (store.load() ?: ProxyAISettings.default()).normalized()
+            val ignoreMatcher = IgnoreMatcher.from(settings.ignore, isWindows)
+            val version = (current?.version ?: 0) + 1
+            return SettingsSnapshot(settings, ignoreMatcher, fileVersion, stamp, version)
+                .also { cachedSnapshot = it }
+        }
     }
 
     private fun updateSettings(transform: (ProxyAISettings) -> ProxyAISettings) {
-        val current = snapshot().settings
-        val updated = transform(current)
-        store.save(updated)
+        synchronized(this) {
+            val current = snapshot().settings
+            val updated = transform(current)
+            store.save(updated)
+            fileVersion.incrementAndGet()
+        }
+    }
+
+    private fun affectsSettingsFile(event: VFileEvent): Boolean {
+        val paths = when (event) {
+            is VFileMoveEvent -> listOf(event.oldPath, event.newPath)
+            is VFilePropertyChangeEvent -> listOf(event.oldPath, event.newPath)
+            else -> listOf(event.path)
+        }
+        return paths.any { it == settingsPath || settingsPath.startsWith("$it/") }
     }
 }
 
 private data class SettingsSnapshot(
     val settings: ProxyAISettings,
-    val ignoreMatcher: IgnoreMatcher
+    val ignoreMatcher: IgnoreMatcher,
+    val fileVersion: Long,
+    val stamp: FileStamp?,
+    val version: Long
 )
 
+private data class FileStamp(val lastModified: FileTime, val size: Long)
+
 private class ProxyAISettingsStore(
     private val settingsFile: Path,
     private val json: Json,
     private val logger: Logger
 ) {
+    fun stamp(): FileStamp? {
+        return try {
+            val attributes = Files.readAttributes(settingsFile, BasicFileAttributes::class.java)
+            FileStamp(attributes.lastModifiedTime(), attributes.size())
+        } catch (_: Exception) {
+            null
+        }
+    }
+
     @OptIn(ExperimentalSerializationApi::class)
     fun load(): ProxyAISettings? {
         if (settingsFile.notExists()) return null
@@ -196,119 +299,6 @@ private class ProxyAISettingsStore(
 
 }
 
-private class IgnoreMatcher(
-    private val compiled: List<Pair<String, Regex>>,
-    private val isWindows: Boolean
-) {
-    fun matches(path: String, basePath: String): Boolean {
-        val normalizedPath = normalizePath(path)
-        val rel = if (basePath.isNotBlank() && normalizedPath.startsWith(basePath)) {
-            normalizedPath.removePrefix(basePath).removePrefix("/")
-        } else normalizedPath
-
-        val pathToTest = if (isWindows) normalizedPath.lowercase() else normalizedPath
-        val relToTest = if (isWindows) rel.lowercase() else rel
-        return compiled.any { (raw, rx) ->
-            val normalized = if (isWindows) raw.lowercase() else raw
-            simpleMatch(relToTest, normalized) ||
-                    simpleMatch(pathToTest, normalized) ||
-                    rx.matches(relToTest) ||
-                    rx.matches(pathToTest)
-        }
-    }
-
-    companion object {
-        fun from(patterns: List<String>, isWindows: Boolean): IgnoreMatcher {
-            val compiled = patterns.mapNotNull { pattern ->
-                val rx = globToRegex(pattern, ignoreCase = isWindows) ?: return@mapNotNull null
-                pattern to rx
-            }
-            return IgnoreMatcher(compiled, isWindows)
-        }
-
-        private fun globToRegex(glob: String, ignoreCase: Boolean = false): Regex? {
-            return try {
-                var g = glob.trim()
-                if (g.isEmpty()) return null
-                val deepDirSuffix = g.endsWith("/**")
-                val dirSuffix = g.endsWith("/")
-                if (deepDirSuffix) {
-                    g = g.removeSuffix("/**")
-                }
-                g = g.trimEnd('/')
-                val sb = StringBuilder()
-                sb.append('^')
-                if (!g.startsWith("/")) {
-                    // Match from project root or any nested directory, similar to gitignore-style rules.
-                    sb.append("(?:.*/)?")
-                }
-                var i = 0
-                while (i < g.length) {
-                    when (val c = g[i]) {
-                        '*' -> {
-                            val nextStar = (i + 1 < g.length && g[i + 1] == '*')
-                            if (nextStar) {
-                                sb.append(".*")
-                                i += 1
-                            } else {
-                                sb.append("[^/]*")
-                            }
-                        }
-
-                        '?' -> sb.append(".")
-                        '.', '(', ')', '+', '|', '^', '$', '@', '%' -> sb.append('\\').append(c)
-                        '[' -> sb.append("[")
-                        ']' -> sb.append("]")
-                        '{' -> sb.append('(')
-                        '}' -> sb.append(')')
-                        ',' -> sb.append('|')
-                        else -> sb.append(c)
-                    }
-                    i += 1
-                }
-                when {
-                    deepDirSuffix -> sb.append("(/.*)?")
-                    dirSuffix -> sb.append("(/.*)?")
-                }
-                sb.append('$')
-                if (ignoreCase) Regex(
-                    sb.toString(),
-                    RegexOption.IGNORE_CASE
-                ) else Regex(sb.toString())
-            } catch (_: Exception) {
-                null
-            }
-        }
-    }
-
-    private fun normalizePath(path: String): String {
-        return try {
-            Paths.get(path).normalize().toString().replace('\\', '/')
-        } catch (_: Exception) {
-            path.replace('\\', '/')
-        }
-    }
-
-    private fun simpleMatch(path: String, pattern: String): Boolean {
-        val p = path.trimStart('/').replace('\\', '/')
-        val pat = pattern.trim().replace('\\', '/')
-        if (pat == p) return true
-        if (pat.endsWith("/**")) {
-            val dir = pat.removeSuffix("/**").trimEnd('/')
-            if (p == dir || p.startsWith("$dir/") || p.contains("/$dir/")) return true
-        }
-        if (pat.endsWith("/")) {
-            val dir = pat.trimEnd('/')
-            if (p == dir || p.startsWith("$dir/") || p.contains("/$dir/")) return true
-        }
-        if (!pat.contains('/') && pat.startsWith('.')) {
-            val fileName = p.substringAfterLast('/')
-            if (fileName == pat) return true
-        }
-        return false
-    }
-}
-
 @Serializable
 data class ProxyAISettings(
     val ignore: List<String> = DEFAULT_IGNORE_PATTERNS,
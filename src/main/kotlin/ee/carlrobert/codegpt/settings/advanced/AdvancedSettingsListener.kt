@@ -0,0 +1,12 @@
+package ee.carlrobert.codegpt.settings.advanced
+
+import com.intellij.util.messages.Topic
+
+fun interface AdvancedSettingsListener {
+    fun onAdvancedSettingsChanged(newState: AdvancedSettingsState)
+
+    companion object {
+        val TOPIC: Topic<AdvancedSettingsListener> =
+            Topic.create("Advanced Settings Changed", AdvancedSettingsListener::class.java)
+    }
+}
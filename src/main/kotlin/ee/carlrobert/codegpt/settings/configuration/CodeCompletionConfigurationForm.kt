@@ -5,8 +5,10 @@ import com.intellij.openapi.ui.DialogPanel
 import com.intellij.ui.PortField
 import com.intellij.ui.components.JBCheckBox
 import com.intellij.ui.dsl.builder.panel
+import com.intellij.ui.layout.selected
 import com.intellij.util.ui.JBUI
 import ee.carlrobert.codegpt.CodeGPTBundle
+import ee.carlrobert.codegpt.codecompletions.CodeCompletionPrefetchService
 
 class CodeCompletionConfigurationForm {
 
@@ -25,6 +27,20 @@ class CodeCompletionConfigurationForm {
     private val psiStructureAnalyzeDepthField = PortField().apply {
         number = service<ConfigurationSettings>().state.codeCompletionSettings.psiStructureAnalyzeDepth
     }
+    private val prefetchCheckBox = JBCheckBox(
+        CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.prefetch.title"),
+        service<ConfigurationSettings>().state.codeCompletionSettings.prefetchEnabled
+    )
+    private val prefetchProviderCheckBoxes = CodeCompletionPrefetchService.PREFETCH_CAPABLE_SERVICES
+        .associateWith {
+            JBCheckBox(
+                CodeGPTBundle.get(
+                    "configurationConfigurable.section.codeCompletion.prefetch.provider",
+                    it.label
+                ),
+                it.name !in service<ConfigurationSettings>().state.codeCompletionSettings.prefetchDisabledServices
+            )
+        }
 
     fun createPanel(): DialogPanel {
         return panel {
@@ -47,6 +63,17 @@ class CodeCompletionConfigurationForm {
                 cell(psiStructureAnalyzeDepthField)
                     .comment(CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.analyzeDepth.comment"))
             }
+            row {
+                cell(prefetchCheckBox)
+                    .comment(CodeGPTBundle.get("configurationConfigurable.section.codeCompletion.prefetch.description"))
+            }
+            indent {
+                prefetchProviderCheckBoxes.values.forEach { checkBox ->
+                    row {
+                        cell(checkBox).enabledIf(prefetchCheckBox.selected)
+                    }
+                }
+            }
         }.withBorder(JBUI.Borders.emptyLeft(16))
     }
 
@@ -55,6 +82,10 @@ class CodeCompletionConfigurationForm {
         gitDiffCheckBox.isSelected = prevState.gitDiffEnabled
         collectDependencyStructureBox.isSelected = prevState.collectDependencyStructure
         psiStructureAnalyzeDepthField.number = prevState.psiStructureAnalyzeDepth
+        prefetchCheckBox.isSelected = prevState.prefetchEnabled
+        prefetchProviderCheckBoxes.forEach { (serviceType, checkBox) ->
+            checkBox.isSelected = serviceType.name !in prevState.prefetchDisabledServices
+        }
     }
 
     fun getFormState(): CodeCompletionSettingsState {
@@ -63,6 +94,12 @@ class CodeCompletionConfigurationForm {
             this.gitDiffEnabled = gitDiffCheckBox.isSelected
             this.collectDependencyStructure = collectDependencyStructureBox.isSelected
             this.psiStructureAnalyzeDepth = psiStructureAnalyzeDepthField.number
+            this.prefetchEnabled = prefetchCheckBox.isSelected
+            this.prefetchDisabledServices = prefetchProviderCheckBoxes
+                .filterValues { !it.isSelected }
+                .keys
+                .map { it.name }
+                .toMutableList()
         }
     }
 }
\ No newline at end of file
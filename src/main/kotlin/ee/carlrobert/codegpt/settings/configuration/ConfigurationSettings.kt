@@ -63,4 +63,6 @@ class CodeCompletionSettingsState : BaseState() {
     var collectDependencyStructure by property(false)
     var contextAwareEnabled by property(false)
     var psiStructureAnalyzeDepth by property(2)
+    var prefetchEnabled by property(false)
+    var prefetchDisabledServices by list<String>()
 }
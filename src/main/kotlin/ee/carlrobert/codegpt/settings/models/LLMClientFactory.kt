@@ -16,8 +16,10 @@ import ee.carlrobert.codegpt.settings.service.FeatureType
 import ee.carlrobert.codegpt.settings.service.ServiceType
 import ee.carlrobert.codegpt.settings.service.custom.CustomServicesSettings
 import ee.carlrobert.codegpt.settings.service.llama.LlamaSettings
+import ee.carlrobert.codegpt.settings.service.llama.LlamaSettingsState
 import ee.carlrobert.codegpt.settings.service.ollama.OllamaSettings
 import ee.carlrobert.codegpt.settings.service.openai.OpenAISettings
+import java.net.URI
 
 object LLMClientFactory {
 
@@ -39,22 +41,19 @@ object LLMClientFactory {
         return when (serviceType) {
             ServiceType.PROXYAI -> {
                 val apiKey = getCredential(CredentialKey.CodeGptApiKey) ?: ""
-                val baseUrl = System.getProperty("proxyai.baseUrl")
-                    ?: ProxyAIClientSettings.DEFAULT_BASE_URL
                 ProxyAILLMClient(
                     apiKey = apiKey,
-                    settings = ProxyAIClientSettings(baseUrl = baseUrl),
+                    settings = ProxyAIClientSettings(baseUrl = proxyAIBaseUrl()),
                     baseClient = HttpClientProvider.createHttpClient()
                 )
             }
 
             ServiceType.OPENAI -> {
                 val apiKey = getCredential(CredentialKey.OpenaiApiKey) ?: ""
-                val baseUrl = System.getProperty("openai.baseUrl") ?: "https://api.openai.com"
                 CodeGPTOpenAILLMClient(
                     apiKey = apiKey,
                     organization = OpenAISettings.getCurrentState().organization,
-                    baseUrl = baseUrl,
+                    baseUrl = openAIBaseUrl(),
                     model = resolveOpenAICodeCompletionModel(),
                     baseClient = HttpClientProvider.createHttpClient()
                 )
@@ -62,8 +61,6 @@ object LLMClientFactory {
 
             ServiceType.ANTHROPIC -> {
                 val apiKey = getCredential(CredentialKey.AnthropicApiKey) ?: ""
-                val baseUrl = System.getProperty("anthropic.baseUrl")
-                    ?: "https://api.anthropic.com"
                 val modelVersionsMap = mapOf(
                     Opus_4_6 to "claude-opus-4-6",
                     Opus_4_5 to "claude-opus-4-5-20251101",
@@ -77,30 +74,25 @@ object LLMClientFactory {
                     baseClient = HttpClientProvider.createHttpClient(),
                     settings = AnthropicClientSettings(
                         modelVersionsMap = modelVersionsMap,
-                        baseUrl = baseUrl
+                        baseUrl = anthropicBaseUrl()
                     )
                 )
             }
 
             ServiceType.GOOGLE -> {
                 val apiKey = getCredential(CredentialKey.GoogleApiKey) ?: ""
-                val baseUrl =
-                    System.getProperty("google.baseUrl")
-                        ?: "https://generativelanguage.googleapis.com"
                 GoogleLLMClient(
                     apiKey = apiKey,
-                    settings = GoogleClientSettings(baseUrl = baseUrl),
+                    settings = GoogleClientSettings(baseUrl = googleBaseUrl()),
                     baseClient = HttpClientProvider.createHttpClient()
                 )
             }
 
             ServiceType.MISTRAL -> {
                 val apiKey = getCredential(CredentialKey.MistralApiKey) ?: ""
-                val baseUrl = System.getProperty("mistral.baseUrl")
-                    ?: "https://api.mistral.ai"
                 CodeGPTMistralAILLMClient(
                     apiKey = apiKey,
-                    baseUrl = baseUrl,
+                    baseUrl = mistralBaseUrl(),
                     model = currentCodeCompletionModel(),
                     baseClient = HttpClientProvider.createHttpClient()
                 )
@@ -114,9 +106,7 @@ object LLMClientFactory {
             ServiceType.LLAMA_CPP -> {
                 val settings = service<LlamaSettings>().state
                 LlamaCppLLMClient(
-                    baseUrl = System.getProperty("llama.baseUrl")
-                        ?: settings.serverPort?.let { "http://localhost:$it" }
-                        ?: "http://localhost:8080",
+                    baseUrl = llamaBaseUrl(settings),
                     state = settings,
                     baseClient = HttpClientProvider.createHttpClient()
                 )
@@ -124,12 +114,9 @@ object LLMClientFactory {
 
             ServiceType.OLLAMA -> {
                 val settings = service<OllamaSettings>().state
-                val baseUrl = service<OllamaSettings>().state.host
-                    ?: System.getProperty("ollama.baseUrl")
-                    ?: "http://localhost:11434"
                 CodeGPTOllamaClient(
                     settings = settings,
-                    baseUrl = baseUrl,
+                    baseUrl = ollamaBaseUrl(),
                     apiKey = getCredential(CredentialKey.OllamaApikey),
                     baseClient = HttpClientProvider.createHttpClient()
                 )
@@ -159,6 +146,73 @@ object LLMClientFactory {
         }
     }
 
+    /**
+     * Returns the URL that clients created for [serviceType] and [featureType] send requests to,
+     * or null when it is not configured.
+     */
+    fun resolveBaseUrl(serviceType: ServiceType, featureType: FeatureType): String? {
+        return when (serviceType) {
+            ServiceType.PROXYAI -> proxyAIBaseUrl()
+            ServiceType.OPENAI -> openAIBaseUrl()
+            ServiceType.ANTHROPIC -> anthropicBaseUrl()
+            ServiceType.GOOGLE -> googleBaseUrl()
+            ServiceType.MISTRAL -> mistralBaseUrl()
+            ServiceType.INCEPTION -> System.getProperty(InceptionAILLMClient.INCEPTION_BASE_URL_PROPERTY)
+                ?: InceptionAILLMClient.DEFAULT_BASE_URL
+
+            ServiceType.LLAMA_CPP -> llamaBaseUrl(service<LlamaSettings>().state)
+            ServiceType.OLLAMA -> ollamaBaseUrl()
+            ServiceType.CUSTOM_OPENAI -> {
+                val state =
+                    service<CustomServicesSettings>().customServiceStateForFeatureType(featureType)
+                when (featureType) {
+                    FeatureType.CODE_COMPLETION -> state.codeCompletionSettings.url
+                    else -> state.chatCompletionSettings.url
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the `scheme://host[:port]/` origin that clients created for [serviceType] and
+     * [featureType] connect to, or null when it is not configured.
+     */
+    fun resolveOrigin(serviceType: ServiceType, featureType: FeatureType): String? {
+        val baseUrl = runCatching { resolveBaseUrl(serviceType, featureType) }
+            .getOrNull()
+            ?.takeIf { it.isNotBlank() }
+            ?: return null
+        val uri = runCatching { URI(baseUrl) }.getOrNull() ?: return null
+        val host = uri.host ?: return null
+        val port = if (uri.port == -1) "" else ":${uri.port}"
+        return "${uri.scheme}://$host$port/"
+    }
+
+    private fun proxyAIBaseUrl(): String =
+        System.getProperty("proxyai.baseUrl") ?: ProxyAIClientSettings.DEFAULT_BASE_URL
+
+    private fun openAIBaseUrl(): String =
+        System.getProperty("openai.baseUrl") ?: "https://api.openai.com"
+
+    private fun anthropicBaseUrl(): String =
+        System.getProperty("anthropic.baseUrl") ?: "https://api.anthropic.com"
+
+    private fun googleBaseUrl(): String =
+        System.getProperty("google.baseUrl") ?: "https://generativelanguage.googleapis.com"
+
+    private fun mistralBaseUrl(): String =
+        System.getProperty("mistral.baseUrl") ?: "https://api.mistral.ai"
+
+    private fun llamaBaseUrl(settings: LlamaSettingsState): String =
+        System.getProperty("llama.baseUrl")
+            ?: settings.serverPort?.let { "http://localhost:$it" }
+            ?: "http://localhost:8080"
+
+    private fun ollamaBaseUrl(): String =
+        service<OllamaSettings>().state.host
+            ?: System.getProperty("ollama.baseUrl")
+            ?: "http://localhost:11434"
+
     private fun currentCodeCompletionModel(): String {
         return service<ModelSettings>().getModelSelectionForFeature(FeatureType.CODE_COMPLETION).modelId
     }
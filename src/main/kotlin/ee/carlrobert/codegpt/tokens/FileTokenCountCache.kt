@@ -0,0 +1,138 @@
+package ee.carlrobert.codegpt.tokens
+
+import com.google.common.cache.Cache
+import com.google.common.cache.CacheBuilder
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.runReadAction
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.project.Project
+import com.intellij.openapi.vfs.VirtualFile
+import com.intellij.openapi.vfs.VirtualFileManager
+import com.intellij.openapi.vfs.newvfs.BulkFileListener
+import com.intellij.openapi.vfs.newvfs.events.VFileEvent
+import com.intellij.util.concurrency.AppExecutorUtil
+import ee.carlrobert.codegpt.EncodingManager
+import ee.carlrobert.codegpt.util.EditorUtil
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+
+/**
+ * Token counts of project files, keyed by path and modification stamp. The stamp of the file's
+ * document is used while it is loaded, so unsaved edits are counted too.
+ *
+ * Counts are computed on a bounded background pool, so callers can show a progressive total for
+ * many files without blocking the UI. Entries are dropped when the VFS reports a change, move or
+ * deletion of the file, and at most [MAX_ENTRIES] counts are kept.
+ */
+@Service(Service.Level.PROJECT)
+class FileTokenCountCache(project: Project) : Disposable {
+
+    companion object {
+        private val POOL_SIZE = Runtime.getRuntime().availableProcessors().coerceIn(1, 4)
+        private const val MAX_ENTRIES = 10_000L
+
+        private val logger = thisLogger()
+
+        @JvmStatic
+        fun getInstance(project: Project): FileTokenCountCache = project.service()
+    }
+
+    private data class Entry(val modificationStamp: Long, val tokens: Int)
+
+    private val counts: Cache<String, Entry> = CacheBuilder.newBuilder()
+        .maximumSize(MAX_ENTRIES)
+        .build()
+    private val pending = ConcurrentHashMap<String, CompletableFuture<Int>>()
+    private val executor: ExecutorService =
+        AppExecutorUtil.createBoundedApplicationPoolExecutor("ProxyAI Token Counting", POOL_SIZE)
+
+    init {
+        project.messageBus.connect(this)
+            .subscribe(VirtualFileManager.VFS_CHANGES, object : BulkFileListener {
+                override fun after(events: List<VFileEvent>) {
+                    events.forEach { event ->
+                        val file = event.file
+                        invalidate(event.path, recursive = file == null || file.isDirectory)
+                    }
+                }
+            })
+    }
+
+    /** Returns the cached count, or null when the file changed or has not been counted yet. */
+    fun getCachedTokenCount(file: VirtualFile): Int? {
+        val entry = counts.getIfPresent(file.path) ?: return null
+        return entry.tokens.takeIf { entry.modificationStamp == getModificationStamp(file) }
+    }
+
+    /** Returns the token count of [file], counting it on the calling thread when needed. */
+    fun getTokenCount(file: VirtualFile): Int {
+        if (file.isDirectory || !file.isValid) {
+            return 0
+        }
+        return getCachedTokenCount(file) ?: count(file)
+    }
+
+    /**
+     * Counts [file] on the background pool. Concurrent requests for the same file share one
+     * computation.
+     */
+    fun getTokenCountAsync(file: VirtualFile): CompletableFuture<Int> {
+        if (file.isDirectory || !file.isValid) {
+            return CompletableFuture.completedFuture(0)
+        }
+        getCachedTokenCount(file)?.let { return CompletableFuture.completedFuture(it) }
+
+        val path = file.path
+        pending[path]?.let { return it }
+        // Only the winning future removes itself, and only after it is in the map: a callback
+        // attached inside computeIfAbsent could run there and update the map recursively.
+        val future = CompletableFuture<Int>()
+        pending.putIfAbsent(path, future)?.let { return it }
+        CompletableFuture.supplyAsync({ count(file) }, executor)
+            .whenComplete { tokens, error ->
+                pending.remove(path, future)
+                if (error != null) future.completeExceptionally(error) else future.complete(tokens)
+            }
+        return future
+    }
+
+    /** Counts all [files] in parallel and completes with their sum. */
+    fun getTotalTokenCountAsync(files: Collection<VirtualFile>): CompletableFuture<Int> {
+        val futures = files.map { getTokenCountAsync(it) }
+        return CompletableFuture.allOf(*futures.toTypedArray())
+            .thenApply { futures.sumOf { it.join() } }
+    }
+
+    fun invalidate(path: String, recursive: Boolean = false) {
+        counts.invalidate(path)
+        if (recursive) {
+            counts.asMap().keys.removeIf { it.startsWith("$path/") }
+        }
+    }
+
+    override fun dispose() {
+        executor.shutdownNow()
+        counts.invalidateAll()
+    }
+
+    private fun count(file: VirtualFile): Int {
+        val modificationStamp = getModificationStamp(file)
+        return try {
+            val tokens = EncodingManager.getInstance().countTokens(EditorUtil.getFileContent(file))
+            counts.put(file.path, Entry(modificationStamp, tokens))
+            tokens
+        } catch (e: Exception) {
+            logger.warn("Could not count tokens of ${file.path}", e)
+            0
+        }
+    }
+
+    private fun getModificationStamp(file: VirtualFile): Long = runReadAction {
+        FileDocumentManager.getInstance().getCachedDocument(file)?.modificationStamp
+            ?: file.modificationStamp
+    }
+}
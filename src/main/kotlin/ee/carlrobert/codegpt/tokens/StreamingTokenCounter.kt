@@ -0,0 +1,76 @@
+package ee.carlrobert.codegpt.tokens
+
+import com.intellij.openapi.components.service
+import ee.carlrobert.codegpt.EncodingManager
+
+/**
+ * Counts the tokens of a text that arrives in chunks without re-tokenizing what came before.
+ *
+ * The BPE pre-tokenizer never lets a piece run from a line break into a following non-whitespace
+ * character, so the text up to the last such boundary is counted once and dropped; only the
+ * unfinished last line is re-counted with each chunk. Lines that grow past [MAX_TAIL_LENGTH]
+ * are split before a space instead, which may be off by a token at that split.
+ */
+class StreamingTokenCounter @JvmOverloads constructor(
+    private val countTokens: (String) -> Int = { service<EncodingManager>().countTokens(it) }
+) {
+
+    companion object {
+        private const val MAX_TAIL_LENGTH = 4096
+    }
+
+    private val tail = StringBuilder()
+    private var stableTokens = 0
+    private var tailTokens = 0
+
+    val totalTokens: Int
+        @Synchronized get() = stableTokens + tailTokens
+
+    /**
+     * Appends the chunk and returns the token count of all text appended so far.
+     */
+    @Synchronized
+    fun append(delta: String): Int {
+        if (delta.isEmpty()) {
+            return stableTokens + tailTokens
+        }
+
+        val searchFrom = maxOf(1, tail.length)
+        tail.append(delta)
+        val boundary = findStableBoundary(searchFrom)
+        if (boundary > 0) {
+            stableTokens += countTokens(tail.substring(0, boundary))
+            tail.delete(0, boundary)
+        }
+        tailTokens = countTokens(tail.toString())
+        return stableTokens + tailTokens
+    }
+
+    @Synchronized
+    fun reset() {
+        tail.setLength(0)
+        stableTokens = 0
+        tailTokens = 0
+    }
+
+    /**
+     * Returns the last offset in the tail at which the text can be split without changing the
+     * token count, searching only the part of the tail that the latest chunk could affect.
+     */
+    private fun findStableBoundary(searchFrom: Int): Int {
+        for (i in tail.length - 1 downTo searchFrom) {
+            if (tail[i - 1] == '\n' && !tail[i].isWhitespace()) {
+                return i
+            }
+        }
+        if (tail.length <= MAX_TAIL_LENGTH) {
+            return 0
+        }
+        for (i in tail.length - 1 downTo 1) {
+            if (tail[i] == ' ' && !tail[i - 1].isWhitespace()) {
+                return i
+            }
+        }
+        return 0
+    }
+}
@@ -2,15 +2,16 @@ package ee.carlrobert.codegpt.tokens
 
 import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.components.Service
-import ee.carlrobert.codegpt.EncodingManager
+import ee.carlrobert.codegpt.settings.models.ModelSettings
+import ee.carlrobert.codegpt.settings.service.FeatureType
 
 @Service
 class TokenComputationService {
-    private val encodingManager = EncodingManager.getInstance()
 
-    fun countTextTokens(text: String?): Int {
+    fun countTextTokens(text: String?, featureType: FeatureType = FeatureType.CHAT): Int {
         if (text.isNullOrEmpty()) return 0
-        return encodingManager.countTokens(text)
+        val model = ModelSettings.getInstance().getModelSelectionForFeature(featureType).llmModel
+        return TokenizerRegistry.getInstance().getTokenizer(model).countTokens(text)
     }
 
     fun estimateTokensByLength(length: Int): Int = length / 4
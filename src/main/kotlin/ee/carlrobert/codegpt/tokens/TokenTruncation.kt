@@ -24,20 +24,10 @@ fun String.truncateTokensWithGap(
     gapMarker: String = ToolResultTruncationConfig.GAP_MARKER,
 ): String {
     if (this.isEmpty()) return this
-    val total = this.countTokens()
-    if (total <= maxTokens) return this
 
     val safeHeadRatio = headRatio.coerceIn(0.1, 0.9)
     val headTokens = (maxTokens * safeHeadRatio).toInt().coerceAtLeast(1)
-    val tailTokens = (maxTokens - headTokens).coerceAtLeast(1)
-
-    val head = this.truncateTokens(headTokens, fromStart = true)
-    val tail = this.truncateTokens(tailTokens, fromStart = false)
-    return buildString(head.length + gapMarker.length + tail.length) {
-        append(head)
-        append(gapMarker)
-        append(tail)
-    }
+    return service<EncodingManager>().truncateTextWithGap(this, maxTokens, headTokens, gapMarker)
 }
 
 fun String.truncateToolResult(maxTokens: Int = ToolResultTruncationConfig.MAX_TOKENS): String =
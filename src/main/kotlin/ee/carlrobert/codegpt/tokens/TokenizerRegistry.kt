@@ -0,0 +1,135 @@
+package ee.carlrobert.codegpt.tokens
+
+import ai.koog.prompt.llm.LLModel
+import ai.koog.prompt.tokenizer.Tokenizer
+import com.intellij.openapi.components.Service
+import com.intellij.openapi.components.service
+import com.intellij.openapi.diagnostic.thisLogger
+import com.knuddels.jtokkit.api.EncodingType
+import ee.carlrobert.codegpt.EncodingManager
+import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.abs
+import kotlin.math.ceil
+
+/**
+ * Picks the tokenizer for each provider and model. OpenAI models get their own BPE encoding;
+ * models whose tokenizer is not bundled (Claude, Llama, Mistral, Gemini, ...) are counted with
+ * cl100k and scaled by a ratio learned from the usage numbers the provider reports.
+ */
+@Service
+class TokenizerRegistry {
+
+    companion object {
+        private const val SMOOTHING = 0.2
+        private const val MIN_RATIO = 0.5
+        private const val MAX_RATIO = 2.0
+        private const val CALIBRATION_SAMPLES = 20
+
+        private val O200K_MODEL_PREFIXES =
+            listOf("gpt-4o", "chatgpt-4o", "gpt-4.1", "gpt-4.5", "gpt-5", "gpt-oss", "o1", "o3", "o4")
+        private val CL100K_MODEL_PREFIXES =
+            listOf("gpt-4", "gpt-3.5", "gpt-35", "text-embedding")
+
+        private val logger = thisLogger()
+
+        @JvmStatic
+        fun getInstance(): TokenizerRegistry = service()
+
+        /**
+         * Returns the encoding the model was trained with, or null when it is not known.
+         */
+        fun resolveEncodingType(modelId: String): EncodingType? {
+            val model = modelId.lowercase().substringAfterLast('/')
+            return when {
+                O200K_MODEL_PREFIXES.any { model.startsWith(it) } -> EncodingType.O200K_BASE
+                CL100K_MODEL_PREFIXES.any { model.startsWith(it) } -> EncodingType.CL100K_BASE
+                else -> null
+            }
+        }
+    }
+
+    private val tokenizers = ConcurrentHashMap<String, ModelTokenizer>()
+
+    fun getTokenizer(model: LLModel): ModelTokenizer = getTokenizer(model.provider.id, model.id)
+
+    fun getTokenizer(provider: String, modelId: String): ModelTokenizer {
+        return tokenizers.computeIfAbsent("$provider:$modelId") {
+            val encodingType = resolveEncodingType(modelId)
+            if (encodingType == null) {
+                logger.debug("No bundled tokenizer for $provider:$modelId, using calibrated cl100k")
+            }
+            val type = encodingType ?: EncodingType.CL100K_BASE
+            ModelTokenizer(encodingType != null) {
+                service<EncodingManager>().countTokens(it, type)
+            }
+        }
+    }
+
+    /**
+     * Token counter for one model. [countTokens] returns the calibrated estimate, and
+     * [recordUsage] feeds back what the provider actually charged for a prompt.
+     */
+    class ModelTokenizer(
+        val exact: Boolean,
+        private val countRawTokens: (String) -> Int
+    ) : Tokenizer {
+
+        @Volatile
+        var ratio: Double = 1.0
+            private set
+
+        private var samples = 0
+        private var rawErrorSum = 0.0
+        private var calibratedErrorSum = 0.0
+
+        override fun countTokens(text: String): Int {
+            val rawTokens = countRawTokens(text)
+            return if (exact) rawTokens else ceil(rawTokens * ratio).toInt()
+        }
+
+        /**
+         * Compares an estimate made by [countTokens] with the token count the provider reported
+         * for the same prompt, and for inexact tokenizers moves the ratio towards it.
+         */
+        @Synchronized
+        fun recordUsage(estimatedTokens: Int, reportedTokens: Int) {
+            if (estimatedTokens <= 0 || reportedTokens <= 0) {
+                return
+            }
+
+            val currentRatio = if (exact) 1.0 else ratio
+            val rawTokens = estimatedTokens / currentRatio
+            samples++
+            rawErrorSum += abs(rawTokens - reportedTokens) / reportedTokens
+            calibratedErrorSum += abs(estimatedTokens - reportedTokens).toDouble() / reportedTokens
+            if (!exact) {
+                val observedRatio = reportedTokens / rawTokens
+                ratio = (currentRatio * (1 - SMOOTHING) + observedRatio * SMOOTHING)
+                    .coerceIn(MIN_RATIO, MAX_RATIO)
+            }
+        }
+
+        @Synchronized
+        fun needsCalibration(): Boolean = samples < CALIBRATION_SAMPLES
+
+        @Synchronized
+        fun getAccuracy(): Accuracy {
+            return Accuracy(
+                samples = samples,
+                ratio = ratio,
+                rawMeanError = if (samples == 0) null else rawErrorSum / samples,
+                calibratedMeanError = if (samples == 0) null else calibratedErrorSum / samples
+            )
+        }
+    }
+
+    /**
+     * How far the estimates were from the reported usage, as mean relative errors.
+     */
+    data class Accuracy(
+        val samples: Int,
+        val ratio: Double,
+        val rawMeanError: Double?,
+        val calibratedMeanError: Double?,
+    )
+}
@@ -6,13 +6,13 @@ import com.agentclientprotocol.model.PlanEntry
 import com.agentclientprotocol.model.PlanEntryStatus
 import com.intellij.openapi.Disposable
 import com.intellij.openapi.application.ApplicationManager
-import com.intellij.openapi.application.runInEdt
 import com.intellij.openapi.application.runReadActionBlocking
 import com.intellij.openapi.components.service
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.diagnostic.thisLogger
 import com.intellij.openapi.fileEditor.FileDocumentManager
 import com.intellij.openapi.project.Project
+import com.intellij.openapi.util.Disposer
 import com.intellij.openapi.vfs.LocalFileSystem
 import ee.carlrobert.codegpt.CodeGPTBundle
 import ee.carlrobert.codegpt.agent.*
@@ -23,6 +23,7 @@ import ee.carlrobert.codegpt.completions.ToolApprovalMode
 import ee.carlrobert.codegpt.settings.agents.SubagentRuntimeResolver
 import ee.carlrobert.codegpt.settings.service.ServiceType
 import ee.carlrobert.codegpt.settings.service.codegpt.CodeGPTApiException
+import ee.carlrobert.codegpt.tokens.StreamingTokenCounter
 import ee.carlrobert.codegpt.toolwindow.agent.ui.*
 import ee.carlrobert.codegpt.toolwindow.agent.ui.approval.*
 import ee.carlrobert.codegpt.toolwindow.agent.ui.descriptor.Badge
@@ -34,12 +35,10 @@ import ee.carlrobert.codegpt.ui.textarea.UserInputPanel
 import ee.carlrobert.codegpt.util.coroutines.DisposableCoroutineScope
 import kotlinx.coroutines.CompletableDeferred
 import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.delay
 import java.awt.Component
 import java.util.*
 import java.util.concurrent.ConcurrentHashMap
 import javax.swing.JPanel
-import kotlin.time.Duration.Companion.milliseconds
 
 class AgentEventHandler(
     private val project: Project,
@@ -59,6 +58,9 @@ class AgentEventHandler(
 
     companion object {
         val logger: Logger = thisLogger()
+
+        private const val BACKGROUND_OUTPUT_TIMEOUT_MS = 5_000L
+        private const val TOKEN_ESTIMATE_INTERVAL_MS = 250L
     }
 
     private val mainToolCards = ConcurrentHashMap<String, ToolCallCard>()
@@ -74,6 +76,10 @@ class AgentEventHandler(
 
     @Volatile
     private var lastReportedPromptTokens: Long = 0
+    private val responseTokenCounter = StreamingTokenCounter()
+
+    @Volatile
+    private var lastTokenEstimateAt: Long = 0
     private var currentLoadingText: String = CodeGPTBundle.get("toolwindow.chat.loading")
     private var loadingTextBeforeRetry: String? = null
 
@@ -109,6 +115,16 @@ class AgentEventHandler(
 
     private val subagentViewHolders = ConcurrentHashMap<String, RunViewHolder>()
     private val serviceScope = DisposableCoroutineScope(Dispatchers.Default)
+    private val uiEvents = AgentUiEventCoalescer(
+        onText = { text ->
+            currentResponseBody?.updateMessage(text)
+            requestUiRefresh()
+        },
+        onThinking = { text ->
+            currentResponseBody?.appendThinking(text)
+            requestUiRefresh()
+        }
+    )
 
     @Volatile
     private var uiRefreshScheduled = false
@@ -142,6 +158,7 @@ class AgentEventHandler(
         runViewHolder = null
         subagentViewHolders.clear()
         lastReportedPromptTokens = 0
+        responseTokenCounter.reset()
         currentLoadingText = CodeGPTBundle.get("toolwindow.chat.loading")
         loadingTextBeforeRetry = null
         currentRollbackRunId = null
@@ -175,39 +192,27 @@ class AgentEventHandler(
         onComplete: (() -> Unit)? = null
     ) {
         serviceScope.launch {
+            var reader: BackgroundProcessManager.ProcessOutput.Reader? = null
             try {
-                var outPos = 0
-                var errPos = 0
+                val po = BackgroundProcessManager.getOutput(bgId) ?: return@launch
+                reader = po.newReader()
                 while (true) {
-                    val po = BackgroundProcessManager.getOutput(bgId) ?: break
-                    val stdout = po.stdout.toString()
-                    val stderr = po.stderr.toString()
-                    if (outPos < stdout.length) {
-                        stdout.substring(outPos).split('\n').forEach { line ->
-                            if (line.isNotEmpty()) toolOutputPublisher.toolOutput(
-                                toolId,
-                                line,
-                                false
-                            )
-                        }
-                        outPos = stdout.length
+                    val version = po.version
+                    val complete = po.isComplete
+                    val output = reader.readNewOutput()
+                    output.stdout.forEach { line ->
+                        if (line.isNotEmpty()) toolOutputPublisher.toolOutput(toolId, line, false)
                     }
-                    if (errPos < stderr.length) {
-                        stderr.substring(errPos).split('\n').forEach { line ->
-                            if (line.isNotEmpty()) toolOutputPublisher.toolOutput(
-                                toolId,
-                                line,
-                                true
-                            )
-                        }
-                        errPos = stderr.length
+                    output.stderr.forEach { line ->
+                        if (line.isNotEmpty()) toolOutputPublisher.toolOutput(toolId, line, true)
                     }
-                    if (po.isComplete) break
-                    delay(300.milliseconds)
+                    if (complete || BackgroundProcessManager.getOutput(bgId) == null) break
+                    po.awaitChange(version, BACKGROUND_OUTPUT_TIMEOUT_MS)
                 }
             } catch (ex: Exception) {
                 logger.warn("Failed to monitor background process output", ex)
             } finally {
+                reader?.close()
                 onComplete?.invoke()
             }
         }
@@ -236,7 +241,8 @@ class AgentEventHandler(
             return
         }
 
-        currentResponseBody?.displayError(extractDisplayMessage(throwable))
+        val message = extractDisplayMessage(throwable)
+        uiEvents.post { currentResponseBody?.displayError(message) }
         handleDone()
     }
 
@@ -304,7 +310,7 @@ class AgentEventHandler(
     }
 
     private fun handleDone() {
-        runInEdt {
+        uiEvents.post {
             currentRollbackRunId?.let { runId ->
                 project.service<RollbackService>().finishRun(runId)
             } ?: project.service<RollbackService>().finishSession(sessionId)
@@ -345,7 +351,7 @@ class AgentEventHandler(
             logger.debug(
                 "Enqueueing agent approval for session=$sessionId type=${resolvedRequest.type} title=${resolvedRequest.title.logPreview()} payload=${resolvedRequest.payload.logSummary()}"
             )
-            runInEdt {
+            uiEvents.post {
                 approvalQueue.addLast(ApprovalRequest(resolvedRequest, deferred))
                 maybeShowNextApproval()
             }
@@ -371,7 +377,7 @@ class AgentEventHandler(
         logger.debug(
             "Enqueueing agent approval for session=$sessionId type=${request.type} title=${request.title.logPreview()} payload=${request.payload.logSummary()}"
         )
-        runInEdt {
+        uiEvents.post {
             approvalQueue.addLast(ApprovalRequest(request, decision))
             maybeShowNextApproval()
         }
@@ -382,7 +388,7 @@ class AgentEventHandler(
         model: AskUserQuestionTool.AskUserQuestionsModel
     ): Map<String, String> {
         val deferred = CompletableDeferred<Map<String, String>>()
-        runInEdt {
+        uiEvents.post {
             questionQueue.addLast(QuestionRequest(model, deferred))
             maybeShowNextQuestion()
         }
@@ -390,21 +396,16 @@ class AgentEventHandler(
     }
 
     override fun onTextReceived(text: String) {
-        runInEdt {
-            currentResponseBody?.updateMessage(text)
-            requestUiRefresh()
-        }
+        publishStreamedTokenEstimate(text)
+        uiEvents.postText(text)
     }
 
     override fun onThinkingReceived(text: String) {
-        runInEdt {
-            currentResponseBody?.appendThinking(text)
-            requestUiRefresh()
-        }
+        uiEvents.postThinking(text)
     }
 
     override fun onPlanUpdated(entries: List<PlanEntry>) {
-        runInEdt {
+        uiEvents.post {
             todoListPanel.updateTodos(entries.toTodoItems())
             todoListPanel.isVisible = entries.isNotEmpty()
             requestUiRefresh()
@@ -420,7 +421,7 @@ class AgentEventHandler(
 
         when (uiArgs) {
             is TodoWriteTool.Args -> {
-                runInEdt {
+                uiEvents.post {
                     val inProgressTask =
                         uiArgs.todos.find { it.status == TodoWriteTool.TodoStatus.IN_PROGRESS }
                     if (inProgressTask != null) {
@@ -433,7 +434,7 @@ class AgentEventHandler(
             }
 
             is TaskTool.Args -> {
-                runInEdt {
+                uiEvents.post {
                     val host = ensureRunViewForSubagent(id)
                     host.addEntry(createTaskEntry(id, null, uiArgs))
                     host.refresh()
@@ -452,7 +453,7 @@ class AgentEventHandler(
                     }
                 }
 
-                runInEdt {
+                uiEvents.post {
                     showMainToolCard(id, toolName, uiArgs)
                 }
             }
@@ -461,7 +462,7 @@ class AgentEventHandler(
 
     override fun onToolCompleted(id: String?, toolName: String, result: Any?) {
         val uiResult = ToolSpecs.coerceResultForUi(toolName, result)
-        runInEdt {
+        uiEvents.post {
             if (id != null && (toolName == "Task" || uiResult is TaskTool.Result)) {
                 val holder = runViewHolder ?: subagentViewHolders.values.firstOrNull { viewHolder ->
                     viewHolder.getItems().any { entry -> entry.id == id }
@@ -484,7 +485,7 @@ class AgentEventHandler(
                     mainToolCards.remove(keyFor(id))
                 } else {
                     monitorBackgroundProcessOutput(bgId, id) {
-                        runInEdt {
+                        uiEvents.post {
                             mainToolCards.remove(keyFor(id))
                         }
                     }
@@ -505,7 +506,7 @@ class AgentEventHandler(
             }
         }
 
-        runInEdt {
+        uiEvents.post {
             val host = ensureRunViewForSubagent(parentId)
             val entry = when (args) {
                 is ReadTool.Args -> RunEntry.ReadEntry(cid, parentId, args, null)
@@ -563,7 +564,7 @@ class AgentEventHandler(
         toolName: String,
         result: Any?
     ) {
-        runInEdt {
+        uiEvents.post {
             if (childId != null) {
                 val holder = subagentViewHolders.values.find { viewHolder ->
                     viewHolder.getItems().any { entry -> entry.id == childId }
@@ -620,7 +621,7 @@ class AgentEventHandler(
     }
 
     override fun onRunCheckpointUpdated(runMessageId: UUID, ref: CheckpointRef?) {
-        runInEdt {
+        uiEvents.post {
             onRunCheckpointUpdatedCallback(runMessageId, ref)
         }
     }
@@ -631,6 +632,7 @@ class AgentEventHandler(
 
     override fun onUsageAvailable(event: AgentUsageEvent) {
         lastReportedPromptTokens = event.usedTokens
+        responseTokenCounter.reset()
         project.messageBus.syncPublisher(TokenUsageListener.TOKEN_USAGE_TOPIC)
             .onTokenUsageChanged(
                 TokenUsageEvent(
@@ -643,8 +645,33 @@ class AgentEventHandler(
             )
     }
 
+    /**
+     * Between usage reports, shows the last reported total plus the tokens streamed since then.
+     * The estimate is published at most once per [TOKEN_ESTIMATE_INTERVAL_MS], as each event
+     * updates the counter on the EDT.
+     */
+    private fun publishStreamedTokenEstimate(text: String) {
+        val streamedTokens = responseTokenCounter.append(text)
+        if (lastReportedPromptTokens <= 0) {
+            return
+        }
+        val now = System.currentTimeMillis()
+        if (now - lastTokenEstimateAt < TOKEN_ESTIMATE_INTERVAL_MS) {
+            return
+        }
+        lastTokenEstimateAt = now
+        project.messageBus.syncPublisher(TokenUsageListener.TOKEN_USAGE_TOPIC)
+            .onTokenUsageChanged(
+                TokenUsageEvent(
+                    sessionId = sessionId,
+                    totalTokens = lastReportedPromptTokens + streamedTokens,
+                    estimated = true
+                )
+            )
+    }
+
     override fun onRuntimeOptionsUpdated() {
-        runInEdt {
+        uiEvents.post {
             userInputPanel.refreshModelDependentState()
         }
     }
@@ -676,13 +703,13 @@ class AgentEventHandler(
     }
 
     override fun onRetry(attempt: Int, maxAttempts: Int) {
-        runInEdt {
+        uiEvents.post {
             showRetryLoading(CodeGPTBundle.get("toolwindow.agent.retrying", attempt, maxAttempts))
         }
     }
 
     override fun onRetrySucceeded() {
-        runInEdt {
+        uiEvents.post {
             val textToRestore = loadingTextBeforeRetry ?: currentLoadingText
             loadingTextBeforeRetry = null
             showLoading(textToRestore)
@@ -692,7 +719,7 @@ class AgentEventHandler(
     override fun onHistoryCompressionStateChanged(isCompressing: Boolean) {
         val key =
             if (isCompressing) "toolwindow.chat.compressingHistory" else "toolwindow.chat.loading"
-        runInEdt {
+        uiEvents.post {
             showLoading(CodeGPTBundle.get(key))
         }
     }
@@ -969,10 +996,11 @@ class AgentEventHandler(
         if (!shouldScheduleFlush) {
             return
         }
-        runInEdt { flushToolOutput(toolId) }
+        uiEvents.post { flushToolOutput(toolId) }
     }
 
     override fun dispose() {
+        Disposer.dispose(uiEvents)
         serviceScope.dispose()
         agentApprovalManager.dispose()
         mainToolCards.clear()
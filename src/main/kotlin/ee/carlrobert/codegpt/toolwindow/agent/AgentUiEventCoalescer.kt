@@ -0,0 +1,129 @@
+package ee.carlrobert.codegpt.toolwindow.agent
+
+import com.intellij.openapi.Disposable
+import com.intellij.openapi.application.ModalityState
+import com.intellij.openapi.diagnostic.logger
+import com.intellij.util.Alarm
+import java.util.concurrent.locks.ReentrantLock
+import javax.swing.SwingUtilities
+import kotlin.concurrent.withLock
+
+private val logger = logger<AgentUiEventCoalescer>()
+
+/**
+ * Hands agent callbacks of one session to the EDT in batches. Events are queued as they arrive
+ * and run in order at most once per frame, in the default modality state like `runInEdt`.
+ * Consecutive text and thinking deltas are merged into a single update, so a UI that falls behind
+ * receives fewer, larger updates; producers never wait for it.
+ */
+internal class AgentUiEventCoalescer(
+    private val onText: (String) -> Unit,
+    private val onThinking: (String) -> Unit,
+) : Disposable {
+
+    companion object {
+        private const val FRAME_MS = 16
+    }
+
+    private val lock = ReentrantLock()
+    private val pending = java.util.ArrayDeque<UiEvent>()
+    private val flushAlarm = Alarm(Alarm.ThreadToUse.SWING_THREAD, this)
+    private var flushScheduled = false
+    private var flushing = false
+    private var disposed = false
+
+    /**
+     * Runs [action] on the EDT after all events posted before it. Like `runInEdt`, it runs right
+     * away when called on the EDT with nothing queued.
+     */
+    fun post(action: () -> Unit) {
+        if (SwingUtilities.isEventDispatchThread() && !flushing && isIdle()) {
+            action()
+            return
+        }
+        offer { pending.addLast(UiEvent.Action(action)) }
+    }
+
+    fun postText(text: String) {
+        offer {
+            val last = pending.peekLast()
+            if (last is UiEvent.Text) {
+                last.content.append(text)
+            } else {
+                pending.addLast(UiEvent.Text(StringBuilder(text)))
+            }
+        }
+    }
+
+    /** Thinking deltas are joined with a line break, as the response body does for each delta. */
+    fun postThinking(text: String) {
+        offer {
+            val last = pending.peekLast()
+            if (last is UiEvent.Thinking) {
+                last.content.append('\n').append(text)
+            } else {
+                pending.addLast(UiEvent.Thinking(StringBuilder(text)))
+            }
+        }
+    }
+
+    override fun dispose() {
+        lock.withLock {
+            disposed = true
+            pending.clear()
+        }
+        flushAlarm.cancelAllRequests()
+    }
+
+    private fun isIdle(): Boolean = lock.withLock { pending.isEmpty() && !flushScheduled }
+
+    private fun offer(add: () -> Unit) {
+        val shouldSchedule = lock.withLock {
+            if (disposed) {
+                return
+            }
+            add()
+            if (flushScheduled) {
+                false
+            } else {
+                flushScheduled = true
+                true
+            }
+        }
+        if (shouldSchedule) {
+            flushAlarm.addRequest({ flush() }, FRAME_MS, ModalityState.defaultModalityState())
+        }
+    }
+
+    private fun flush() {
+        val events = lock.withLock {
+            flushScheduled = false
+            ArrayList(pending).also { pending.clear() }
+        }
+
+        flushing = true
+        try {
+            events.forEach { dispatch(it) }
+        } finally {
+            flushing = false
+        }
+    }
+
+    private fun dispatch(event: UiEvent) {
+        try {
+            when (event) {
+                is UiEvent.Text -> onText(event.content.toString())
+                is UiEvent.Thinking -> onThinking(event.content.toString())
+                is UiEvent.Action -> event.action()
+            }
+        } catch (ex: Exception) {
+            logger.warn("Failed to apply agent UI event", ex)
+        }
+    }
+
+    private sealed class UiEvent {
+        class Text(val content: StringBuilder) : UiEvent()
+        class Thinking(val content: StringBuilder) : UiEvent()
+        class Action(val action: () -> Unit) : UiEvent()
+    }
+}
@@ -8,6 +8,8 @@ data class TokenUsageEvent(
     val sizeTokens: Long? = null,
     val costAmount: Double? = null,
     val costCurrency: String? = null,
+    /** Whether the total is a local estimate for the response being streamed. */
+    val estimated: Boolean = false,
 )
 
 interface TokenUsageListener {
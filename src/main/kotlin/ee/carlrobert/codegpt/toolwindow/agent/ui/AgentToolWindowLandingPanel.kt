@@ -417,7 +417,7 @@ class AgentToolWindowLandingPanel(private val project: Project) : BorderLayoutPa
 
     private fun countFileTokens(vf: VirtualFile): Int {
         val text = runCatching { VfsUtilCore.loadText(vf) }.getOrNull() ?: ""
-        return TokenComputationService.getInstance().countTextTokens(text)
+        return TokenComputationService.getInstance().countTextTokens(text, FeatureType.AGENT)
     }
 
     private fun formatTokens(n: Int): String =
@@ -79,6 +79,7 @@ object ToolCallDescriptorFactory {
     private fun detectToolKind(toolName: ToolName?, args: Any, result: Any?): ToolKind {
         return when {
             toolName == ToolName.INTELLIJ_SEARCH || args is IntelliJSearchTool.Args || args is AcpSearchPreviewArgs -> ToolKind.SEARCH
+            toolName == ToolName.GREP || args is GrepTool.Args -> ToolKind.SEARCH
             toolName == ToolName.READ || args is ReadTool.Args -> ToolKind.READ
             toolName == ToolName.WRITE || args is WriteTool.Args -> ToolKind.WRITE
             toolName == ToolName.EDIT || args is EditTool.Args -> ToolKind.EDIT
@@ -504,15 +505,22 @@ object ToolCallDescriptorFactory {
     }
 
     private fun buildSearchBadges(result: Any?): List<Badge> {
-        return if (result is IntelliJSearchTool.Result) {
-            listOf(
+        return when (result) {
+            is IntelliJSearchTool.Result -> listOf(
                 Badge(
                     "[${result.totalMatches} matches]",
                     JBColor.BLUE,
                     action = { showTextDialog(result.output, "Search Results") }
                 ))
-        } else {
-            emptyList()
+
+            is GrepTool.Result -> listOf(
+                Badge(
+                    "[${result.totalMatches} matches in ${result.fileCount} files]",
+                    JBColor.BLUE,
+                    action = { showTextDialog(result.output, "Search Results") }
+                ))
+
+            else -> emptyList()
         }
     }
 
@@ -522,9 +530,12 @@ object ToolCallDescriptorFactory {
         projectId: String?
     ): ToolCallDescriptor {
         val searchArgs = args as? IntelliJSearchTool.Args
+        val grepArgs = args as? GrepTool.Args
         val searchPreviewArgs = args as? AcpSearchPreviewArgs
-        val pattern = searchArgs?.pattern ?: searchPreviewArgs?.pattern.orEmpty()
+        val pattern = searchArgs?.pattern ?: grepArgs?.pattern ?: searchPreviewArgs?.pattern.orEmpty()
         val scopeOrPath = searchArgs?.path?.substringAfterLast('/')
+            ?: grepArgs?.path?.substringAfterLast('/')
+            ?: grepArgs?.glob
             ?: searchPreviewArgs?.path?.substringAfterLast('/')
             ?: (searchArgs?.scope ?: "")
         val titleMain = if (pattern.isBlank()) {
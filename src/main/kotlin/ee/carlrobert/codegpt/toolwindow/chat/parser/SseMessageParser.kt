@@ -1,5 +1,14 @@
 package ee.carlrobert.codegpt.toolwindow.chat.parser
 
+/**
+ * Parses a streamed response incrementally. Incoming deltas are appended to a single buffer and
+ * read through a cursor: input before the cursor has been consumed, and each state remembers how
+ * far it has already scanned, so no part of the response is searched twice. Consumed input is
+ * dropped from the buffer in bulk once it makes up most of it.
+ *
+ * Segments that describe a block still in progress ([SearchWaiting], [ReplaceWaiting],
+ * [Thinking], [Code]) are emitted once per [parse] call with the latest content.
+ */
 class SseMessageParser : MessageParser {
 
     private companion object {
@@ -12,6 +21,7 @@ class SseMessageParser : MessageParser {
         const val NEWLINE = "\n"
         const val HEADER_DELIMITER = ":"
         const val HEADER_PARTS_LIMIT = 2
+        const val COMPACT_THRESHOLD = 8_192
 
         val SEARCH_START_REGEX = Regex("""^\s*<{3,}(\s*SEARCH.*)?$""", RegexOption.IGNORE_CASE)
         val INLINE_SEARCH_START_REGEX = Regex("""<{3,}\s*SEARCH\b.*""", RegexOption.IGNORE_CASE)
@@ -24,38 +34,44 @@ class SseMessageParser : MessageParser {
     private var parserState: ParserState = ParserState.Outside
     private val buffer = StringBuilder()
 
+    /** Start of the input that has not been consumed yet. */
+    private var cursor = 0
+
+    /** Position from which the current state resumes scanning; never before [cursor]. */
+    private var scanIndex = 0
+
     fun clear() {
         parserState = ParserState.Outside
-        buffer.clear()
+        resetBuffer()
     }
 
     fun startNewVisualSection() {
-        buffer.clear()
-        parserState = when (val state = parserState) {
-            is ParserState.Outside -> ParserState.Outside
-            is ParserState.CodeHeaderWaiting -> state.copy(content = "")
-            is ParserState.InCode -> state.copy(content = "")
-            is ParserState.InSearch -> state.copy(searchContent = "")
-            is ParserState.InReplace -> state.copy(searchContent = "", replaceContent = "")
-            is ParserState.InThinking -> ParserState.InThinking()
+        resetBuffer()
+        when (val state = parserState) {
+            is ParserState.Outside -> Unit
+            is ParserState.CodeHeaderWaiting -> {
+                parserState = ParserState.CodeHeaderWaiting(indentation = state.indentation)
+            }
+
+            is ParserState.InCode -> state.content.setLength(0)
+            is ParserState.InSearch -> state.searchContent.setLength(0)
+            is ParserState.InReplace -> {
+                state.searchContent.setLength(0)
+                state.replaceContent.setLength(0)
+            }
+
+            is ParserState.InThinking -> parserState = ParserState.InThinking()
         }
     }
 
     override fun parse(input: String): List<Segment> {
         val segments = mutableListOf<Segment>()
-        var position = 0
-
-        while (position < input.length) {
-            val endPosition = minOf(position + 16, input.length)
-            val chunk = input.substring(position, endPosition)
-            buffer.append(chunk)
+        buffer.append(input)
 
-            while (processNextSegment(segments)) {
-            }
-
-            position = endPosition
+        while (processNextSegment(segments)) {
         }
         segments.addAll(getPendingSegments())
+        compactBuffer()
 
         return segments
     }
@@ -72,44 +88,42 @@ class SseMessageParser : MessageParser {
     }
 
     private fun processOutsideState(segments: MutableList<Segment>): Boolean {
-        val fenceIdx = buffer.indexOf(CODE_FENCE)
-        val thinkStartIdx = buffer.indexOf(THINK_START)
-
-        return when {
-            shouldProcessCodeFence(fenceIdx, thinkStartIdx) -> {
-                val textBeforeFence = buffer.substring(0, fenceIdx)
-                val lineStartIdx = textBeforeFence.lastIndexOf(NEWLINE) + 1
-                val indentation = textBeforeFence.substring(lineStartIdx)
-
-                // Emit text that comes before the line with the code fence.
-                extractTextBeforeIndex(lineStartIdx)?.let { segments.add(it) }
-
-                consumeFromBuffer(fenceIdx + CODE_FENCE.length)
-                // Transition to CodeHeaderWaiting with the captured indentation.
-                parserState = ParserState.CodeHeaderWaiting(indentation = indentation)
-                true
-            }
+        val markerIdx = findOutsideMarker()
+        if (markerIdx < 0) {
+            // A marker may still be cut off at the end of the buffer.
+            scanIndex = maxOf(cursor, buffer.length - (THINK_START.length - 1))
+            return false
+        }
 
-            thinkStartIdx != -1 -> {
-                extractTextBeforeIndex(thinkStartIdx)?.let { segments.add(it) }
-                consumeFromBuffer(thinkStartIdx + THINK_START.length)
-                parserState = ParserState.InThinking()
-                true
+        if (buffer.startsWith(CODE_FENCE, markerIdx)) {
+            var lineStartIdx = markerIdx
+            while (lineStartIdx > cursor && buffer[lineStartIdx - 1] != '\n') {
+                lineStartIdx--
             }
+            val indentation = buffer.substring(lineStartIdx, markerIdx)
+
+            // Emit text that comes before the line with the code fence.
+            extractTextBeforeIndex(lineStartIdx)?.let { segments.add(it) }
 
-            else -> false
+            consumeUntil(markerIdx + CODE_FENCE.length)
+            parserState = ParserState.CodeHeaderWaiting(indentation = indentation)
+        } else {
+            extractTextBeforeIndex(markerIdx)?.let { segments.add(it) }
+            consumeUntil(markerIdx + THINK_START.length)
+            parserState = ParserState.InThinking()
         }
+        return true
     }
 
     private fun processCodeHeaderState(
         segments: MutableList<Segment>,
         state: ParserState.CodeHeaderWaiting
     ): Boolean {
-        val nlIdx = buffer.indexOf(NEWLINE)
+        val nlIdx = findLineEnd()
         if (nlIdx < 0) return false
 
-        val headerLine = buffer.substring(0, nlIdx).trim()
-        consumeFromBuffer(nlIdx + 1)
+        val headerLine = lineView(nlIdx).trim()
+        consumeUntil(nlIdx + 1)
 
         val updatedHeader = state.content + headerLine
         val headerSplit = splitInlineSearchMarker(updatedHeader)
@@ -120,7 +134,8 @@ class SseMessageParser : MessageParser {
             if (headerSplit.inlineSearchContent != null) {
                 val initialSearch = headerSplit.inlineSearchContent.trimStart()
                 segments.add(SearchWaiting(initialSearch, header.language, header.filePath))
-                parserState = ParserState.InSearch(header, initialSearch, state.indentation)
+                parserState =
+                    ParserState.InSearch(header, StringBuilder(initialSearch), state.indentation)
             } else {
                 parserState = ParserState.InCode(header, indentation = state.indentation)
             }
@@ -136,158 +151,114 @@ class SseMessageParser : MessageParser {
         segments: MutableList<Segment>,
         state: ParserState.InCode
     ): Boolean {
-        val nlIdx = buffer.indexOf(NEWLINE)
+        val nlIdx = findLineEnd()
         if (nlIdx < 0) return false
 
-        val line = buffer.substring(0, nlIdx)
-        consumeFromBuffer(nlIdx + 1)
-
-        return when {
+        val line = lineView(nlIdx)
+        when {
             isCodeFenceLine(line, state.indentation) -> {
                 if (state.content.isNotEmpty()) {
-                    segments.add(Code(state.content, state.header.language, state.header.filePath))
+                    segments.add(state.toCode())
                 }
                 segments.add(CodeEnd(""))
                 parserState = ParserState.Outside
-                true
             }
 
             isSearchStartLine(line) -> {
                 // Emit accumulated code content before transitioning
                 if (state.content.isNotEmpty()) {
-                    segments.add(Code(state.content, state.header.language, state.header.filePath))
+                    segments.add(state.toCode())
                 }
                 segments.add(SearchWaiting("", state.header.language, state.header.filePath))
-                parserState = ParserState.InSearch(state.header, "", state.indentation)
-                true
+                parserState = ParserState.InSearch(state.header, indentation = state.indentation)
             }
 
-            else -> {
-                val newContent =
-                    if (state.content.isEmpty()) line else state.content + NEWLINE + line
-                parserState = ParserState.InCode(state.header, newContent, state.indentation)
-                true
-            }
+            else -> appendLine(state.content, nlIdx)
         }
+        consumeUntil(nlIdx + 1)
+        return true
     }
 
     private fun processInSearchState(
         segments: MutableList<Segment>,
         state: ParserState.InSearch
     ): Boolean {
-        val nlIdx = buffer.indexOf(NEWLINE)
+        val nlIdx = findLineEnd()
         if (nlIdx < 0) return false
 
-        val line = buffer.substring(0, nlIdx)
-        consumeFromBuffer(nlIdx + 1)
-
-        return if (isSeparatorLine(line)) {
+        if (isSeparatorLine(lineView(nlIdx))) {
+            val searchContent = state.searchContent.toString()
             segments.add(
-                ReplaceWaiting(
-                    state.searchContent,
-                    "",
-                    state.header.language,
-                    state.header.filePath
-                )
+                ReplaceWaiting(searchContent, "", state.header.language, state.header.filePath)
+            )
+            parserState = ParserState.InReplace(
+                state.header,
+                state.searchContent,
+                indentation = state.indentation
             )
-            parserState =
-                ParserState.InReplace(state.header, state.searchContent, "", state.indentation)
-            true
         } else {
-            val newSearch =
-                if (state.searchContent.isEmpty()) line else state.searchContent + NEWLINE + line
-            segments.add(SearchWaiting(newSearch, state.header.language, state.header.filePath))
-            parserState = ParserState.InSearch(state.header, newSearch, state.indentation)
-            false
+            appendLine(state.searchContent, nlIdx)
         }
+        consumeUntil(nlIdx + 1)
+        return true
     }
 
     private fun processInReplaceState(
         segments: MutableList<Segment>,
         state: ParserState.InReplace
     ): Boolean {
-        val nlIdx = buffer.indexOf(NEWLINE)
+        val nlIdx = findLineEnd()
         if (nlIdx < 0) return false
 
-        val line = buffer.substring(0, nlIdx)
-        consumeFromBuffer(nlIdx + 1)
-
-        return when {
+        val line = lineView(nlIdx)
+        when {
             isReplaceEndLine(line) -> {
                 segments.add(
                     SearchReplace(
-                        search = state.searchContent,
-                        replace = state.replaceContent,
+                        search = state.searchContent.toString(),
+                        replace = state.replaceContent.toString(),
                         language = state.header.language,
                         filePath = state.header.filePath
                     )
                 )
                 parserState = ParserState.InCode(state.header, indentation = state.indentation)
-                true
             }
 
             isCodeFenceLine(line, state.indentation) -> {
                 segments.add(CodeEnd(""))
                 parserState = ParserState.Outside
-                true
             }
 
-            else -> {
-                val newReplace =
-                    if (state.replaceContent.isEmpty()) line else state.replaceContent + NEWLINE + line
-                segments.add(
-                    ReplaceWaiting(
-                        state.searchContent,
-                        newReplace,
-                        state.header.language,
-                        state.header.filePath
-                    )
-                )
-                parserState = ParserState.InReplace(
-                    state.header,
-                    state.searchContent,
-                    newReplace,
-                    state.indentation
-                )
-                true
-            }
+            else -> appendLine(state.replaceContent, nlIdx)
         }
+        consumeUntil(nlIdx + 1)
+        return true
     }
 
     private fun processInThinkingState(
         segments: MutableList<Segment>,
         state: ParserState.InThinking
     ): Boolean {
-        val currentBuffer = buffer.toString()
-        val combined = state.content + currentBuffer
-        val endIdxCombined = combined.indexOf(THINK_END)
-
-        return if (endIdxCombined >= 0) {
-            val thinkingContent = combined.substring(0, endIdxCombined)
-            segments.add(Thinking(thinkingContent))
-
-            val consumedFromBuffer = (endIdxCombined + THINK_END.length - state.content.length)
-                .coerceAtLeast(0)
-                .coerceAtMost(currentBuffer.length)
-            consumeFromBuffer(consumedFromBuffer)
-
+        val endIdx = buffer.indexOf(THINK_END, scanIndex)
+        if (endIdx >= 0) {
+            state.content.append(buffer, cursor, endIdx)
+            segments.add(Thinking(state.content.toString()))
+            consumeUntil(endIdx + THINK_END.length)
             parserState = ParserState.Outside
-            true
-        } else {
-            if (buffer.isNotEmpty()) {
-                val newContent = state.content + currentBuffer
-                segments.add(Thinking(newContent))
-                buffer.clear()
-                parserState = ParserState.InThinking(newContent)
-            }
-            false
+            return true
         }
+
+        // Keep a possibly cut off end marker in the buffer and move the rest into the content.
+        val safeEnd = maxOf(cursor, buffer.length - (THINK_END.length - 1))
+        state.content.append(buffer, cursor, safeEnd)
+        consumeUntil(safeEnd)
+        return false
     }
 
     private fun getPendingSegments(): List<Segment> {
         return when (val state = parserState) {
             is ParserState.Outside -> {
-                if (buffer.isNotBlank()) listOf(Text(buffer.toString()))
+                if (pendingView().isNotBlank()) listOf(Text(buffer.substring(cursor)))
                 else emptyList()
             }
 
@@ -299,15 +270,13 @@ class SseMessageParser : MessageParser {
             is ParserState.InCode -> {
                 val segments = mutableListOf<Segment>()
 
-                if (isCodeFenceLine(buffer.toString(), state.indentation)) {
+                if (isCodeFenceLine(pendingView(), state.indentation)) {
                     if (state.content.isNotBlank()) {
-                        segments.add(
-                            Code(state.content, state.header.language, state.header.filePath)
-                        )
+                        segments.add(state.toCode())
                     }
                     segments.add(CodeEnd(""))
                 } else if (state.content.isNotBlank()) {
-                    segments.add(Code(state.content, state.header.language, state.header.filePath))
+                    segments.add(state.toCode())
                 }
 
                 segments
@@ -317,7 +286,7 @@ class SseMessageParser : MessageParser {
                 if (state.searchContent.isNotBlank()) {
                     listOf(
                         SearchWaiting(
-                            state.searchContent,
+                            state.searchContent.toString(),
                             state.header.language,
                             state.header.filePath
                         )
@@ -329,8 +298,8 @@ class SseMessageParser : MessageParser {
                 if (state.replaceContent.isNotBlank()) {
                     listOf(
                         ReplaceWaiting(
-                            state.searchContent,
-                            state.replaceContent,
+                            state.searchContent.toString(),
+                            state.replaceContent.toString(),
                             state.header.language,
                             state.header.filePath
                         )
@@ -339,24 +308,68 @@ class SseMessageParser : MessageParser {
             }
 
             is ParserState.InThinking -> {
-                val fullContent = state.content + buffer.toString()
-                buffer.clear()
-                if (fullContent.isNotBlank()) listOf(Thinking(fullContent))
-                else emptyList()
+                val pending = pendingView()
+                if (state.content.isNotBlank() || pending.isNotBlank()) {
+                    listOf(Thinking(state.content.toString() + pending))
+                } else emptyList()
+            }
+        }
+    }
+
+    /** Returns the index of the first code fence or thinking start marker, or -1. */
+    private fun findOutsideMarker(): Int {
+        for (i in maxOf(scanIndex, cursor) until buffer.length) {
+            val c = buffer[i]
+            if ((c == '`' && buffer.startsWith(CODE_FENCE, i))
+                || (c == '<' && buffer.startsWith(THINK_START, i))
+            ) {
+                return i
             }
         }
+        return -1
+    }
+
+    /** Returns the index of the next line break, remembering how far the line was scanned. */
+    private fun findLineEnd(): Int {
+        val nlIdx = buffer.indexOf(NEWLINE, maxOf(scanIndex, cursor))
+        if (nlIdx < 0) {
+            scanIndex = buffer.length
+        }
+        return nlIdx
     }
 
-    private fun shouldProcessCodeFence(fenceIdx: Int, thinkStartIdx: Int): Boolean {
-        return fenceIdx != -1 && (thinkStartIdx == -1 || fenceIdx < thinkStartIdx)
+    private fun lineView(lineEnd: Int): CharSequence = CharSequenceView(buffer, cursor, lineEnd)
+
+    private fun pendingView(): CharSequence = CharSequenceView(buffer, cursor, buffer.length)
+
+    private fun appendLine(content: StringBuilder, lineEnd: Int) {
+        if (content.isNotEmpty()) {
+            content.append(NEWLINE)
+        }
+        content.append(buffer, cursor, lineEnd)
     }
 
     private fun extractTextBeforeIndex(index: Int): Text? {
-        return if (index > 0) Text(buffer.substring(0, index)) else null
+        return if (index > cursor) Text(buffer.substring(cursor, index)) else null
+    }
+
+    private fun consumeUntil(index: Int) {
+        cursor = index
+        scanIndex = index
+    }
+
+    private fun compactBuffer() {
+        if (cursor >= COMPACT_THRESHOLD && cursor * 2 >= buffer.length) {
+            buffer.delete(0, cursor)
+            scanIndex -= cursor
+            cursor = 0
+        }
     }
 
-    private fun consumeFromBuffer(length: Int) {
-        buffer.delete(0, length)
+    private fun resetBuffer() {
+        buffer.setLength(0)
+        cursor = 0
+        scanIndex = 0
     }
 
     private fun parseCodeHeader(headerText: String): CodeHeader? {
@@ -390,12 +403,12 @@ class SseMessageParser : MessageParser {
         )
     }
 
-    private fun isCodeFenceLine(line: String, indentation: String): Boolean {
+    private fun isCodeFenceLine(line: CharSequence, indentation: String): Boolean {
         val trimmedEnd = line.trimEnd()
         if (!trimmedEnd.startsWith(indentation)) {
             return false
         }
-        val afterIndent = trimmedEnd.substring(indentation.length)
+        val afterIndent = trimmedEnd.subSequence(indentation.length, trimmedEnd.length)
         if (afterIndent.isEmpty() || afterIndent.first() != '`') {
             return false
         }
@@ -406,22 +419,21 @@ class SseMessageParser : MessageParser {
         return fenceCandidate.length >= CODE_FENCE.length && fenceCandidate.all { it == '`' }
     }
 
-    private fun isSearchStartLine(line: String): Boolean {
+    private fun isSearchStartLine(line: CharSequence): Boolean {
         val trimmed = line.trim()
         return trimmed.startsWith(SEARCH_MARKER) || SEARCH_START_REGEX.matches(trimmed)
     }
 
-    private fun isSeparatorLine(line: String): Boolean {
+    private fun isSeparatorLine(line: CharSequence): Boolean {
         val trimmed = line.trim()
-        return trimmed == SEPARATOR_MARKER || SEPARATOR_REGEX.matches(trimmed)
+        return trimmed.contentEquals(SEPARATOR_MARKER) || SEPARATOR_REGEX.matches(trimmed)
     }
 
-    private fun isReplaceEndLine(line: String): Boolean {
+    private fun isReplaceEndLine(line: CharSequence): Boolean {
         val trimmed = line.trim()
         return trimmed.startsWith(REPLACE_MARKER) || REPLACE_END_REGEX.matches(trimmed)
     }
 
-    // Step 1: Update parser states to hold indentation information.
     private sealed class ParserState {
         object Outside : ParserState()
 
@@ -430,27 +442,30 @@ class SseMessageParser : MessageParser {
             val indentation: String = ""
         ) : ParserState()
 
-        data class InCode(
+        class InCode(
             val header: CodeHeader,
-            val content: String = "",
+            val content: StringBuilder = StringBuilder(),
             val indentation: String = ""
-        ) : ParserState()
+        ) : ParserState() {
 
-        data class InSearch(
+            fun toCode() = Code(content.toString(), header.language, header.filePath)
+        }
+
+        class InSearch(
             val header: CodeHeader,
-            val searchContent: String = "",
+            val searchContent: StringBuilder = StringBuilder(),
             val indentation: String = ""
         ) : ParserState()
 
-        data class InReplace(
+        class InReplace(
             val header: CodeHeader,
-            val searchContent: String,
-            val replaceContent: String = "",
+            val searchContent: StringBuilder,
+            val replaceContent: StringBuilder = StringBuilder(),
             val indentation: String = ""
         ) : ParserState()
 
-        data class InThinking(
-            val content: String = ""
+        class InThinking(
+            val content: StringBuilder = StringBuilder()
         ) : ParserState()
     }
 
@@ -458,4 +473,22 @@ class SseMessageParser : MessageParser {
         val headerText: String,
         val inlineSearchContent: String?
     )
+
+    /** A read-only window into the parse buffer, valid until the buffer is compacted. */
+    private class CharSequenceView(
+        private val source: CharSequence,
+        private val start: Int,
+        private val end: Int
+    ) : CharSequence {
+
+        override val length: Int
+            get() = end - start
+
+        override fun get(index: Int): Char = source[start + index]
+
+        override fun subSequence(startIndex: Int, endIndex: Int): CharSequence =
+            CharSequenceView(source, start + startIndex, start + endIndex)
+
+        override fun toString(): String = source.substring(start, end)
+    }
 }
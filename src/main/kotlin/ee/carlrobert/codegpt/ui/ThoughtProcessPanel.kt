@@ -9,13 +9,27 @@ import ee.carlrobert.codegpt.CodeGPTBundle
 import java.awt.BorderLayout
 import java.awt.event.ItemEvent
 import javax.swing.*
+import javax.swing.text.StyleConstants
+import javax.swing.text.html.HTML
+import javax.swing.text.html.HTMLDocument
 
+/**
+ * Shows the model's reasoning. Text is appended in deltas and rendered at most once per frame:
+ * blocks that can no longer change are converted once and inserted at the end of the closed
+ * content document, so each render only converts the open tail.
+ */
 class ThoughtProcessPanel : JPanel(BorderLayout()) {
 
-    private var finished: Boolean = false
-    private val responseBodyContent = UIUtil.createTextPane("", false).apply {
-        foreground = JBUI.CurrentTheme.Label.disabledForeground()
+    companion object {
+        private const val RENDER_DELAY_MS = 16
     }
+
+    private var finished: Boolean = false
+    private val markdown = StringBuilder()
+    private var closedMarkdownLength = 0
+    private val closedContent = createContentTextPane()
+    private val responseBodyContent = createContentTextPane()
+    private val renderTimer = Timer(RENDER_DELAY_MS) { render() }.apply { isRepeats = false }
     private val contentPanel = createContentPanel()
     private val toggleButton: JToggleButton = createToggleButton()
 
@@ -31,6 +45,8 @@ class ThoughtProcessPanel : JPanel(BorderLayout()) {
     fun setFinished() {
         if (finished) return
 
+        renderTimer.stop()
+        render()
         toggleButton.text = CodeGPTBundle.get("thoughtProcess.title")
         toggleButton.isSelected = false
         finished = true
@@ -46,8 +62,75 @@ class ThoughtProcessPanel : JPanel(BorderLayout()) {
         )
     }
 
+    /**
+     * Replaces the shown text. When [text] extends the current text, only the new part is
+     * appended.
+     */
     fun updateText(text: String) {
-        responseBodyContent.text = MarkdownUtil.convertMdToHtml(text)
+        if (text.startsWith(markdown)) {
+            appendText(text.substring(markdown.length))
+            return
+        }
+
+        markdown.setLength(0)
+        markdown.append(text)
+        closedMarkdownLength = 0
+        closedContent.text = ""
+        closedContent.isVisible = false
+        scheduleRender()
+    }
+
+    fun appendText(delta: String) {
+        if (delta.isEmpty()) {
+            return
+        }
+        markdown.append(delta)
+        scheduleRender()
+    }
+
+    fun hasText(): Boolean = markdown.isNotEmpty()
+
+    private fun scheduleRender() {
+        if (finished) {
+            render()
+        } else if (!renderTimer.isRunning) {
+            renderTimer.start()
+        }
+    }
+
+    private fun render() {
+        val closedBlocksEnd = MarkdownUtil.findClosedBlocksEnd(markdown, closedMarkdownLength)
+        if (closedBlocksEnd > closedMarkdownLength) {
+            appendClosedHtml(
+                MarkdownUtil.convertMdToHtml(
+                    markdown.substring(closedMarkdownLength, closedBlocksEnd)
+                )
+            )
+            closedMarkdownLength = closedBlocksEnd
+        }
+        responseBodyContent.text =
+            MarkdownUtil.convertMdToHtml(markdown.substring(closedMarkdownLength))
+        revalidate()
+        repaint()
+    }
+
+    private fun appendClosedHtml(html: String) {
+        val document = closedContent.document as HTMLDocument
+        val body = document.getElement(
+            document.defaultRootElement,
+            StyleConstants.NameAttribute,
+            HTML.Tag.BODY
+        )
+        if (body == null) {
+            closedContent.text = html
+        } else {
+            document.insertBeforeEnd(body, html)
+        }
+        closedContent.isVisible = true
+    }
+
+    private fun createContentTextPane() = UIUtil.createTextPane("", false).apply {
+        foreground = JBUI.CurrentTheme.Label.disabledForeground()
     }
 
     private fun createContentPanel(): JPanel {
@@ -58,6 +141,8 @@ class ThoughtProcessPanel : JPanel(BorderLayout()) {
             border = JBUI.Borders.empty(0, 0)
         }
 
+        closedContent.isVisible = false
+        panel.add(closedContent)
         panel.add(responseBodyContent)
         panel.add(Box.createVerticalStrut(4))
         return panel
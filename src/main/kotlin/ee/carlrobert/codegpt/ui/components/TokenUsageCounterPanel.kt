@@ -62,7 +62,13 @@ class TokenUsageCounterPanel(
                 TokenUsageListener.TOKEN_USAGE_TOPIC,
                 object : TokenUsageListener {
                     override fun onTokenUsageChanged(event: TokenUsageEvent) {
-                        if (event.sessionId == sessionId) {
+                        if (event.sessionId == sessionId && event.estimated) {
+                            if (hasReportedUsage) {
+                                val model = getAgentModelForSession(event.sessionId)
+                                    ?: getSelectedAgentModel()
+                                updateDisplay(event.totalTokens, model)
+                            }
+                        } else if (event.sessionId == sessionId) {
                             val model = getAgentModelForSession(event.sessionId)
                                 ?: getSelectedAgentModel()
                             hasReportedUsage = true
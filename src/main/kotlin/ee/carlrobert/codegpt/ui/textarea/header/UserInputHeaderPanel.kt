@@ -24,6 +24,7 @@ import ee.carlrobert.codegpt.EditorNotifier
 import ee.carlrobert.codegpt.settings.ProxyAISettingsService
 import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
 import ee.carlrobert.codegpt.settings.service.FeatureType
+import ee.carlrobert.codegpt.tokens.FileTokenCountCache
 import ee.carlrobert.codegpt.toolwindow.chat.ChatContextSupport
 import ee.carlrobert.codegpt.toolwindow.chat.ui.textarea.TotalTokensPanel
 import ee.carlrobert.codegpt.ui.IconActionButton
@@ -305,13 +306,15 @@ class UserInputHeaderPanel(
 
     private fun refreshReferencedFilesTotal() {
         backgroundScope.launch {
-            val selectedTags = getSelectedTags()
-            val referencedFileContents =
-                ChatContextSupport.getReferencedFiles(project, selectedTags)
-                    .map { it.fileContent }
-            runInEdt {
-                totalTokensPanel.updateReferencedFilesTokens(referencedFileContents)
-            }
+            val referencedFiles =
+                ChatContextSupport.getReferencedVirtualFiles(project, getSelectedTags())
+            FileTokenCountCache.getInstance(project)
+                .getTotalTokenCountAsync(referencedFiles)
+                .thenAccept { totalTokens ->
+                    runInEdt {
+                        totalTokensPanel.updateReferencedFilesTokens(totalTokens)
+                    }
+                }
         }
     }
 
@@ -19,10 +19,9 @@ class IncludeOpenFilesActionItem : AbstractLookupActionItem() {
     override fun execute(project: Project, userInputPanel: UserInputPanel) {
         val fileTags = userInputPanel.getSelectedTags().filterIsInstance<FileTagDetails>()
         val settingsService = project.service<ProxyAISettingsService>()
-        project.service<FileEditorManager>().openFiles
+        settingsService.filterVisibleFiles(project.service<FileEditorManager>().openFiles.asList())
             .filter { openFile ->
-                settingsService.isVirtualFileVisible(openFile) &&
-                        !openFile.isHiddenFileOrInHiddenDirectory() &&
+                !openFile.isHiddenFileOrInHiddenDirectory() &&
                         fileTags.none { it.virtualFile == openFile }
             }
             .forEach {
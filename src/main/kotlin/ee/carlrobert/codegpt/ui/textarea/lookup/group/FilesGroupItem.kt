@@ -48,8 +48,10 @@ class FilesGroupItem(
         val providerMatches = fileSearchProvider.search(normalizedSearchText, MAX_SEARCH_FILES)
         val visibleProviderMatches = readAction {
             val projectFileIndex = project.service<ProjectFileIndex>()
+            val isVisible = settingsService.visibilityFilter()
             providerMatches.filter { candidate ->
-                isVisibleProjectItem(candidate.file, projectFileIndex)
+                isVisible.test(candidate.file) &&
+                    isVisibleProjectItem(candidate.file, projectFileIndex)
             }
         }
         val providerFiles = visibleProviderMatches.filterNot { it.file.isDirectory }
@@ -92,7 +94,7 @@ class FilesGroupItem(
         val matcher = createMatcher(searchText)
         return readAction {
             val projectFileIndex = project.service<ProjectFileIndex>()
-            project.service<FileEditorManager>().openFiles
+            settingsService.filterVisibleFiles(project.service<FileEditorManager>().openFiles.asList())
                 .filter { file ->
                     matchingDegree(file, projectFileIndex, matcher) != Int.MIN_VALUE
                 }
@@ -109,7 +111,7 @@ class FilesGroupItem(
         val matcher = createMatcher(searchText)
         return readAction {
             val projectFileIndex = project.service<ProjectFileIndex>()
-            EditorHistoryManager.getInstance(project).fileList
+            settingsService.filterVisibleFiles(EditorHistoryManager.getInstance(project).fileList)
                 .asReversed()
                 .asSequence()
                 .filter { file ->
@@ -149,7 +151,7 @@ class FilesGroupItem(
 
         return readAction {
             val projectFileIndex = project.service<ProjectFileIndex>()
-            getProjectFolders(projectFileIndex)
+            settingsService.filterVisibleFiles(getProjectFolders(projectFileIndex))
                 .asSequence()
                 .filter { folder -> isVisibleProjectFolder(folder, projectFileIndex) }
                 .mapNotNull { folder ->
@@ -194,7 +196,6 @@ class FilesGroupItem(
         projectFileIndex: ProjectFileIndex
     ): Boolean {
         return isProjectFolderCandidate(file, projectFileIndex) &&
-            settingsService.isVirtualFileVisible(file) &&
             !file.isHiddenFileOrInHiddenDirectory() &&
             !containsTag(file)
     }
@@ -205,7 +206,6 @@ class FilesGroupItem(
     ): Boolean {
         return file.isValid &&
             projectFileIndex.isInContent(file) &&
-            settingsService.isVirtualFileVisible(file) &&
             !file.isHiddenFileOrInHiddenDirectory() &&
             !containsTag(file)
     }
@@ -35,17 +35,60 @@ object MarkdownUtil {
         return result.stream().filter(String::isNotBlank).toList()
     }
 
-    @JvmStatic
-    fun convertMdToHtml(message: String): String {
-        val options = MutableDataSet()
-        options.set(Parser.EXTENSIONS, listOf(TablesExtension.create()))
-        options.set(HtmlRenderer.SOFT_BREAK, "<br/>")
+    private val LIST_ITEM_START = Regex("""^(?:[-*+]|\d{1,9}[.)])(?:\s|$)""")
 
-        val document = Parser.builder(options).build().parse(message)
-        return HtmlRenderer.builder(options)
+    private val markdownOptions by lazy {
+        MutableDataSet().apply {
+            set(Parser.EXTENSIONS, listOf(TablesExtension.create()))
+            set(HtmlRenderer.SOFT_BREAK, "<br/>")
+        }
+    }
+    private val markdownParser by lazy { Parser.builder(markdownOptions).build() }
+    private val htmlRenderer by lazy {
+        HtmlRenderer.builder(markdownOptions)
             .nodeRendererFactory(ResponseNodeRenderer.Factory())
             .build()
-            .render(document)
+    }
+
+    @JvmStatic
+    fun convertMdToHtml(message: String): String {
+        return htmlRenderer.render(markdownParser.parse(message))
+    }
+
+    /**
+     * Returns the offset after the last block in [markdown] that can no longer change when more
+     * text is appended, or [fromIndex] when there is none. A block is closed once it is followed
+     * by a blank line and a line that starts a new top-level block; list items are kept together,
+     * so that splitting does not change list numbering or spacing, and blank lines inside fenced
+     * code blocks are not treated as block ends.
+     */
+    @JvmStatic
+    fun findClosedBlocksEnd(markdown: CharSequence, fromIndex: Int): Int {
+        var closedBlocksEnd = fromIndex
+        var fenceOpen = false
+        var lineStart = fromIndex
+        while (lineStart < markdown.length) {
+            val lineEnd = markdown.indexOf('\n', lineStart).let { if (it < 0) markdown.length else it }
+            if (!fenceOpen
+                && lineStart >= fromIndex + 2
+                && markdown[lineStart - 1] == '\n'
+                && markdown[lineStart - 2] == '\n'
+                && !markdown[lineStart].isWhitespace()
+                && !LIST_ITEM_START.containsMatchIn(markdown.subSequence(lineStart, lineEnd))
+            ) {
+                closedBlocksEnd = lineStart
+            }
+
+            var contentStart = lineStart
+            while (contentStart < lineEnd && markdown[contentStart] == ' ') {
+                contentStart++
+            }
+            if (markdown.startsWith("```", contentStart)) {
+                fenceOpen = !fenceOpen
+            }
+            lineStart = lineEnd + 1
+        }
+        return closedBlocksEnd
     }
 
     /**
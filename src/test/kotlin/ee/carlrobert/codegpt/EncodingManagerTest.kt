@@ -0,0 +1,26 @@
+package ee.carlrobert.codegpt
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class EncodingManagerTest {
+
+    @Test
+    fun `test removes special markers`() {
+        val text = "before <|endoftext|> after"
+
+        assertThat(EncodingManager.removeSpecialMarkers(text)).isEqualTo("before endoftext after")
+    }
+
+    @Test
+    fun `test keeps plain angle brackets and pipes`() {
+        val text = "if (a < b || c > d) { List<String> x = y | z; }"
+
+        assertThat(EncodingManager.removeSpecialMarkers(text)).isSameAs(text)
+    }
+
+    @Test
+    fun `test removes adjacent markers`() {
+        assertThat(EncodingManager.removeSpecialMarkers("<<||>>")).isEqualTo("<>")
+    }
+}
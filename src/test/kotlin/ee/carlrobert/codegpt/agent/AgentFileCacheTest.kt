@@ -0,0 +1,91 @@
+package ee.carlrobert.codegpt.agent
+
+import com.intellij.openapi.application.WriteAction
+import com.intellij.openapi.vfs.LocalFileSystem
+import ee.carlrobert.codegpt.agent.tools.AgentFileCache
+import ee.carlrobert.codegpt.agent.tools.ReadTool
+import ee.carlrobert.codegpt.settings.hooks.HookManager
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+import java.io.File
+
+class AgentFileCacheTest : IntegrationTest() {
+
+    fun `test repeated read of unchanged file returns a stub once`() {
+        val file = File(project.basePath, "cached-read.txt").apply { writeText("first\nsecond") }
+        val tool = ReadTool(project, "file-cache-session", HookManager(project))
+
+        val contents = runBlocking {
+            (1..4).map { tool.execute(ReadTool.Args(file.absolutePath)) }
+                .map { (it as ReadTool.Result.Success).content }
+        }
+
+        assertThat(contents[0]).isEqualTo("1\tfirst\n2\tsecond")
+        assertThat(contents[1]).startsWith("File unchanged since last read")
+        assertThat(contents[2]).isEqualTo(contents[0])
+        assertThat(contents[3]).isEqualTo(contents[0])
+    }
+
+    fun `test cached content is dropped when the file is renamed`() {
+        val file = File(project.basePath, "renamed-content.txt").apply { writeText("before") }
+        val virtualFile = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(file)!!
+        val cache = AgentFileCache.getInstance()
+        cache.getContent(file.toPath())
+        val lastModified = file.lastModified()
+
+        WriteAction.runAndWait<Exception> { virtualFile.rename(this, "renamed-content-new.txt") }
+        file.writeText("after!")
+        file.setLastModified(lastModified)
+
+        assertThat(cache.getContent(file.toPath())?.text).isEqualTo("after!")
+    }
+
+    fun `test read by another tool of the same session returns the content`() {
+        val file = File(project.basePath, "shared-session-read.txt").apply { writeText("shared") }
+        val parentTool = ReadTool(project, "file-cache-shared-session", HookManager(project))
+        val subagentTool = ReadTool(project, "file-cache-shared-session", HookManager(project))
+
+        runBlocking { parentTool.execute(ReadTool.Args(file.absolutePath)) }
+        val result = runBlocking { subagentTool.execute(ReadTool.Args(file.absolutePath)) }
+
+        assertThat((result as ReadTool.Result.Success).content).isEqualTo("1\tshared")
+    }
+
+    fun `test read after own write returns the new content`() {
+        val file = File(project.basePath, "written-read.txt").apply { writeText("before") }
+        val tool = ReadTool(project, "file-cache-write-session", HookManager(project))
+
+        runBlocking { tool.execute(ReadTool.Args(file.absolutePath)) }
+        file.writeText("after")
+        AgentFileCache.getInstance().invalidate(file.toPath())
+        val result = runBlocking { tool.execute(ReadTool.Args(file.absolutePath)) }
+
+        assertThat((result as ReadTool.Result.Success).content).isEqualTo("1\tafter")
+    }
+
+    fun `test content is reused until the file changes`() {
+        val file = File(project.basePath, "cached-content.txt").apply { writeText("one\r\ntwo") }
+        val cache = AgentFileCache.getInstance()
+
+        val first = cache.getContent(file.toPath())
+        val second = cache.getContent(file.toPath())
+        file.writeText("three")
+        val third = cache.getContent(file.toPath())
+
+        assertThat(first?.text).isEqualTo("one\ntwo")
+        assertThat(second).isSameAs(first)
+        assertThat(third?.text).isEqualTo("three")
+    }
+
+    fun `test content is decoded without the byte order mark`() {
+        val file = File(project.basePath, "bom-content.txt").apply {
+            writeBytes(byteArrayOf(0xEF.toByte(), 0xBB.toByte(), 0xBF.toByte()) + "caf\u00e9".toByteArray())
+        }
+        LocalFileSystem.getInstance().refreshAndFindFileByIoFile(file)
+
+        val content = AgentFileCache.getInstance().getContent(file.toPath())
+
+        assertThat(content?.text).isEqualTo("caf\u00e9")
+    }
+}
@@ -0,0 +1,36 @@
+package ee.carlrobert.codegpt.agent
+
+import ee.carlrobert.codegpt.agent.tools.BackgroundProcessManager
+import ee.carlrobert.codegpt.agent.tools.BashOutputTool
+import ee.carlrobert.codegpt.settings.hooks.HookManager
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+import java.util.concurrent.TimeUnit
+
+class BashOutputToolTest : IntegrationTest() {
+
+    fun `test output of an exited process is kept until it is read`() {
+        val process = ProcessBuilder("sh", "-c", "echo done; exit 3").start()
+        BackgroundProcessManager.registerProcess("exited-shell", process, "bash-output-session")
+        process.waitFor(10, TimeUnit.SECONDS)
+        while (BackgroundProcessManager.getOutput("exited-shell")?.isComplete != true) {
+            Thread.sleep(10)
+        }
+        Thread.sleep(31_000)
+        val tool = BashOutputTool(project.basePath!!, "bash-output-session", HookManager(project))
+
+        val first = runBlocking { tool.execute(BashOutputTool.Args("exited-shell")) }
+        val second = runBlocking { tool.execute(BashOutputTool.Args("exited-shell")) }
+        BackgroundProcessManager.removeSession("bash-output-session")
+        val removed = runBlocking { tool.execute(BashOutputTool.Args("exited-shell")) }
+
+        assertThat(first.status).isEqualTo("completed")
+        assertThat(first.stdout).isEqualTo("done")
+        assertThat(first.exitCode).isEqualTo(3)
+        assertThat(second.status).isEqualTo("completed")
+        assertThat(second.stdout).isEmpty()
+        assertThat(second.exitCode).isEqualTo(3)
+        assertThat(removed.status).isEqualTo("not_found")
+    }
+}
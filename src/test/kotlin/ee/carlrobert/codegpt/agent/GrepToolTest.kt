@@ -0,0 +1,36 @@
+package ee.carlrobert.codegpt.agent
+
+import ee.carlrobert.codegpt.agent.tools.GrepTool
+import ee.carlrobert.codegpt.settings.hooks.HookManager
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+
+class GrepToolTest : IntegrationTest() {
+
+    fun `test grep tool should be registered in tool specs`() {
+        assertThat(ToolSpecs.findName("Grep")).isEqualTo(ToolName.GREP)
+        assertThat(ToolSpecs.findName("GrepSearch")).isEqualTo(ToolName.GREP)
+    }
+
+    fun `test grep tool should return matching lines`() {
+        myFixture.addFileToProject("src/First.kt", "class First {\n    fun target() = 1\n}")
+        myFixture.addFileToProject("src/Second.kt", "class Second")
+        val tool = GrepTool(project, "test-session-id", HookManager(project))
+
+        val result = runBlocking {
+            tool.execute(GrepTool.Args(pattern = "fun\\s+target", outputMode = "content"))
+        }
+
+        assertThat(result.fileCount).isEqualTo(1)
+        assertThat(result.output).endsWith("First.kt:2:    fun target() = 1")
+    }
+
+    fun `test grep tool should report invalid patterns`() {
+        val tool = GrepTool(project, "test-session-id", HookManager(project))
+
+        val result = runBlocking { tool.execute(GrepTool.Args(pattern = "fun(")) }
+
+        assertThat(result.output).startsWith("Invalid regular expression")
+    }
+}
@@ -1,9 +1,11 @@
 package ee.carlrobert.codegpt.agent
 
 import ai.koog.agents.ext.tool.shell.ShellCommandConfirmation
+import com.intellij.openapi.components.service
 import ee.carlrobert.codegpt.agent.tools.BashTool
 import ee.carlrobert.codegpt.agent.tools.ReadTool
 import ee.carlrobert.codegpt.agent.tools.WriteTool
+import ee.carlrobert.codegpt.settings.ProxyAISettingsService
 import ee.carlrobert.codegpt.settings.hooks.HookManager
 import kotlinx.coroutines.runBlocking
 import org.assertj.core.api.Assertions.assertThat
@@ -131,6 +133,20 @@ class IgnoreRulesTest : IntegrationTest() {
         assertThat(error.error).isEqualTo("File not found: ${file.absolutePath}")
     }
 
+    fun testIgnoreRulesReloadedAfterSettingsChange() {
+        val settingsService = project.service<ProxyAISettingsService>()
+        val path = File(project.basePath, "generated/output.txt").absolutePath
+        writeSettings(ignoreEntries = listOf("generated/**"))
+        assertThat(settingsService.isPathIgnored(path)).isTrue()
+        val version = settingsService.getSettingsVersion()
+        assertThat(settingsService.getSettingsVersion()).isEqualTo(version)
+
+        writeSettings(ignoreEntries = listOf("other/**"))
+
+        assertThat(settingsService.isPathIgnored(path)).isFalse()
+        assertThat(settingsService.getSettingsVersion()).isGreaterThan(version)
+    }
+
     private fun writeSettings(ignoreEntries: List<String>): File {
         val ignoreJson = ignoreEntries.joinToString(",") { "\"$it\"" }
         val file = File(project.basePath, ".proxyai/settings.json")
@@ -0,0 +1,40 @@
+package ee.carlrobert.codegpt.agent
+
+import com.intellij.openapi.vfs.VfsUtil
+import ee.carlrobert.codegpt.agent.tools.IntelliJSearchTool
+import ee.carlrobert.codegpt.settings.hooks.HookManager
+import kotlinx.coroutines.runBlocking
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+import java.io.File
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+class IntelliJSearchToolTest : IntegrationTest() {
+
+    fun `test search returns lower ranked names when better ones are ignored`() {
+        (1..12).forEach { myFixture.addFileToProject("generated/widget$it.txt", "") }
+        myFixture.addFileToProject("src/my_widget_notes.txt", "")
+        writeSettings(ignoreEntries = listOf("generated/"))
+        val tool = IntelliJSearchTool(project, "test-session-id", HookManager(project))
+
+        val result = runBlocking {
+            tool.execute(IntelliJSearchTool.Args(pattern = "widget", limit = 1))
+        }
+
+        assertThat(result.matches).hasSize(1)
+        assertThat(result.matches.single().file).endsWith("src/my_widget_notes.txt")
+    }
+
+    private fun writeSettings(ignoreEntries: List<String>) {
+        val ignoreJson = ignoreEntries.joinToString(",") { "\"$it\"" }
+        val file = File(project.basePath, ".proxyai/settings.json")
+        file.parentFile.mkdirs()
+        file.writeText("""{"ignore":[$ignoreJson],"permissions":{"allow":[],"ask":[],"deny":[]},"hooks":{}}""")
+        Files.setLastModifiedTime(
+            file.toPath(),
+            FileTime.fromMillis(System.currentTimeMillis() + 1000)
+        )
+        VfsUtil.markDirtyAndRefresh(false, false, false, file)
+    }
+}
@@ -0,0 +1,99 @@
+package ee.carlrobert.codegpt.agent
+
+import ee.carlrobert.codegpt.agent.tools.LineIndexedFileReader
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+class LineIndexedFileReaderTest {
+
+    @Test
+    fun `reads a window past indexed lines`() {
+        val lines = (1..1000).map { "line-$it" }
+        val file = createFile(lines.joinToString("\n"))
+
+        val window = LineIndexedFileReader.read(file, 600, 10, 2000)
+
+        assertThat(window.totalLines).isEqualTo(1000)
+        assertThat(window.lines).containsExactlyElementsOf(lines.subList(600, 610))
+    }
+
+    @Test
+    fun `splits lines like String lines`() {
+        val content = "first\r\nsecond\rthird\n\r\nlast\n"
+        val file = createFile(content)
+
+        val window = LineIndexedFileReader.read(file, 0, Int.MAX_VALUE, 2000)
+
+        assertThat(window.lines).containsExactlyElementsOf(content.lines())
+        assertThat(window.totalLines).isEqualTo(content.lines().size)
+    }
+
+    @Test
+    fun `clips long lines`() {
+        val file = createFile("${"x".repeat(10_000)}\nshort")
+
+        val window = LineIndexedFileReader.read(file, 0, 2, 100)
+
+        assertThat(window.lines).containsExactly("x".repeat(100), "short")
+    }
+
+    @Test
+    fun `rebuilds the index when the file changes`() {
+        val file = createFile((1..300).joinToString("\n") { "old-$it" })
+        assertThat(LineIndexedFileReader.read(file, 299, 1, 2000).lines).containsExactly("old-300")
+
+        Files.writeString(file, (1..600).joinToString("\n") { "new-$it" })
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 1000))
+
+        val window = LineIndexedFileReader.read(file, 511, 1, 2000)
+        assertThat(window.totalLines).isEqualTo(600)
+        assertThat(window.lines).containsExactly("new-512")
+    }
+
+    @Test
+    fun `reads memory-mapped files`() {
+        val lines = (1..300_000).map { "mapped line number $it" }
+        val file = createFile(lines.joinToString("\n"))
+        assertThat(Files.size(file)).isGreaterThan(4L shl 20)
+
+        val window = LineIndexedFileReader.read(file, 250_000, 3, 2000)
+
+        assertThat(window.totalLines).isEqualTo(300_000)
+        assertThat(window.lines).containsExactlyElementsOf(lines.subList(250_000, 250_003))
+    }
+
+    @Test
+    fun `skips the byte order mark and decodes with the given charset`() {
+        val file = createFile("")
+        Files.write(
+            file,
+            byteArrayOf(0xEF.toByte(), 0xBB.toByte(), 0xBF.toByte()) +
+                "caf\u00e9\nna\u00efve".toByteArray(StandardCharsets.UTF_8)
+        )
+        val latin1 = createFile("")
+        Files.write(latin1, "caf\u00e9\nna\u00efve".toByteArray(StandardCharsets.ISO_8859_1))
+
+        val window = LineIndexedFileReader.read(file, 0, 2, 2000, StandardCharsets.UTF_8, 3)
+        val latin1Window = LineIndexedFileReader.read(latin1, 0, 2, 2000, StandardCharsets.ISO_8859_1)
+
+        assertThat(window.lines).containsExactly("caf\u00e9", "na\u00efve")
+        assertThat(latin1Window.lines).containsExactly("caf\u00e9", "na\u00efve")
+    }
+
+    @Test
+    fun `supports only charsets with single byte line separators`() {
+        assertThat(LineIndexedFileReader.supports(StandardCharsets.UTF_8)).isTrue()
+        assertThat(LineIndexedFileReader.supports(StandardCharsets.ISO_8859_1)).isTrue()
+        assertThat(LineIndexedFileReader.supports(StandardCharsets.UTF_16LE)).isFalse()
+        assertThat(LineIndexedFileReader.supports(StandardCharsets.UTF_16)).isFalse()
+    }
+
+    private fun createFile(content: String) =
+        Files.createTempFile("line-indexed-reader", ".txt").also {
+            it.toFile().deleteOnExit()
+            Files.writeString(it, content)
+        }
+}
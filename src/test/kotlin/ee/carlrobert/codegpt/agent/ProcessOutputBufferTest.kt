@@ -0,0 +1,64 @@
+package ee.carlrobert.codegpt.agent
+
+import ee.carlrobert.codegpt.agent.tools.ProcessOutputBuffer
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class ProcessOutputBufferTest {
+
+    @Test
+    fun `returns only complete lines written after the cursor`() {
+        val buffer = ProcessOutputBuffer()
+        val cursor = ProcessOutputBuffer.Cursor()
+
+        buffer.write("first\r\nsec".toByteArray())
+        assertThat(buffer.readNewLines(cursor)).containsExactly("first")
+
+        buffer.write("ond\n".toByteArray())
+        assertThat(buffer.readNewLines(cursor)).containsExactly("second")
+
+        buffer.write("tail".toByteArray())
+        assertThat(buffer.readNewLines(cursor)).isEmpty()
+
+        buffer.closeWriter()
+        assertThat(buffer.readNewLines(cursor)).containsExactly("tail")
+        assertThat(buffer.readNewLines(cursor)).isEmpty()
+    }
+
+    @Test
+    fun `keeps cursors of different readers independent`() {
+        val buffer = ProcessOutputBuffer()
+        val monitor = ProcessOutputBuffer.Cursor()
+        val tool = ProcessOutputBuffer.Cursor()
+
+        buffer.write("one\ntwo\n".toByteArray())
+        assertThat(buffer.readNewLines(monitor)).containsExactly("one", "two")
+        buffer.write("three\n".toByteArray())
+
+        assertThat(buffer.readNewLines(tool)).containsExactly("one", "two", "three")
+        assertThat(buffer.readNewLines(monitor)).containsExactly("three")
+    }
+
+    @Test
+    fun `reads output evicted from memory back from the spill file`() {
+        val buffer = ProcessOutputBuffer(memoryLimit = 16, spillLimit = 1024)
+        val cursor = ProcessOutputBuffer.Cursor()
+
+        (0..9).forEach { buffer.write("line-$it\n".toByteArray()) }
+
+        assertThat(buffer.readNewLines(cursor)).containsExactlyElementsOf((0..9).map { "line-$it" })
+        assertThat(cursor.droppedBytes).isZero()
+        buffer.close()
+    }
+
+    @Test
+    fun `skips output dropped beyond the spill limit`() {
+        val buffer = ProcessOutputBuffer(memoryLimit = 16, spillLimit = 0)
+        val cursor = ProcessOutputBuffer.Cursor()
+
+        (0..4).forEach { buffer.write("line-0$it\n".toByteArray()) }
+
+        assertThat(buffer.readNewLines(cursor)).containsExactly("line-03", "line-04")
+        assertThat(cursor.droppedBytes).isEqualTo(24)
+    }
+}
@@ -0,0 +1,68 @@
+package ee.carlrobert.codegpt.agent
+
+import ee.carlrobert.codegpt.agent.tools.ProcessOutputCapture
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.nio.file.Files
+
+class ProcessOutputCaptureTest {
+
+    @Test
+    fun `keeps all output that fits in memory without a log file`() {
+        val capture = ProcessOutputCapture()
+        val lines = mutableListOf<String>()
+
+        capture.write("first\r\nsec".toCharArray(), onLine = { lines += it })
+        capture.write("ond\nthird".toCharArray(), onLine = { lines += it })
+        capture.finish { lines += it }
+
+        assertThat(lines).containsExactly("first", "second", "third")
+        assertThat(capture.getText()).isEqualTo("first\nsecond\nthird")
+        assertThat(capture.droppedLines).isZero()
+        assertThat(capture.logFile).isNull()
+    }
+
+    @Test
+    fun `keeps head and tail and writes the full output to the log`() {
+        val capture = ProcessOutputCapture(headLimit = 16, tailLimit = 16)
+
+        (0..9).forEach { capture.write("line-$it\n".toCharArray()) }
+        capture.finish()
+
+        assertThat(capture.lineCount).isEqualTo(10)
+        assertThat(capture.droppedLines).isEqualTo(6)
+        assertThat(capture.droppedBytes).isEqualTo(42)
+        val logFile = capture.logFile!!
+        assertThat(Files.readAllLines(logFile)).containsExactlyElementsOf((0..9).map { "line-$it" })
+        assertThat(capture.getText()).isEqualTo("line-0\nline-1\n... [6 lines omitted]\nline-8\nline-9")
+        assertThat(capture.getTruncationNotice()).isEqualTo(
+            "[Output truncated: 6 lines (42 bytes) omitted; full output in $logFile, " +
+                    "use Read with offset and limit to page through it]"
+        )
+        Files.deleteIfExists(logFile)
+    }
+
+    @Test
+    fun `writes clipped lines to the log in full`() {
+        val capture = ProcessOutputCapture(maxLineLength = 4)
+
+        capture.write("ab\ncdef".toCharArray())
+        capture.write("gh\nij".toCharArray())
+        capture.finish()
+
+        val logFile = capture.logFile!!
+        assertThat(Files.readAllLines(logFile)).containsExactly("ab", "cdefgh", "ij")
+        assertThat(capture.getText()).isEqualTo("ab\ncdef ... [2 characters clipped]\nij")
+        assertThat(capture.getTruncationNotice()).startsWith("[Output truncated: 1 long lines clipped;")
+        Files.deleteIfExists(logFile)
+    }
+
+    @Test
+    fun `clips lines longer than the maximum line length`() {
+        val capture = ProcessOutputCapture(maxLineLength = 4, logFilePrefix = null)
+
+        capture.write("abcdefgh\n".toCharArray())
+
+        assertThat(capture.getText()).isEqualTo("abcd ... [4 characters clipped]")
+    }
+}
@@ -0,0 +1,42 @@
+package ee.carlrobert.codegpt.agent.clients
+
+import com.intellij.openapi.util.Disposer
+import ee.carlrobert.codegpt.settings.advanced.AdvancedSettingsState
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+
+class HttpClientPoolTest : IntegrationTest() {
+
+    fun testSharesEngineBetweenClientsOfSameConfiguration() {
+        val pool = HttpClientPool()
+        val settings = AdvancedSettingsState()
+
+        val first = pool.acquire(settings)
+        val second = pool.acquire(AdvancedSettingsState())
+
+        assertThat(second).isSameAs(first)
+        assertThat(first.clients).isEqualTo(2)
+        Disposer.dispose(pool)
+    }
+
+    fun testKeepsRetiredEngineOpenUntilItsClientsAreReleased() {
+        val pool = HttpClientPool()
+        val settings = AdvancedSettingsState()
+        val changed = AdvancedSettingsState().apply { readTimeout = 30 }
+        val stale = pool.acquire(settings)
+        val current = pool.acquire(changed)
+
+        pool.invalidate(HttpClientPool.Key(changed))
+
+        assertThat(current).isNotSameAs(stale)
+        assertThat(pool.acquire(changed)).isSameAs(current)
+        assertThat(pool.acquire(settings)).isNotSameAs(stale)
+        assertThat(stale.closed).isFalse()
+
+        pool.release(stale)
+
+        assertThat(stale.closed).isTrue()
+        assertThat(current.closed).isFalse()
+        Disposer.dispose(pool)
+    }
+}
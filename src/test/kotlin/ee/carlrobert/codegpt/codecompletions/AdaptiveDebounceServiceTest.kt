@@ -0,0 +1,49 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import ee.carlrobert.codegpt.settings.service.ServiceType
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class AdaptiveDebounceServiceTest {
+
+    @Test
+    fun shouldUseDefaultDelayUntilEnoughKeystrokesAreRecorded() {
+        val service = AdaptiveDebounceService()
+        repeat(5) { service.recordKeystrokeInterval(120) }
+
+        assertThat(service.getDebounceDelay(ServiceType.OLLAMA))
+            .isEqualTo(AdaptiveDebounceService.DEFAULT_DEBOUNCE_MS)
+    }
+
+    @Test
+    fun shouldWaitOutTypingBurstsOfFastTypist() {
+        val service = AdaptiveDebounceService()
+        repeat(80) { service.recordKeystrokeInterval(120) }
+        repeat(20) { service.recordKeystrokeInterval(5_000) }
+        repeat(10) { service.recordCompleted(ServiceType.OLLAMA, 300) }
+
+        assertThat(service.getDebounceDelay(ServiceType.OLLAMA)).isEqualTo(125)
+    }
+
+    @Test
+    fun shouldUseShortestDelayWhenUserPausesBetweenKeystrokes() {
+        val service = AdaptiveDebounceService()
+        repeat(50) { service.recordKeystrokeInterval(3_000) }
+        repeat(10) { service.recordCompleted(ServiceType.OLLAMA, 300) }
+
+        assertThat(service.getDebounceDelay(ServiceType.OLLAMA)).isEqualTo(50)
+    }
+
+    @Test
+    fun shouldReportLatencyPercentilesAndCancelledRatio() {
+        val service = AdaptiveDebounceService()
+        (1..100).forEach { service.recordCompleted(ServiceType.OPENAI, it * 10L) }
+        repeat(25) { service.recordCancelled(ServiceType.OPENAI) }
+
+        val metrics = service.getMetrics(ServiceType.OPENAI)
+
+        assertThat(metrics.latencyP50Ms).isEqualTo(500)
+        assertThat(metrics.latencyP95Ms).isEqualTo(950)
+        assertThat(metrics.cancelledRatio).isEqualTo(0.2)
+    }
+}
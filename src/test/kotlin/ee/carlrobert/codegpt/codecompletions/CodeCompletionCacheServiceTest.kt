@@ -0,0 +1,52 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class CodeCompletionCacheServiceTest {
+
+    private val prefix = "fun main() {\n" + "    // filler line\n".repeat(60) + "    val total = "
+    private val suffix = "\n}\n"
+
+    @Test
+    fun shouldReturnCompletionForSameCaretContext() {
+        val cache = CodeCompletionCacheService()
+        cache.setCache(prefix, suffix, "items.sumOf { it.price }")
+
+        assertThat(cache.getCache(prefix + suffix, prefix.length))
+            .isEqualTo("items.sumOf { it.price }")
+    }
+
+    @Test
+    fun shouldServeRemainingCompletionWhenTypedTextMatches() {
+        val cache = CodeCompletionCacheService()
+        cache.setCache(prefix, suffix, "items.sumOf { it.price }")
+        val typedPrefix = "${prefix}items.su"
+
+        assertThat(cache.getCache(typedPrefix + suffix, typedPrefix.length))
+            .isEqualTo("mOf { it.price }")
+        assertThat(cache.getStats().typedAheadHits).isEqualTo(1)
+    }
+
+    @Test
+    fun shouldMissWhenTypedTextDiverges() {
+        val cache = CodeCompletionCacheService()
+        cache.setCache(prefix, suffix, "items.sumOf { it.price }")
+        val typedPrefix = "${prefix}prices"
+
+        assertThat(cache.getCache(typedPrefix + suffix, typedPrefix.length)).isNull()
+        assertThat(cache.getCache("$prefix\n$suffix", prefix.length)).isNull()
+        assertThat(cache.getStats().misses).isEqualTo(2)
+    }
+
+    @Test
+    fun shouldStopServingCompletionAfterRepeatedReuse() {
+        val cache = CodeCompletionCacheService()
+        cache.setCache(prefix, suffix, "items.sumOf { it.price }")
+
+        repeat(3) {
+            assertThat(cache.getCache(prefix + suffix, prefix.length)).isNotNull()
+        }
+        assertThat(cache.getCache(prefix + suffix, prefix.length)).isNull()
+    }
+}
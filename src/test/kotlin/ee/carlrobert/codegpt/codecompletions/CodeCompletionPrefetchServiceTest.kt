@@ -0,0 +1,99 @@
+package ee.carlrobert.codegpt.codecompletions
+
+import com.intellij.openapi.components.service
+import com.intellij.testFramework.PlatformTestUtil
+import ee.carlrobert.codegpt.settings.configuration.ConfigurationSettings
+import ee.carlrobert.codegpt.settings.service.FeatureType
+import ee.carlrobert.codegpt.settings.service.codegpt.CodeGPTServiceSettings
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+import testsupport.http.ResponseEntity
+import testsupport.http.exchange.BasicHttpExchange
+import testsupport.json.JSONUtil.jsonArray
+import testsupport.json.JSONUtil.jsonMap
+import testsupport.json.JSONUtil.jsonMapResponse
+
+class CodeCompletionPrefetchServiceTest : IntegrationTest() {
+
+    private val prefix = "fun total(items: List<Item>) = "
+    private val suffix = "\n"
+
+    override fun setUp() {
+        super.setUp()
+        useOpenAIService("gpt-4", FeatureType.CODE_COMPLETION)
+        service<CodeGPTServiceSettings>().state.nextEditsEnabled = false
+        service<ConfigurationSettings>().state.codeCompletionSettings.prefetchEnabled = true
+        project.service<CodeCompletionCacheService>().clear()
+        myFixture.configureByText("Prefetch.kt", prefix + suffix)
+    }
+
+    override fun tearDown() {
+        service<ConfigurationSettings>().state.codeCompletionSettings.prefetchEnabled = false
+        project.service<CodeCompletionPrefetchService>().cancelAll()
+        super.tearDown()
+    }
+
+    fun `test prefetched completion is served when the caret reaches its position`() {
+        expectCompletion("items.sumOf { it.price }")
+
+        project.service<CodeCompletionPrefetchService>().prefetch(myFixture.editor, prefix, suffix)
+        waitUntilCached()
+        myFixture.editor.caretModel.moveToOffset(prefix.length)
+
+        assertThat(project.service<CodeCompletionCacheService>().getCache(myFixture.editor))
+            .isEqualTo("items.sumOf { it.price }")
+    }
+
+    fun `test prefetched completion is not served for different text`() {
+        expectCompletion("items.sumOf { it.price }")
+
+        project.service<CodeCompletionPrefetchService>().prefetch(myFixture.editor, prefix, suffix)
+        waitUntilCached()
+
+        val otherPrefix = "fun count(items: List<Item>) = "
+        assertThat(
+            project.service<CodeCompletionCacheService>()
+                .getCache(otherPrefix + suffix, otherPrefix.length)
+        ).isNull()
+    }
+
+    fun `test typing towards the prefetched position keeps the prefetch`() {
+        expectCompletion("items.sumOf { it.price }", delayMillis = 500)
+        val prefetchService = project.service<CodeCompletionPrefetchService>()
+
+        prefetchService.prefetch(myFixture.editor, prefix, suffix)
+        val typedPrefix = prefix.dropLast(4)
+        prefetchService.cancelStale(typedPrefix + suffix, typedPrefix.length)
+
+        assertThat(prefetchService.isPrefetching(prefix, suffix)).isTrue()
+        waitUntilCached()
+    }
+
+    fun `test prefetch is cancelled when the text no longer leads to it`() {
+        expectCompletion("items.sumOf { it.price }", delayMillis = 500)
+        val prefetchService = project.service<CodeCompletionPrefetchService>()
+
+        prefetchService.prefetch(myFixture.editor, prefix, suffix)
+        val otherPrefix = "fun count(items: List<Item>) = "
+        prefetchService.cancelStale(otherPrefix + suffix, otherPrefix.length)
+
+        assertThat(prefetchService.isPrefetching(prefix, suffix)).isFalse()
+        Thread.sleep(1_000)
+        assertThat(project.service<CodeCompletionCacheService>().contains(prefix, suffix)).isFalse()
+    }
+
+    private fun expectCompletion(completion: String, delayMillis: Long = 0) {
+        expectOpenAI(BasicHttpExchange {
+            Thread.sleep(delayMillis)
+            ResponseEntity(jsonMapResponse("choices", jsonArray(jsonMap("text", completion))))
+        })
+    }
+
+    private fun waitUntilCached() {
+        PlatformTestUtil.waitWithEventsDispatching(
+            "Prefetched completion was not cached",
+            { project.service<CodeCompletionCacheService>().contains(prefix, suffix) },
+            5
+        )
+    }
+}
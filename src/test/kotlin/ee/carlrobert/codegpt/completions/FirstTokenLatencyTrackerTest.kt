@@ -0,0 +1,51 @@
+package ee.carlrobert.codegpt.completions
+
+import ee.carlrobert.codegpt.settings.service.FeatureType
+import ee.carlrobert.codegpt.settings.service.ServiceType
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class FirstTokenLatencyTrackerTest {
+
+    @Test
+    fun `records requests before the first connection as cold and later ones as warm`() {
+        FirstTokenLatencyTracker.clearWarmOrigins()
+        val origin = "https://api.mistral.ai/"
+        val cold = FirstTokenLatencyTracker.start(ServiceType.MISTRAL, FeatureType.CODE_COMPLETION, origin)
+        cold.onFirstToken()
+        cold.onFirstToken()
+        val warm = FirstTokenLatencyTracker.start(ServiceType.MISTRAL, FeatureType.CODE_COMPLETION, origin)
+        warm.onFirstToken()
+
+        val stats = FirstTokenLatencyTracker.getStats()
+
+        assertThat(stats[FirstTokenLatencyTracker.Key(ServiceType.MISTRAL, FeatureType.CODE_COMPLETION, false)]?.count)
+            .isEqualTo(1)
+        assertThat(stats[FirstTokenLatencyTracker.Key(ServiceType.MISTRAL, FeatureType.CODE_COMPLETION, true)]?.count)
+            .isEqualTo(1)
+    }
+
+    @Test
+    fun `treats an origin as warm after a warm-up`() {
+        FirstTokenLatencyTracker.clearWarmOrigins()
+        val origin = "https://ollama.example.com/"
+        assertThat(FirstTokenLatencyTracker.isWarm(origin)).isFalse()
+
+        FirstTokenLatencyTracker.markWarm(origin)
+
+        assertThat(FirstTokenLatencyTracker.isWarm(origin)).isTrue()
+        assertThat(FirstTokenLatencyTracker.isWarm("https://other.example.com/")).isFalse()
+    }
+
+    @Test
+    fun `treats an origin as cold once its idle connection is evicted`() {
+        FirstTokenLatencyTracker.clearWarmOrigins()
+        val origin = "https://api.openai.com/"
+        val now = System.currentTimeMillis()
+
+        FirstTokenLatencyTracker.markWarm(origin, now - FirstTokenLatencyTracker.WARM_TTL_MS)
+
+        assertThat(FirstTokenLatencyTracker.isWarm(origin, now)).isFalse()
+        assertThat(FirstTokenLatencyTracker.isWarm(origin, now - 1)).isTrue()
+    }
+}
@@ -0,0 +1,76 @@
+package ee.carlrobert.codegpt.settings
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class IgnoreMatcherTest {
+
+    private val basePath = "/home/user/project"
+
+    @Test
+    fun `test matches directory patterns at any depth`() {
+        val matcher = IgnoreMatcher.from(listOf(".idea/", "build/"), false)
+
+        assertThat(matcher.matches("$basePath/.idea", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/.idea/workspace.xml", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/app/build/reports/test.txt", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/app/builder/Test.kt", basePath)).isFalse()
+    }
+
+    @Test
+    fun `test matches file name patterns`() {
+        val matcher = IgnoreMatcher.from(listOf("*.iml", ".env", "**/*.pem"), false)
+
+        assertThat(matcher.matches("$basePath/project.iml", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/.env", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/app/certs/private.pem", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/.envrc", basePath)).isFalse()
+        assertThat(matcher.matches("$basePath/src/Main.kt", basePath)).isFalse()
+    }
+
+    @Test
+    fun `test matches nested path patterns`() {
+        val matcher = IgnoreMatcher.from(listOf("secrets/**", "app/src/main/**"), false)
+
+        assertThat(matcher.matches("$basePath/secrets/token.txt", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/app/src/main/Test.kt", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/app/src/test/Test.kt", basePath)).isFalse()
+    }
+
+    @Test
+    fun `test matches glob characters within a segment`() {
+        val matcher = IgnoreMatcher.from(listOf("config/*.{yml,yaml}", "log?.txt"), false)
+
+        assertThat(matcher.matches("$basePath/config/app.yaml", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/config/app.json", basePath)).isFalse()
+        assertThat(matcher.matches("$basePath/logs/log1.txt", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/logs/log10.txt", basePath)).isFalse()
+    }
+
+    @Test
+    fun `test anchors leading slash patterns to the base path`() {
+        val matcher = IgnoreMatcher.from(listOf("/out", "$basePath/private.txt"), false)
+
+        assertThat(matcher.matches("$basePath/out", basePath)).isTrue()
+        assertThat(matcher.matches("$basePath/app/out", basePath)).isFalse()
+        assertThat(matcher.matches("$basePath/private.txt", basePath)).isTrue()
+    }
+
+    @Test
+    fun `test ignores case when requested`() {
+        val matcher = IgnoreMatcher.from(listOf("Secrets/", "*.PEM"), true)
+
+        assertThat(matcher.matches("C:\\Project\\secrets\\token.txt", "C:\\Project")).isTrue()
+        assertThat(matcher.matches("C:\\Project\\certs\\key.pem", "C:\\Project")).isTrue()
+    }
+
+    @Test
+    fun `test session reuses directory state`() {
+        val session = IgnoreMatcher.from(listOf("build/", "*.log"), false).newSession(basePath)
+
+        assertThat(session.matches("$basePath/src/a.log")).isTrue()
+        assertThat(session.matches("$basePath/src/a.kt")).isFalse()
+        assertThat(session.matches("$basePath/build/a.kt")).isTrue()
+        assertThat(session.matches("$basePath/src/../build/b.kt")).isTrue()
+    }
+}
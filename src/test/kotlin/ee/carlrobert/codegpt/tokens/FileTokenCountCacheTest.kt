@@ -0,0 +1,38 @@
+package ee.carlrobert.codegpt.tokens
+
+import com.intellij.openapi.command.WriteCommandAction
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import ee.carlrobert.codegpt.EncodingManager
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+
+class FileTokenCountCacheTest : IntegrationTest() {
+
+    fun `test caches token count until the document changes`() {
+        val file = myFixture.addFileToProject("Cached.kt", "class Cached").virtualFile
+        val cache = FileTokenCountCache.getInstance(project)
+
+        val tokens = cache.getTokenCountAsync(file).get()
+
+        assertThat(tokens).isEqualTo(EncodingManager.getInstance().countTokens("class Cached"))
+        assertThat(cache.getCachedTokenCount(file)).isEqualTo(tokens)
+
+        val document = FileDocumentManager.getInstance().getDocument(file)!!
+        WriteCommandAction.runWriteCommandAction(project) {
+            document.setText("class Cached { fun changed() = Unit }")
+        }
+
+        assertThat(cache.getCachedTokenCount(file)).isNull()
+        assertThat(cache.getTokenCount(file)).isGreaterThan(tokens)
+    }
+
+    fun `test sums token counts of all files`() {
+        val first = myFixture.addFileToProject("First.kt", "class First").virtualFile
+        val second = myFixture.addFileToProject("Second.kt", "class Second").virtualFile
+        val cache = FileTokenCountCache.getInstance(project)
+
+        val total = cache.getTotalTokenCountAsync(listOf(first, second)).get()
+
+        assertThat(total).isEqualTo(cache.getTokenCount(first) + cache.getTokenCount(second))
+    }
+}
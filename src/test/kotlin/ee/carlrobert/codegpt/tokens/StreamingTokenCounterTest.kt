@@ -0,0 +1,53 @@
+package ee.carlrobert.codegpt.tokens
+
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+
+class StreamingTokenCounterTest {
+
+    private val countedTexts = mutableListOf<String>()
+    private val counter = StreamingTokenCounter { text ->
+        countedTexts.add(text)
+        text.split(Regex("\\s+")).count { it.isNotEmpty() }
+    }
+
+    @Test
+    fun `test counts text appended in chunks`() {
+        counter.append("first li")
+        counter.append("ne\nsecond ")
+        val total = counter.append("line\nthird")
+
+        assertThat(total).isEqualTo(5)
+        assertThat(counter.totalTokens).isEqualTo(5)
+    }
+
+    @Test
+    fun `test recounts only the unfinished line`() {
+        counter.append("first line\n")
+        counter.append("second")
+
+        countedTexts.clear()
+        counter.append(" line")
+
+        assertThat(countedTexts).containsExactly("second line")
+    }
+
+    @Test
+    fun `test splits long lines before a space`() {
+        val longLine = "word ".repeat(1000)
+
+        val total = counter.append(longLine)
+
+        assertThat(total).isEqualTo(1000)
+        assertThat(countedTexts.last().length).isLessThan(longLine.length)
+    }
+
+    @Test
+    fun `test reset starts a new count`() {
+        counter.append("some text\nmore")
+
+        counter.reset()
+
+        assertThat(counter.append("again")).isEqualTo(1)
+    }
+}
@@ -0,0 +1,44 @@
+package ee.carlrobert.codegpt.tokens
+
+import ee.carlrobert.codegpt.EncodingManager
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+
+class TokenTruncationTest : IntegrationTest() {
+
+    private val gapMarker = "\n...\n"
+
+    fun `test keeps text under the limit`() {
+        val text = "fun main() = println(\"Hello\")"
+
+        val result = EncodingManager.getInstance().truncateTextWithGap(text, 100, 80, gapMarker)
+
+        assertThat(result).isSameAs(text)
+    }
+
+    fun `test keeps text exactly at the limit`() {
+        val text = (1..40).joinToString(" ") { "word$it" }
+        val encodingManager = EncodingManager.getInstance()
+        val tokens = encodingManager.countTokens(text)
+
+        val result = encodingManager.truncateTextWithGap(text, tokens, tokens - 1, gapMarker)
+
+        assertThat(text.length * 3).isGreaterThan(tokens)
+        assertThat(result).isSameAs(text)
+        assertThat(encodingManager.truncateTextWithGap(text, tokens - 1, tokens - 2, gapMarker))
+            .contains(gapMarker)
+    }
+
+    fun `test does not split characters that span several tokens at the gap`() {
+        val text = "𠀀𠀁𠀂".repeat(50)
+
+        val result = EncodingManager.getInstance().truncateTextWithGap(text, 11, 5, gapMarker)
+
+        val head = result.substringBefore(gapMarker)
+        val tail = result.substringAfter(gapMarker)
+        assertThat(result).doesNotContain("�")
+        assertThat(text).startsWith(head)
+        assertThat(text).endsWith(tail)
+        assertThat(head.length + tail.length).isLessThan(text.length)
+    }
+}
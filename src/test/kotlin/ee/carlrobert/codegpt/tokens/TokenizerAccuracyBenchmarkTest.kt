@@ -0,0 +1,41 @@
+package ee.carlrobert.codegpt.tokens
+
+import com.knuddels.jtokkit.Encodings
+import com.knuddels.jtokkit.api.EncodingType
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.Test
+import java.io.File
+
+/**
+ * Measures how well a calibrated cl100k tokenizer estimates the usage of a model with a different
+ * encoding. The plugin's own sources stand in for prompts, and their o200k counts stand in for the
+ * usage the provider would report.
+ */
+class TokenizerAccuracyBenchmarkTest {
+
+    private val registry = Encodings.newLazyEncodingRegistry()
+
+    @Test
+    fun `test calibrated estimates stay close to reported usage`() {
+        val cl100k = registry.getEncoding(EncodingType.CL100K_BASE)
+        val o200k = registry.getEncoding(EncodingType.O200K_BASE)
+        val prompts = File("src/main/kotlin/ee/carlrobert/codegpt").walkTopDown()
+            .filter { it.isFile && it.extension == "kt" }
+            .sortedBy { it.path }
+            .take(200)
+            .map { it.readText() }
+            .filter { it.isNotBlank() }
+            .toList()
+        val tokenizer = TokenizerRegistry.ModelTokenizer(false) { cl100k.countTokens(it) }
+
+        prompts.forEach { tokenizer.recordUsage(tokenizer.countTokens(it), o200k.countTokens(it)) }
+
+        val accuracy = tokenizer.getAccuracy()
+        println(
+            "cl100k vs o200k over ${accuracy.samples} prompts: raw error %.4f, calibrated error %.4f, ratio %.4f"
+                .format(accuracy.rawMeanError, accuracy.calibratedMeanError, accuracy.ratio)
+        )
+        assertThat(accuracy.samples).isEqualTo(prompts.size).isGreaterThan(20)
+        assertThat(accuracy.calibratedMeanError).isLessThan(0.1)
+    }
+}
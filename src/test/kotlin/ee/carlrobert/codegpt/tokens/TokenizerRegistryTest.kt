@@ -0,0 +1,54 @@
+package ee.carlrobert.codegpt.tokens
+
+import com.knuddels.jtokkit.api.EncodingType
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.data.Offset
+import org.junit.Test
+
+class TokenizerRegistryTest {
+
+    @Test
+    fun `test resolves encodings of known models`() {
+        assertThat(TokenizerRegistry.resolveEncodingType("gpt-4o-mini")).isEqualTo(EncodingType.O200K_BASE)
+        assertThat(TokenizerRegistry.resolveEncodingType("o3-mini")).isEqualTo(EncodingType.O200K_BASE)
+        assertThat(TokenizerRegistry.resolveEncodingType("openai/gpt-5")).isEqualTo(EncodingType.O200K_BASE)
+        assertThat(TokenizerRegistry.resolveEncodingType("gpt-4-turbo")).isEqualTo(EncodingType.CL100K_BASE)
+        assertThat(TokenizerRegistry.resolveEncodingType("gpt-3.5-turbo")).isEqualTo(EncodingType.CL100K_BASE)
+    }
+
+    @Test
+    fun `test leaves unknown models unresolved`() {
+        assertThat(TokenizerRegistry.resolveEncodingType("claude-sonnet-4")).isNull()
+        assertThat(TokenizerRegistry.resolveEncodingType("codestral-latest")).isNull()
+        assertThat(TokenizerRegistry.resolveEncodingType("llama3.1:8b")).isNull()
+    }
+
+    @Test
+    fun `test calibrates inexact tokenizer towards reported usage`() {
+        val tokenizer = TokenizerRegistry.ModelTokenizer(false) { it.length }
+        val prompt = "x".repeat(1000)
+
+        repeat(20) {
+            tokenizer.recordUsage(tokenizer.countTokens(prompt), 1200)
+        }
+
+        assertThat(tokenizer.ratio).isCloseTo(1.2, Offset.offset(0.01))
+        assertThat(tokenizer.countTokens(prompt)).isBetween(1195, 1210)
+        val accuracy = tokenizer.getAccuracy()
+        assertThat(accuracy.samples).isEqualTo(20)
+        assertThat(accuracy.rawMeanError).isCloseTo(1.0 / 6, Offset.offset(0.005))
+        assertThat(accuracy.calibratedMeanError).isLessThan(accuracy.rawMeanError!!)
+        assertThat(tokenizer.needsCalibration()).isFalse()
+    }
+
+    @Test
+    fun `test keeps exact tokenizer uncalibrated`() {
+        val tokenizer = TokenizerRegistry.ModelTokenizer(true) { it.length }
+
+        tokenizer.recordUsage(100, 110)
+
+        assertThat(tokenizer.ratio).isEqualTo(1.0)
+        assertThat(tokenizer.countTokens("x".repeat(100))).isEqualTo(100)
+        assertThat(tokenizer.getAccuracy().calibratedMeanError).isCloseTo(10.0 / 110, Offset.offset(0.001))
+    }
+}
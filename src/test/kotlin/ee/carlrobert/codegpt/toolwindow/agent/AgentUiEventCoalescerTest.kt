@@ -0,0 +1,44 @@
+package ee.carlrobert.codegpt.toolwindow.agent
+
+import com.intellij.openapi.util.Disposer
+import com.intellij.testFramework.PlatformTestUtil
+import org.assertj.core.api.Assertions.assertThat
+import testsupport.IntegrationTest
+
+class AgentUiEventCoalescerTest : IntegrationTest() {
+
+    fun `test merges consecutive deltas and keeps event order`() {
+        val applied = mutableListOf<String>()
+        val coalescer = AgentUiEventCoalescer(
+            onText = { applied += "text:$it" },
+            onThinking = { applied += "thinking:$it" }
+        )
+        var done = false
+
+        coalescer.postThinking("plan")
+        coalescer.postThinking("check")
+        coalescer.postText("Hello")
+        coalescer.postText(", world")
+        coalescer.post { applied += "tool" }
+        coalescer.postText("!")
+        coalescer.post { done = true }
+
+        PlatformTestUtil.waitWithEventsDispatching("Events were not applied", { done }, 5)
+        assertThat(applied)
+            .containsExactly("thinking:plan\ncheck", "text:Hello, world", "tool", "text:!")
+        Disposer.dispose(coalescer)
+    }
+
+    fun `test drops events after dispose`() {
+        val applied = mutableListOf<String>()
+        val coalescer = AgentUiEventCoalescer(onText = { applied += it }, onThinking = {})
+
+        Disposer.dispose(coalescer)
+        coalescer.postText("ignored")
+        PlatformTestUtil.dispatchAllEventsInIdeEventQueue()
+        Thread.sleep(100)
+        PlatformTestUtil.dispatchAllEventsInIdeEventQueue()
+
+        assertThat(applied).isEmpty()
+    }
+}
@@ -286,4 +286,46 @@ class SseMessageParserStreamTest {
         val codeEndSegments = segments.filterIsInstance<CodeEnd>()
         assertThat(codeEndSegments).hasSize(1)
     }
+
+    @Test
+    fun shouldParseLargeStreamedResponseWithManyBlocks() {
+        val blockCount = 2_500
+        val input = buildString {
+            repeat(blockCount) { i ->
+                append("Step $i explains the change in a few words.\n\n")
+                append("```kotlin:File$i.kt\n")
+                append("<<<<<<< SEARCH\n")
+                append("fun old$i() {\n    return \"old value $i\"\n}\n")
+                append("=======\n")
+                append("fun new$i() {\n    return \"new value $i\"\n}\n")
+                append(">>>>>>> REPLACE\n")
+                append("```\n")
+                append("```python\n")
+                append("print(\"block $i\")\n".repeat(4))
+                append("```\n")
+            }
+            append("All done.")
+        }
+        assertThat(input.length).isGreaterThan(1_000_000)
+
+        val parser = SseMessageParser()
+        val random = Random(2024)
+        val segments = mutableListOf<Segment>()
+        var position = 0
+        while (position < input.length) {
+            val end = minOf(input.length, position + random.nextInt(1, 64))
+            segments.addAll(parser.parse(input.substring(position, end)))
+            position = end
+        }
+
+        val searchReplaceSegments = segments.filterIsInstance<SearchReplace>()
+        assertThat(searchReplaceSegments).hasSize(blockCount)
+        assertThat(searchReplaceSegments.last().search).contains("old${blockCount - 1}")
+        assertThat(searchReplaceSegments.last().replace).contains("new value ${blockCount - 1}")
+        assertThat(searchReplaceSegments.last().filePath).isEqualTo("File${blockCount - 1}.kt")
+        assertThat(segments.filterIsInstance<CodeHeader>()).hasSize(blockCount * 2)
+        assertThat(segments.filterIsInstance<Code>().last().content)
+            .isEqualTo("print(\"block ${blockCount - 1}\")\n".repeat(4).trimEnd())
+        assertThat(segments.last()).isEqualTo(Text("All done."))
+    }
 }
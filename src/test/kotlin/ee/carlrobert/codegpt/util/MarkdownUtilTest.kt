@@ -157,4 +157,48 @@ class MarkdownUtilTest {
             }
             ```""".trimIndent())
   }
+
+  @Test
+  fun shouldFindEndOfClosedMarkdownBlocks() {
+    val markdown = "First paragraph.\n\n## Heading\n\nOpen paragraph"
+
+    val closedBlocksEnd = MarkdownUtil.findClosedBlocksEnd(markdown, 0)
+
+    assertThat(markdown.substring(closedBlocksEnd)).isEqualTo("Open paragraph")
+  }
+
+  @Test
+  fun shouldKeepListItemsInOpenBlock() {
+    val markdown = "Intro\n\n1. first\n\n2. second"
+
+    val closedBlocksEnd = MarkdownUtil.findClosedBlocksEnd(markdown, 0)
+
+    assertThat(markdown.substring(closedBlocksEnd)).isEqualTo(markdown)
+  }
+
+  @Test
+  fun shouldNotCloseBlocksBeforeNextBlockStarts() {
+    val markdown = "First paragraph.\n\n"
+
+    assertThat(MarkdownUtil.findClosedBlocksEnd(markdown, 0)).isEqualTo(0)
+    assertThat(MarkdownUtil.findClosedBlocksEnd("a\n\nb\n\n    indented", 3)).isEqualTo(3)
+  }
+
+  @Test
+  fun shouldNotCloseBlocksInsideOpenCodeFence() {
+    val markdown = "Intro\n\n```\ncode\n\nmore\n"
+
+    val closedBlocksEnd = MarkdownUtil.findClosedBlocksEnd(markdown, 0)
+
+    assertThat(markdown.substring(closedBlocksEnd)).isEqualTo("```\ncode\n\nmore\n")
+  }
+
+  @Test
+  fun shouldCloseBlocksAfterClosedCodeFence() {
+    val markdown = "```\ncode\n\nmore\n```\n\nAfter\n\nTail"
+
+    val closedBlocksEnd = MarkdownUtil.findClosedBlocksEnd(markdown, 0)
+
+    assertThat(markdown.substring(closedBlocksEnd)).isEqualTo("Tail")
+  }
 }